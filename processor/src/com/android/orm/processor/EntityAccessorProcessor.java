@@ -0,0 +1,389 @@
+package com.android.orm.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * generates an EntityAccessor for each @Entity class. Generated accessor calls getters and setters of @Column fields directly and binds/reads values with typed SQLiteStatement and Cursor
+ * methods, so Registry does not need reflection for entities processed by this processor.
+ * <p>
+ * accessor is generated in the package of the entity with name EntitySimpleName$$Accessor. Fields are collected from the entity and its super classes up to the first super class without @Entity,
+ * same as Registry.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+@SupportedAnnotationTypes("com.android.orm.annotation.Entity")
+public class EntityAccessorProcessor extends AbstractProcessor {
+	
+	private static final String ENTITY = "com.android.orm.annotation.Entity";
+	
+	private static final String COLUMN = "com.android.orm.annotation.Column";
+	
+	private static final String FOREIGN_KEY = "com.android.orm.annotation.ForeignKey";
+	
+	private static final String ONE_TO_MANY = "com.android.orm.annotation.OneToMany";
+	
+	private static final String MANY_TO_MANY = "com.android.orm.annotation.ManyToMany";
+	
+	private static final String PERSISTABLE = "com.android.orm.Persistable";
+	
+	// same as OrmConstants, processor does not depend on android-orm runtime
+	private static final String ACCESSOR_CLASS_SUFFIX = "$$Accessor";
+	
+	private static final String DEFAULT_FOREIGN_KEY_REFERENCE = "id";
+	
+	/**
+	 * how a field value is bound to a statement and read from a cursor
+	 */
+	private enum Kind {
+		STRING, LONG, INTEGER, SHORT, BYTE, BOOLEAN, DOUBLE, FLOAT, BLOB, ENUM, DATE, ENTITY
+	}
+	
+	private static final class ColumnField {
+		
+		String fieldName;
+		
+		String columnName;
+		
+		boolean nullable;
+		
+		String typeName;
+		
+		Kind kind;
+		
+		// only for foreign keys
+		String referenceGetter;
+		
+		String referenceTypeName;
+		
+		Kind referenceKind;
+	}
+	
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+	
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		TypeElement entityAnnotation = processingEnv.getElementUtils().getTypeElement(ENTITY);
+		if (entityAnnotation == null)
+			return false;
+		for (Element element : roundEnv.getElementsAnnotatedWith(entityAnnotation)) {
+			if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT))
+				continue;
+			TypeElement entity = (TypeElement) element;
+			if (!isAssignable(entity.asType(), PERSISTABLE)) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, entity.getQualifiedName() + " is not Persistable, accessor is not generated", entity);
+				continue;
+			}
+			try {
+				List<ColumnField> fields = collectColumns(entity);
+				if (fields != null)
+					writeAccessor(entity, fields);
+			}
+			catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "can not write accessor : " + e.getMessage(), entity);
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return column fields of entity and its entity super classes, null if an unsupported field exists
+	 */
+	private List<ColumnField> collectColumns(TypeElement entity) {
+		List<ColumnField> fields = new ArrayList<ColumnField>();
+		TypeElement type = entity;
+		while (type != null) {
+			for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+				if (findAnnotation(field, COLUMN) == null || findAnnotation(field, ONE_TO_MANY) != null || findAnnotation(field, MANY_TO_MANY) != null)
+					continue;
+				ColumnField columnField = new ColumnField();
+				columnField.fieldName = field.getSimpleName().toString();
+				AnnotationMirror column = findAnnotation(field, COLUMN);
+				String name = (String) annotationValue(column, "name", "");
+				columnField.columnName = name.equals("") ? columnField.fieldName : name;
+				columnField.nullable = (Boolean) annotationValue(column, "nullable", Boolean.TRUE);
+				columnField.typeName = field.asType().toString();
+				columnField.kind = kindOf(field.asType());
+				if (columnField.kind == null) {
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "unsupported column type " + columnField.typeName, field);
+					return null;
+				}
+				if (columnField.kind == Kind.ENTITY) {
+					AnnotationMirror foreignKey = findAnnotation(field, FOREIGN_KEY);
+					String reference = foreignKey == null ? DEFAULT_FOREIGN_KEY_REFERENCE : (String) annotationValue(foreignKey, "reference", DEFAULT_FOREIGN_KEY_REFERENCE);
+					TypeMirror referenceType = findFieldType((TypeElement) ((DeclaredType) field.asType()).asElement(), reference);
+					if (referenceType == null || kindOf(referenceType) == null || kindOf(referenceType) == Kind.ENTITY) {
+						processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "unsupported foreign key reference " + reference, field);
+						return null;
+					}
+					columnField.referenceGetter = accessorName("get", reference);
+					columnField.referenceTypeName = referenceType.toString();
+					columnField.referenceKind = kindOf(referenceType);
+				}
+				fields.add(columnField);
+			}
+			TypeMirror superType = type.getSuperclass();
+			if (superType.getKind() != TypeKind.DECLARED)
+				break;
+			type = (TypeElement) ((DeclaredType) superType).asElement();
+			if (findAnnotation(type, ENTITY) == null)
+				break;
+		}
+		return fields;
+	}
+	
+	private void writeAccessor(TypeElement entity, List<ColumnField> fields) throws IOException {
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(entity);
+		String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+		String entityName = entity.getQualifiedName().toString();
+		String accessorSimpleName = entityName.substring(packageName.length() == 0 ? 0 : packageName.length() + 1).replace('.', '$') + ACCESSOR_CLASS_SUFFIX;
+		String accessorName = packageName.length() == 0 ? accessorSimpleName : packageName + "." + accessorSimpleName;
+		
+		StringBuilder source = new StringBuilder();
+		if (packageName.length() > 0)
+			source.append("package ").append(packageName).append(";\n\n");
+		source.append("import android.database.Cursor;\n");
+		source.append("import android.database.sqlite.SQLiteStatement;\n\n");
+		source.append("import com.android.orm.adapter.EntityAccessor;\n");
+		source.append("import com.android.orm.exception.ColumnNotNullableException;\n\n");
+		source.append("/**\n * generated by EntityAccessorProcessor for ").append(entityName).append(", do not edit.\n */\n");
+		source.append("public final class ").append(accessorSimpleName).append(" implements EntityAccessor<").append(entityName).append("> {\n\n");
+		
+		source.append("\tprivate static final String[] FIELD_NAMES = {");
+		for (int i = 0; i < fields.size(); i++)
+			source.append(i == 0 ? " \"" : ", \"").append(fields.get(i).fieldName).append("\"");
+		source.append(" };\n\n");
+		
+		source.append("\t@Override\n\tpublic String[] getFieldNames() {\n\t\treturn FIELD_NAMES;\n\t}\n\n");
+		source.append("\t@Override\n\tpublic ").append(entityName).append(" newInstance() {\n\t\treturn new ").append(entityName).append("();\n\t}\n\n");
+		
+		source.append("\t@Override\n\tpublic Object getValue(").append(entityName).append(" entity, int field) {\n\t\tswitch (field) {\n");
+		for (int i = 0; i < fields.size(); i++)
+			source.append("\t\t\tcase ").append(i).append(":\n\t\t\t\treturn entity.").append(accessorName("get", fields.get(i).fieldName)).append("();\n");
+		source.append("\t\t\tdefault:\n\t\t\t\tthrow new IllegalArgumentException(\"no field at \" + field);\n\t\t}\n\t}\n\n");
+		
+		source.append("\t@Override\n\tpublic void setValue(").append(entityName).append(" entity, int field, Object value) {\n\t\tswitch (field) {\n");
+		for (int i = 0; i < fields.size(); i++) {
+			ColumnField field = fields.get(i);
+			source.append("\t\t\tcase ").append(i).append(":\n\t\t\t\tentity.").append(accessorName("set", field.fieldName)).append("((").append(field.typeName).append(") value);\n\t\t\t\treturn;\n");
+		}
+		source.append("\t\t\tdefault:\n\t\t\t\tthrow new IllegalArgumentException(\"no field at \" + field);\n\t\t}\n\t}\n\n");
+		
+		source.append("\t@Override\n\tpublic void bind(").append(entityName).append(" entity, int field, SQLiteStatement statement, int index) {\n\t\tswitch (field) {\n");
+		for (int i = 0; i < fields.size(); i++) {
+			ColumnField field = fields.get(i);
+			source.append("\t\t\tcase ").append(i).append(": {\n");
+			source.append("\t\t\t\t").append(field.typeName).append(" value = entity.").append(accessorName("get", field.fieldName)).append("();\n");
+			if (field.kind == Kind.ENTITY) {
+				source.append("\t\t\t\t").append(field.referenceTypeName).append(" reference = value == null ? null : value.").append(field.referenceGetter).append("();\n");
+				appendBind(source, field, "reference", field.referenceKind);
+			}
+			else
+				appendBind(source, field, "value", field.kind);
+			source.append("\t\t\t\treturn;\n\t\t\t}\n");
+		}
+		source.append("\t\t\tdefault:\n\t\t\t\tthrow new IllegalArgumentException(\"no field at \" + field);\n\t\t}\n\t}\n\n");
+		
+		source.append("\t@Override\n\tpublic void read(").append(entityName).append(" entity, int field, Cursor cursor, int index) {\n\t\tswitch (field) {\n");
+		for (int i = 0; i < fields.size(); i++) {
+			ColumnField field = fields.get(i);
+			source.append("\t\t\tcase ").append(i).append(":\n");
+			if (field.kind == Kind.ENTITY)
+				source.append("\t\t\t\tthrow new IllegalArgumentException(\"foreign key field ").append(field.fieldName).append(" is resolved by the adapter\");\n");
+			else {
+				source.append("\t\t\t\tentity.").append(accessorName("set", field.fieldName)).append("(cursor.isNull(index) ? null : ");
+				appendRead(source, field.typeName, field.kind);
+				source.append(");\n\t\t\t\treturn;\n");
+			}
+		}
+		source.append("\t\t\tdefault:\n\t\t\t\tthrow new IllegalArgumentException(\"no field at \" + field);\n\t\t}\n\t}\n}\n");
+		
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(accessorName, entity);
+		Writer writer = file.openWriter();
+		try {
+			writer.write(source.toString());
+		}
+		finally {
+			writer.close();
+		}
+	}
+	
+	private void appendBind(StringBuilder source, ColumnField field, String variable, Kind kind) {
+		source.append("\t\t\t\tif (").append(variable).append(" == null) {\n");
+		if (!field.nullable)
+			source.append("\t\t\t\t\tthrow new ColumnNotNullableException(\"").append(field.columnName).append("\");\n");
+		else
+			source.append("\t\t\t\t\tstatement.bindNull(index);\n");
+		source.append("\t\t\t\t}\n\t\t\t\telse\n\t\t\t\t\t");
+		switch (kind) {
+			case STRING:
+				source.append("statement.bindString(index, ").append(variable).append(");\n");
+				break;
+			case LONG:
+			case INTEGER:
+			case SHORT:
+			case BYTE:
+				source.append("statement.bindLong(index, ").append(variable).append(".longValue());\n");
+				break;
+			case BOOLEAN:
+				source.append("statement.bindLong(index, ").append(variable).append(".booleanValue() ? 1 : 0);\n");
+				break;
+			case DOUBLE:
+			case FLOAT:
+				source.append("statement.bindDouble(index, ").append(variable).append(".doubleValue());\n");
+				break;
+			case BLOB:
+				source.append("statement.bindBlob(index, ").append(variable).append(");\n");
+				break;
+			case ENUM:
+				source.append("statement.bindString(index, ").append(variable).append(".name());\n");
+				break;
+			case DATE:
+				source.append("statement.bindLong(index, ").append(variable).append(".getTime());\n");
+				break;
+			default:
+				throw new IllegalArgumentException(kind.name());
+		}
+	}
+	
+	private void appendRead(StringBuilder source, String typeName, Kind kind) {
+		switch (kind) {
+			case STRING:
+				source.append("cursor.getString(index)");
+				break;
+			case LONG:
+				source.append("Long.valueOf(cursor.getLong(index))");
+				break;
+			case INTEGER:
+				source.append("Integer.valueOf(cursor.getInt(index))");
+				break;
+			case SHORT:
+				source.append("Short.valueOf(cursor.getShort(index))");
+				break;
+			case BYTE:
+				source.append("Byte.valueOf((byte) cursor.getInt(index))");
+				break;
+			case BOOLEAN:
+				source.append("Boolean.valueOf(cursor.getInt(index) != 0)");
+				break;
+			case DOUBLE:
+				source.append("Double.valueOf(cursor.getDouble(index))");
+				break;
+			case FLOAT:
+				source.append("Float.valueOf(cursor.getFloat(index))");
+				break;
+			case BLOB:
+				source.append("cursor.getBlob(index)");
+				break;
+			case ENUM:
+				source.append(typeName).append(".valueOf(cursor.getString(index))");
+				break;
+			case DATE:
+				source.append("new ").append(typeName).append("(cursor.getLong(index))");
+				break;
+			default:
+				throw new IllegalArgumentException(kind.name());
+		}
+	}
+	
+	/**
+	 * @return kind of the column type or null if it is not supported, supported types are same with PersistenceUtil.isFieldTypeSupported
+	 */
+	private Kind kindOf(TypeMirror type) {
+		if (type.getKind() == TypeKind.ARRAY)
+			return type.toString().equals("byte[]") ? Kind.BLOB : null;
+		if (type.getKind() != TypeKind.DECLARED)
+			return null;
+		String name = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+		if (name.equals("java.lang.String"))
+			return Kind.STRING;
+		if (name.equals("java.lang.Long"))
+			return Kind.LONG;
+		if (name.equals("java.lang.Integer"))
+			return Kind.INTEGER;
+		if (name.equals("java.lang.Short"))
+			return Kind.SHORT;
+		if (name.equals("java.lang.Byte"))
+			return Kind.BYTE;
+		if (name.equals("java.lang.Boolean"))
+			return Kind.BOOLEAN;
+		if (name.equals("java.lang.Double"))
+			return Kind.DOUBLE;
+		if (name.equals("java.lang.Float"))
+			return Kind.FLOAT;
+		if (((DeclaredType) type).asElement().getKind() == ElementKind.ENUM)
+			return Kind.ENUM;
+		if (isAssignable(type, "java.util.Date"))
+			return Kind.DATE;
+		if (isAssignable(type, PERSISTABLE) && findAnnotation(((DeclaredType) type).asElement(), ENTITY) != null)
+			return Kind.ENTITY;
+		return null;
+	}
+	
+	private TypeMirror findFieldType(TypeElement type, String fieldName) {
+		while (type != null) {
+			for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements()))
+				if (field.getSimpleName().contentEquals(fieldName))
+					return field.asType();
+			TypeMirror superType = type.getSuperclass();
+			if (superType.getKind() != TypeKind.DECLARED)
+				return null;
+			type = (TypeElement) ((DeclaredType) superType).asElement();
+		}
+		return null;
+	}
+	
+	private boolean isAssignable(TypeMirror type, String qualifiedName) {
+		TypeElement target = processingEnv.getElementUtils().getTypeElement(qualifiedName);
+		return target != null && processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(type), processingEnv.getTypeUtils().erasure(target.asType()));
+	}
+	
+	private static AnnotationMirror findAnnotation(Element element, String annotationName) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors())
+			if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName))
+				return mirror;
+		return null;
+	}
+	
+	private static Object annotationValue(AnnotationMirror mirror, String name, Object defaultValue) {
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet())
+			if (entry.getKey().getSimpleName().contentEquals(name))
+				return entry.getValue().getValue();
+		return defaultValue;
+	}
+	
+	/**
+	 * same naming rule with ReflectionUtil.findGetMethod and findSetMethod
+	 */
+	private static String accessorName(String prefix, String fieldName) {
+		return prefix + fieldName.substring(0, 1).toUpperCase() + fieldName.substring(1);
+	}
+}
@@ -22,6 +22,32 @@ public interface OrmConstants {
 	public static final String SQLITE_DATE = "INTEGER";
 	
 	public static final String SQLITE_REAL = "REAL";
+	/**
+	 * generated accessor of an entity is named as entity's qualified name + this suffix
+	 */
+	public static final String ACCESSOR_CLASS_SUFFIX = "$$Accessor";
+	
+	/**
+	 * maximum number of read only connections of an adapter unless another value is given to DatabaseAdapterFactory.getAdapter. Reads use the writer by default, read connections
+	 * only help when write ahead logging is enabled
+	 */
+	public static final int DEFAULT_READ_CONNECTIONS = 0;
+	
+	/**
+	 * maximum number of compiled statements kept by the writer connection unless another value is given to DatabaseAdapterFactory.getAdapter
+	 */
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+	
+	/**
+	 * maximum number of bound parameters in a statement (SQLITE_MAX_VARIABLE_NUMBER), IN clauses with more values are split to chunks of this size
+	 */
+	public static final int SQLITE_MAX_VARIABLE_NUMBER = 999;
+	
+	/**
+	 * registry snapshot of a database is kept in the files directory of the application as database name + this suffix
+	 */
+	public static final String REGISTRY_SNAPSHOT_SUFFIX = ".registry";
+	
 	/**
 	 * if entity is not persisted getId() should return 0
 	 */
@@ -0,0 +1,201 @@
+package com.android.orm.adapter;
+
+import com.android.orm.OrmConstants;
+
+/**
+ * connection settings of an adapter, given to DatabaseAdapterFactory.getAdapter. Settings which are not set keep sqlite defaults.
+ * <p>
+ * requested values may not take effect, e.g. write ahead logging needs sqlite 3.7 (android api 11) and mmap_size needs sqlite 3.7.17. DatabaseAdapter.getEffectiveConfiguration() reads back
+ * the values which are in effect.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+public final class AdapterConfiguration {
+	
+	/**
+	 * values of PRAGMA synchronous
+	 */
+	public enum Synchronous {
+		OFF, NORMAL, FULL
+	}
+	
+	/**
+	 * values of PRAGMA temp_store
+	 */
+	public enum TempStore {
+		DEFAULT, FILE, MEMORY
+	}
+	
+	private int readConnections = OrmConstants.DEFAULT_READ_CONNECTIONS;
+	
+	private boolean writeAheadLogging = false;
+	
+	private Synchronous synchronous;
+	
+	private Integer cacheSize;
+	
+	private Long mmapSize;
+	
+	private TempStore tempStore;
+	
+	private Integer pageSize;
+	
+	private int groupCommitSize = 100;
+	
+	private long groupCommitDelay = 5;
+	
+	private int fetchBatchSize = 100;
+	
+	private boolean registrySnapshot = true;
+	
+	private int statementCacheSize = OrmConstants.DEFAULT_STATEMENT_CACHE_SIZE;
+	
+	public int getReadConnections() {
+		return readConnections;
+	}
+	
+	/**
+	 * @param readConnections maximum number of read only connections, 0 if reads should use the writer connection. Read connections are used only if journal mode of the database
+	 *            is WAL, without it a reader blocks the writer and reads use the writer connection
+	 */
+	public void setReadConnections(int readConnections) {
+		if (readConnections < 0)
+			throw new IllegalArgumentException("read connection count can not be negative : " + readConnections);
+		this.readConnections = readConnections;
+	}
+	
+	public boolean isWriteAheadLogging() {
+		return writeAheadLogging;
+	}
+	
+	/**
+	 * @param writeAheadLogging true to switch journal mode to WAL, readers are not blocked by the writer and commits do not rewrite a rollback journal
+	 */
+	public void setWriteAheadLogging(boolean writeAheadLogging) {
+		this.writeAheadLogging = writeAheadLogging;
+	}
+	
+	public Synchronous getSynchronous() {
+		return synchronous;
+	}
+	
+	/**
+	 * @param synchronous NORMAL is durable enough with WAL and avoids a sync on each commit
+	 */
+	public void setSynchronous(Synchronous synchronous) {
+		this.synchronous = synchronous;
+	}
+	
+	public Integer getCacheSize() {
+		return cacheSize;
+	}
+	
+	/**
+	 * @param cacheSize page cache of each connection, number of pages if positive and KiB if negative
+	 */
+	public void setCacheSize(Integer cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+	
+	public Long getMmapSize() {
+		return mmapSize;
+	}
+	
+	/**
+	 * @param mmapSize bytes of the database file read through memory mapping, 0 disables
+	 */
+	public void setMmapSize(Long mmapSize) {
+		this.mmapSize = mmapSize;
+	}
+	
+	public TempStore getTempStore() {
+		return tempStore;
+	}
+	
+	public void setTempStore(TempStore tempStore) {
+		this.tempStore = tempStore;
+	}
+	
+	public Integer getPageSize() {
+		return pageSize;
+	}
+	
+	/**
+	 * @param pageSize power of two between 512 and 65536. An existing database is vacuumed once to change its page size, page size of a database in WAL mode can not be changed
+	 */
+	public void setPageSize(Integer pageSize) {
+		this.pageSize = pageSize;
+	}
+	
+	public int getGroupCommitSize() {
+		return groupCommitSize;
+	}
+	
+	/**
+	 * @param groupCommitSize maximum number of queued writes committed in a single transaction
+	 */
+	public void setGroupCommitSize(int groupCommitSize) {
+		if (groupCommitSize < 1)
+			throw new IllegalArgumentException("group commit size should be positive : " + groupCommitSize);
+		this.groupCommitSize = groupCommitSize;
+	}
+	
+	public long getGroupCommitDelay() {
+		return groupCommitDelay;
+	}
+	
+	/**
+	 * @param groupCommitDelay milliseconds the writer waits for more queued writes after the first write of a group, 0 commits only the writes already queued
+	 */
+	public void setGroupCommitDelay(long groupCommitDelay) {
+		if (groupCommitDelay < 0)
+			throw new IllegalArgumentException("group commit delay can not be negative : " + groupCommitDelay);
+		this.groupCommitDelay = groupCommitDelay;
+	}
+	
+	public int getFetchBatchSize() {
+		return fetchBatchSize;
+	}
+	
+	/**
+	 * @param fetchBatchSize maximum number of foreign key values in a single IN query while loading eager references and rows hydrated ahead by entity streams, at most OrmConstants.SQLITE_MAX_VARIABLE_NUMBER
+	 */
+	public void setFetchBatchSize(int fetchBatchSize) {
+		if (fetchBatchSize < 1 || fetchBatchSize > OrmConstants.SQLITE_MAX_VARIABLE_NUMBER)
+			throw new IllegalArgumentException("fetch batch size should be between 1 and " + OrmConstants.SQLITE_MAX_VARIABLE_NUMBER + " : " + fetchBatchSize);
+		this.fetchBatchSize = fetchBatchSize;
+	}
+	
+	public boolean isRegistrySnapshot() {
+		return registrySnapshot;
+	}
+	
+	/**
+	 * @param registrySnapshot true to keep scanned entity metadata in a file of the application, later starts read the file instead of scanning entity classes until the application
+	 *            package is updated
+	 */
+	public void setRegistrySnapshot(boolean registrySnapshot) {
+		this.registrySnapshot = registrySnapshot;
+	}
+	
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+	
+	/**
+	 * @param statementCacheSize maximum number of compiled statements of the writer connection, least recently used statement is closed when more statements are compiled
+	 */
+	public void setStatementCacheSize(int statementCacheSize) {
+		if (statementCacheSize < 1)
+			throw new IllegalArgumentException("statement cache size should be positive : " + statementCacheSize);
+		this.statementCacheSize = statementCacheSize;
+	}
+	
+	@Override
+	public String toString() {
+		return "AdapterConfiguration [readConnections=" + readConnections + ", writeAheadLogging=" + writeAheadLogging + ", synchronous=" + synchronous + ", cacheSize=" + cacheSize
+				+ ", mmapSize=" + mmapSize + ", tempStore=" + tempStore + ", pageSize=" + pageSize + ", groupCommitSize=" + groupCommitSize + ", groupCommitDelay=" + groupCommitDelay
+				+ ", fetchBatchSize=" + fetchBatchSize + ", registrySnapshot=" + registrySnapshot + ", statementCacheSize=" + statementCacheSize + "]";
+	}
+}
@@ -0,0 +1,154 @@
+package com.android.orm.adapter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import android.util.Log;
+
+import com.android.orm.Persistable;
+
+/**
+ * runs operations of a DatabaseAdapter on a read executor and a write executor
+ *
+ * @author Hamza Gumrah
+ */
+final class AsyncAdapter implements AsyncDatabaseAdapter {
+	
+	private static final String TAG = "AsyncAdapter";
+	
+	private final DatabaseAdapter adapter;
+	
+	private final Executor readExecutor;
+	
+	private final Executor writeExecutor;
+	
+	AsyncAdapter(DatabaseAdapter adapter, Executor readExecutor, Executor writeExecutor) {
+		this.adapter = adapter;
+		this.readExecutor = readExecutor;
+		this.writeExecutor = writeExecutor;
+	}
+	
+	@Override
+	public <T extends Persistable> Future<T> persist(final T entity, AsyncCallback<? super T> callback) {
+		return submit(this.writeExecutor, new Callable<T>() {
+			
+			@Override
+			public T call() {
+				adapter.persist(entity);
+				return entity;
+			}
+		}, callback);
+	}
+	
+	@Override
+	public <T extends Persistable> Future<Collection<T>> persist(final Collection<T> entityCollection, AsyncCallback<? super Collection<T>> callback) {
+		return submit(this.writeExecutor, new Callable<Collection<T>>() {
+			
+			@Override
+			public Collection<T> call() {
+				adapter.persist(entityCollection);
+				return entityCollection;
+			}
+		}, callback);
+	}
+	
+	@Override
+	public <T extends Persistable> Future<T> get(final long id, final Class<T> clazz, AsyncCallback<? super T> callback) {
+		return submit(this.readExecutor, new Callable<T>() {
+			
+			@Override
+			public T call() {
+				return adapter.get(id, clazz);
+			}
+		}, callback);
+	}
+	
+	@Override
+	public Future<Collection<Map<String, Object>>> query(final String tableName, final String[] columns, final String selection, final String[] selectionArgs, final String groupBy,
+			final String having, final String orderBy, AsyncCallback<? super Collection<Map<String, Object>>> callback) {
+		return submit(this.readExecutor, new Callable<Collection<Map<String, Object>>>() {
+			
+			@Override
+			public Collection<Map<String, Object>> call() {
+				return adapter.query(tableName, columns, selection, selectionArgs, groupBy, having, orderBy);
+			}
+		}, callback);
+	}
+	
+	@Override
+	public <T extends Persistable> Future<T> update(final T entity, AsyncCallback<? super T> callback) {
+		return submit(this.writeExecutor, new Callable<T>() {
+			
+			@Override
+			public T call() {
+				adapter.update(entity);
+				return entity;
+			}
+		}, callback);
+	}
+	
+	@Override
+	public <T extends Persistable> Future<T> delete(final T entity, AsyncCallback<? super T> callback) {
+		return submit(this.writeExecutor, new Callable<T>() {
+			
+			@Override
+			public T call() {
+				adapter.delete(entity);
+				return entity;
+			}
+		}, callback);
+	}
+	
+	private static final <V> Future<V> submit(final Executor executor, final Callable<V> operation, final AsyncCallback<? super V> callback) {
+		CallbackTask<V> task = new CallbackTask<V>(operation, callback);
+		executor.execute(task);
+		return task;
+	}
+	
+	/**
+	 * notifies callback when operation completes
+	 */
+	private static final class CallbackTask<V> extends FutureTask<V> {
+		
+		private final AsyncCallback<? super V> callback;
+		
+		CallbackTask(Callable<V> operation, AsyncCallback<? super V> callback) {
+			super(operation);
+			this.callback = callback;
+		}
+		
+		@Override
+		protected void done() {
+			if (this.callback == null)
+				return;
+			// an exception of the callback would be lost in the executor
+			try {
+				V result;
+				try {
+					result = get();
+				}
+				catch (CancellationException e) {
+					this.callback.onFailure(e);
+					return;
+				}
+				catch (ExecutionException e) {
+					this.callback.onFailure(e.getCause());
+					return;
+				}
+				this.callback.onSuccess(result);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (RuntimeException e) {
+				Log.e(TAG, "Callback failed, ERROR : " + e.getMessage());
+			}
+		}
+	}
+}
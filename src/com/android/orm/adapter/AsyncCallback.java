@@ -0,0 +1,16 @@
+package com.android.orm.adapter;
+
+/**
+ * completion callback of an AsyncDatabaseAdapter operation, called on the executor thread which ran the operation.
+ * 
+ * @author Hamza Gumrah
+ */
+public interface AsyncCallback<T> {
+	
+	void onSuccess(T result);
+	
+	/**
+	 * @param cause exception thrown by the operation, CancellationException if the operation was cancelled
+	 */
+	void onFailure(Throwable cause);
+}
@@ -0,0 +1,55 @@
+package com.android.orm.adapter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import com.android.orm.Persistable;
+
+/**
+ * non blocking facade of DatabaseAdapter, see DatabaseAdapterFactory.getAsyncAdapter. Operations run on executors and return futures, reads and writes use separate executors so a burst
+ * of writes can not occupy the threads of reads.
+ * <p>
+ * callback of each operation is optional, it can be null.
+ * </p>
+ * 
+ * @author Hamza Gumrah
+ */
+public interface AsyncDatabaseAdapter {
+	
+	/**
+	 * @see DatabaseAdapter#persist(Persistable)
+	 * @return future of the persisted entity
+	 */
+	<T extends Persistable> Future<T> persist(T entity, AsyncCallback<? super T> callback);
+	
+	/**
+	 * @see DatabaseAdapter#persist(Collection)
+	 * @return future of the persisted entities
+	 */
+	<T extends Persistable> Future<Collection<T>> persist(Collection<T> entityCollection, AsyncCallback<? super Collection<T>> callback);
+	
+	/**
+	 * @see DatabaseAdapter#get(long, Class)
+	 * @return future of the entity, completes with null if it does not exist
+	 */
+	<T extends Persistable> Future<T> get(long id, Class<T> clazz, AsyncCallback<? super T> callback);
+	
+	/**
+	 * @see DatabaseAdapter#query(String, String[], String, String[], String, String, String)
+	 */
+	Future<Collection<Map<String, Object>>> query(String tableName, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy,
+			AsyncCallback<? super Collection<Map<String, Object>>> callback);
+	
+	/**
+	 * @see DatabaseAdapter#update(Persistable)
+	 * @return future of the updated entity
+	 */
+	<T extends Persistable> Future<T> update(T entity, AsyncCallback<? super T> callback);
+	
+	/**
+	 * @see DatabaseAdapter#delete(Persistable)
+	 * @return future of the deleted entity
+	 */
+	<T extends Persistable> Future<T> delete(T entity, AsyncCallback<? super T> callback);
+}
@@ -0,0 +1,134 @@
+package com.android.orm.adapter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import com.android.orm.OrmConstants;
+import com.android.orm.exception.EntityViolation;
+import com.android.orm.exception.UnRegisteredEntityException;
+
+/**
+ * deletes rows by id with bound IN clauses, ids are split to chunks of OrmConstants.SQLITE_MAX_VARIABLE_NUMBER so every full chunk has the same statement and its compiled statement is
+ * reused from the statement cache. Should be used inside a single transaction.
+ * <p>
+ * if cascade is enabled, rows of OneToMany target entities which refer to deleted rows are deleted before them, recursively. Each row is deleted once even if it is reached from
+ * different relations.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+final class BatchDeleter {
+	
+	private final StatementCache statements;
+	
+	private final boolean cascade;
+	
+	// ids deleted in this batch including cascaded ones, key:entity class
+	private final Map<Class<?>, Set<Long>> deleted;
+	
+	BatchDeleter(StatementCache statements, boolean cascade) {
+		this.statements = statements;
+		this.cascade = cascade;
+		this.deleted = new HashMap<Class<?>, Set<Long>>();
+	}
+	
+	/**
+	 * deletes rows of the entity from all mapped tables, child tables first. ids which do not exist are ignored.
+	 *
+	 * @return number of deleted rows of the entity, cascaded rows are not counted
+	 */
+	final int delete(final EntityMetaData entityMetaData, final List<Long> ids) {
+		Set<Long> deletedIds = this.deleted.get(entityMetaData.getClazz());
+		if (deletedIds == null) {
+			deletedIds = new HashSet<Long>();
+			this.deleted.put(entityMetaData.getClazz(), deletedIds);
+		}
+		List<String> pending = new ArrayList<String>(ids.size());
+		for (Long id : ids)
+			if (deletedIds.add(id))
+				pending.add(String.valueOf(id));
+		if (pending.isEmpty())
+			return 0;
+		if (this.cascade)
+			for (OneToManyMetaData oneToMany : entityMetaData.getOneToMany())
+				cascade(entityMetaData, oneToMany, pending);
+		CrossTableWriter.deleteLinks(this.statements, entityMetaData, pending);
+		LinkedList<TableMetaData> tables = new LinkedList<TableMetaData>();
+		for (TableMetaData tableMetaData : entityMetaData.getMappedTables())
+			tables.addFirst(tableMetaData);
+		TableMetaData root = tables.getLast();
+		int rowNumber = 0;
+		for (int start = 0; start < pending.size(); start += OrmConstants.SQLITE_MAX_VARIABLE_NUMBER) {
+			List<String> chunk = pending.subList(start, Math.min(pending.size(), start + OrmConstants.SQLITE_MAX_VARIABLE_NUMBER));
+			String whereClause = SqliteHelper.generateInClause(OrmConstants.PRIMARY_KEY_COLUMN_NAME, chunk.size());
+			for (TableMetaData tableMetaData : tables) {
+				SQLiteStatement statement = this.statements.get(SqliteHelper.generateDeleteStatement(tableMetaData.getName(), whereClause));
+				SqliteHelper.bindStrings(statement, chunk);
+				statement.execute();
+				if (tableMetaData == root)
+					rowNumber += this.statements.changes();
+			}
+		}
+		return rowNumber;
+	}
+	
+	/**
+	 * @return ids deleted by this deleter, key:entity class
+	 */
+	final Map<Class<?>, Set<Long>> getDeleted() {
+		return this.deleted;
+	}
+	
+	/**
+	 * deletes rows of the relation's target entity whose foreign key refers to one of the parent rows, the foreign key is found like EntityLoader does
+	 *
+	 * @throws EntityViolation if target entity has no foreign key to the parent or its super classes
+	 */
+	private final void cascade(final EntityMetaData parent, final OneToManyMetaData oneToMany, final List<String> parentIds) {
+		EntityMetaData target = DatabaseAdapterFactory.getEntityMetaData(oneToMany.getTargetEntity().getName());
+		if (target == null)
+			throw new UnRegisteredEntityException(oneToMany.getTargetEntity().getName());
+		EntityHydrator hydrator = target.getHydrator();
+		ColumnMetaData columnMetaData = hydrator.getForeignKey(hydrator.findRelationForeignKey(parent.getClazz()));
+		ForeignKeyMetaData foreignKeyMetaData = columnMetaData.getForeignKeyMetaData();
+		List<String> referenceValues = parentIds;
+		if (!foreignKeyMetaData.getReferenceColumnName().equals(OrmConstants.PRIMARY_KEY_COLUMN_NAME))
+			referenceValues = selectColumn(SqliteHelper.findTableName(parent, foreignKeyMetaData.getReferenceColumnName()), foreignKeyMetaData.getReferenceColumnName(),
+					OrmConstants.PRIMARY_KEY_COLUMN_NAME, parentIds);
+		List<String> childIds = selectColumn(SqliteHelper.findTableName(target, columnMetaData.getColumnName()), OrmConstants.PRIMARY_KEY_COLUMN_NAME,
+				columnMetaData.getColumnName(), referenceValues);
+		List<Long> ids = new ArrayList<Long>(childIds.size());
+		for (String childId : childIds)
+			ids.add(Long.valueOf(childId));
+		delete(target, ids);
+	}
+	
+	/**
+	 * @return distinct values of column in rows whose whereColumn is one of the values, non null values only
+	 */
+	private final List<String> selectColumn(final String tableName, final String column, final String whereColumn, final List<String> values) {
+		Set<String> result = new HashSet<String>();
+		for (int start = 0; start < values.size(); start += OrmConstants.SQLITE_MAX_VARIABLE_NUMBER) {
+			List<String> chunk = values.subList(start, Math.min(values.size(), start + OrmConstants.SQLITE_MAX_VARIABLE_NUMBER));
+			Cursor cursor = this.statements.getDataBase().query(tableName, new String[] { column }, SqliteHelper.generateInClause(whereColumn, chunk.size()),
+					chunk.toArray(new String[chunk.size()]), null, null, null);
+			try {
+				while (cursor.moveToNext())
+					if (!cursor.isNull(0))
+						result.add(cursor.getString(0));
+			}
+			finally {
+				cursor.close();
+			}
+		}
+		return new ArrayList<String>(result);
+	}
+}
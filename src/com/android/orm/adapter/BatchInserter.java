@@ -0,0 +1,53 @@
+package com.android.orm.adapter;
+
+import android.database.sqlite.SQLiteStatement;
+
+import com.android.orm.Persistable;
+import com.android.orm.exception.UnRegisteredEntityException;
+
+/**
+ * inserts entities using compiled statements. Each mapped table's INSERT statement is taken from the statement cache of the writer connection, values are bound by index so no
+ * ContentValues is created per row. ManyToMany links of the entity are written with CrossTableWriter. Should be used inside a single transaction.
+ *
+ * @author Hamza Gumrah
+ */
+final class BatchInserter {
+	
+	private final StatementCache statements;
+	
+	private final CrossTableWriter links;
+	
+	BatchInserter(StatementCache statements) {
+		this.statements = statements;
+		this.links = new CrossTableWriter(statements);
+	}
+	
+	/**
+	 * inserts entity to its mapped tables in parent-child order. first table generates the row id, joined tables are inserted with the same _id.
+	 *
+	 * @param entity
+	 * @return generated id of the entity
+	 */
+	final long insert(final Persistable entity) {
+		EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(entity.getClass().getName());
+		if (entityMetaData == null)
+			throw new UnRegisteredEntityException(entity.getClass().getName());
+		Long id = null;
+		for (TableMetaData tableMetaData : entityMetaData.getMappedTables()) {
+			SQLiteStatement statement = this.statements.get(tableMetaData.getInsertStatement());
+			SqliteHelper.bindInsertValues(statement, entityMetaData, tableMetaData, entity, id);
+			long rowId = statement.executeInsert();
+			if (id == null)
+				id = rowId;
+		}
+		this.links.insertLinks(entityMetaData, entity, id);
+		return id;
+	}
+	
+	/**
+	 * @return link writer of the batch, shares the transaction and compiled statements of the inserter
+	 */
+	final CrossTableWriter getCrossTableWriter() {
+		return this.links;
+	}
+}
@@ -0,0 +1,91 @@
+package com.android.orm.adapter;
+
+import android.database.sqlite.SQLiteStatement;
+
+import com.android.orm.OrmConstants;
+import com.android.orm.Persistable;
+import com.android.orm.exception.UnRegisteredEntityException;
+import com.android.orm.util.PersistenceUtil;
+
+/**
+ * inserts or updates entities using compiled statements of the writer connection's statement cache. Should be used inside a single transaction.
+ * <p>
+ * row of an entity is matched by its id if it has one, else by its natural key (see Column.naturalKey()). Each mapped table is updated by _id if it has a row of the id, else the row
+ * is inserted with the id, so constraint violations are thrown instead of being ignored by a conflict clause. Entities without id and without a matching natural key are inserted as
+ * new rows.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+final class BatchUpserter {
+	
+	private final StatementCache statements;
+	
+	// inserts rows which get a new id
+	private final BatchInserter inserter;
+	
+	BatchUpserter(StatementCache statements) {
+		this.statements = statements;
+		this.inserter = new BatchInserter(statements);
+	}
+	
+	/**
+	 * inserts entity or updates its existing row in all mapped tables
+	 *
+	 * @param entity
+	 * @return id of the row
+	 */
+	final long upsert(final Persistable entity) {
+		EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(entity.getClass().getName());
+		if (entityMetaData == null)
+			throw new UnRegisteredEntityException(entity.getClass().getName());
+		long id = OrmConstants.NOT_PERSISTED_ID;
+		if (PersistenceUtil.isPersisted(entity))
+			id = entity.getId();
+		else if (entityMetaData.getNaturalKeyTable() != null)
+			id = findByNaturalKey(entityMetaData, entity);
+		if (id == OrmConstants.NOT_PERSISTED_ID)
+			return this.inserter.insert(entity);
+		entity.setId(id);
+		for (TableMetaData tableMetaData : entityMetaData.getMappedTables()) {
+			if (!exists(tableMetaData, id)) {
+				SQLiteStatement insert = this.statements.get(tableMetaData.getInsertStatement());
+				SqliteHelper.bindInsertValues(insert, entityMetaData, tableMetaData, entity, id);
+				insert.execute();
+			}
+			else if (!tableMetaData.getColumns().isEmpty()) {
+				SQLiteStatement update = this.statements.get(tableMetaData.getUpdateStatement());
+				SqliteHelper.bindUpdateValues(update, entityMetaData, tableMetaData, entity);
+				update.execute();
+			}
+		}
+		this.inserter.getCrossTableWriter().updateLinks(entityMetaData, entity);
+		return id;
+	}
+	
+	/**
+	 * @return true if the table has a row of the id
+	 */
+	private final boolean exists(final TableMetaData tableMetaData, final long id) {
+		SQLiteStatement query = this.statements.get(tableMetaData.getExistsQuery());
+		query.bindLong(1, id);
+		return query.simpleQueryForLong() > 0;
+	}
+	
+	/**
+	 * @return id of the row having natural key values of the entity, NOT_PERSISTED_ID if there is no such row
+	 */
+	private final long findByNaturalKey(final EntityMetaData entityMetaData, final Persistable entity) {
+		SQLiteStatement query = this.statements.get(entityMetaData.getNaturalKeyQuery());
+		ColumnMetaData[] columns = entityMetaData.getNaturalKeyColumns();
+		int[] fields = entityMetaData.getNaturalKeyFields();
+		for (int i = 0; i < columns.length; i++) {
+			Object value = entityMetaData.getAccessor().getValue(entity, fields[i]);
+			// null never equals to a column value
+			if (value == null)
+				return OrmConstants.NOT_PERSISTED_ID;
+			SqliteHelper.bindToStatement(query, i + 1, value, columns[i]);
+		}
+		return query.simpleQueryForLong();
+	}
+}
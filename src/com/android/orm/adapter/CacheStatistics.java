@@ -0,0 +1,67 @@
+package com.android.orm.adapter;
+
+/**
+ * snapshot of counters of a second level entity cache or of the compiled statement cache, used for sizing the cache.
+ * 
+ * @author Hamza Gumrah
+ */
+public final class CacheStatistics {
+	
+	private final long hitCount;
+	
+	private final long missCount;
+	
+	private final long evictionCount;
+	
+	private final int size;
+	
+	private final long bytes;
+	
+	CacheStatistics(long hitCount, long missCount, long evictionCount, int size, long bytes) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.size = size;
+		this.bytes = bytes;
+	}
+	
+	/**
+	 * @return number of gets served from cache
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+	
+	/**
+	 * @return number of gets which went to database
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+	
+	/**
+	 * @return number of rows removed to keep the cache in its bounds
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+	
+	/**
+	 * @return number of cached rows
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * @return approximate size of cached rows in bytes
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+	
+	@Override
+	public String toString() {
+		return "hits : " + hitCount + " misses : " + missCount + " evictions : " + evictionCount + " size : " + size + " bytes : " + bytes;
+	}
+}
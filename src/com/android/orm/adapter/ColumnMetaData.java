@@ -12,31 +12,58 @@ import com.android.orm.util.PersistenceUtil;
  */
 final class ColumnMetaData {
 	
-	private final Column self;
-	
 	private final String sqliteFieldType;
 	
-	private final Method getMethod;
+	// class whose getter and setter are bound on first use
+	private final Class<?> owner;
+	
+	private final Class<?> fieldType;
+	
+	private final boolean nullable;
+	
+	private final int length;
+	
+	private final boolean naturalKey;
 	
-	private final Method setMethod;
+	private volatile Method getMethod;
+	
+	private volatile Method setMethod;
 	
 	private final ForeignKeyMetaData foreignKeyMetaData;
 	
 	private final boolean isDate;
 	
+	private final ColumnType columnType;
+	
 	private final String name;
 	
-	ColumnMetaData(Column self, Method getMethod, Method setMethod, ForeignKeyMetaData foreignKeyMetaData, Class<?> fieldType) {
-		this(self,getMethod,setMethod,foreignKeyMetaData,fieldType,self.name());
+	private final String fieldName;
+	
+	ColumnMetaData(Column self, Method getMethod, Method setMethod, ForeignKeyMetaData foreignKeyMetaData, Class<?> fieldType, String fieldName) {
+		this(self,getMethod,setMethod,foreignKeyMetaData,fieldType,self.name(),fieldName);
+	}
+	ColumnMetaData(Column self, Method getMethod, Method setMethod, ForeignKeyMetaData foreignKeyMetaData, Class<?> fieldType,String name, String fieldName) {
+		this(getMethod.getDeclaringClass(), foreignKeyMetaData, fieldType, name, fieldName, self.nullable(), self.length(), self.naturalKey());
+		this.getMethod = getMethod;
+		this.setMethod = setMethod;
 	}
-	ColumnMetaData(Column self, Method getMethod, Method setMethod, ForeignKeyMetaData foreignKeyMetaData, Class<?> fieldType,String name) {
+	
+	/**
+	 * column read from a registry snapshot, getter and setter are found on owner when they are first used
+	 * 
+	 * @param owner entity class which has the getter and setter of the field
+	 */
+	ColumnMetaData(Class<?> owner, ForeignKeyMetaData foreignKeyMetaData, Class<?> fieldType, String name, String fieldName, boolean nullable, int length, boolean naturalKey) {
 		super();
 		if(name.equals(""))
 			throw new InstantiationError("Column name must defined");
 		this.isDate = PersistenceUtil.isDate(fieldType);
-		this.self = self;
-		this.getMethod = getMethod;
-		this.setMethod = setMethod;
+		this.columnType = ColumnType.of(fieldType);
+		this.owner = owner;
+		this.fieldType = fieldType;
+		this.nullable = nullable;
+		this.length = length;
+		this.naturalKey = naturalKey;
 		this.foreignKeyMetaData = foreignKeyMetaData;
 		// if this is a foreign key , sqliteFieldType should be foreign key reference column type
 		if (this.foreignKeyMetaData != null)
@@ -44,9 +71,14 @@ final class ColumnMetaData {
 		else
 			this.sqliteFieldType = SqliteHelper.getSqliteTypeName(fieldType);
 		this.name = name;
+		this.fieldName = fieldName;
 	}
 	final boolean isNullable() {
-		return self.nullable();
+		return this.nullable;
+	}
+	
+	final boolean isNaturalKey() {
+		return this.naturalKey;
 	}
 	
 	final boolean isForeignKey() {
@@ -58,30 +90,50 @@ final class ColumnMetaData {
 	}
 	
 	final Method getGetter() {
-		return this.getMethod;
+		Method method = this.getMethod;
+		if (method == null)
+			this.getMethod = method = MethodBinder.getter(this.owner, this.fieldName);
+		return method;
 	}
 	
 	final Method getSetter() {
-		return this.setMethod;
+		Method method = this.setMethod;
+		if (method == null)
+			this.setMethod = method = MethodBinder.setter(this.owner, this.fieldType, this.fieldName);
+		return method;
 	}
 	
 	final boolean isDate() {
 		return this.isDate;
 	}
 	
+	/**
+	 * @return type tag of the field, ENTITY for foreign keys
+	 */
+	final ColumnType getColumnType() {
+		return this.columnType;
+	}
+	
 	final ForeignKeyMetaData getForeignKeyMetaData() {
 		return this.foreignKeyMetaData;
 	}
 	
 	final Class<?> getFieldType() {
-		return this.getMethod.getReturnType();
+		return this.fieldType;
 	}
 	
 	final int length() {
-		return self.length();
+		return this.length;
 	}
 	
 	final String getColumnName() {
 		return this.name;
 	}
+	
+	/**
+	 * @return name of the entity field, used to find field index in EntityAccessor
+	 */
+	final String getFieldName() {
+		return this.fieldName;
+	}
 }
@@ -0,0 +1,48 @@
+package com.android.orm.adapter;
+
+import com.android.orm.exception.UnsupportedFieldTypeException;
+import com.android.orm.util.PersistenceUtil;
+
+/**
+ * type tag of a column field, resolved once during registry creation. insert, update and query paths switch on this tag instead of discovering the value type for each value.
+ *
+ * @author Hamza Gumrah
+ */
+enum ColumnType {
+	STRING, LONG, INTEGER, SHORT, BYTE, BOOLEAN, DOUBLE, FLOAT, BLOB, ENUM, DATE, SQL_DATE, ENTITY;
+	
+	/**
+	 * @param fieldType
+	 * @return tag of the field type
+	 * @throws UnsupportedFieldTypeException if field type can not be mapped to a column
+	 */
+	static final ColumnType of(final Class<?> fieldType) {
+		if (String.class.isAssignableFrom(fieldType))
+			return STRING;
+		if (Long.class.isAssignableFrom(fieldType))
+			return LONG;
+		if (Integer.class.isAssignableFrom(fieldType))
+			return INTEGER;
+		if (Short.class.isAssignableFrom(fieldType))
+			return SHORT;
+		if (Byte.class.isAssignableFrom(fieldType))
+			return BYTE;
+		if (Boolean.class.isAssignableFrom(fieldType))
+			return BOOLEAN;
+		if (Double.class.isAssignableFrom(fieldType))
+			return DOUBLE;
+		if (Float.class.isAssignableFrom(fieldType))
+			return FLOAT;
+		if (byte[].class.isAssignableFrom(fieldType))
+			return BLOB;
+		if (Enum.class.isAssignableFrom(fieldType))
+			return ENUM;
+		if (java.sql.Date.class.isAssignableFrom(fieldType))
+			return SQL_DATE;
+		if (java.util.Date.class.isAssignableFrom(fieldType))
+			return DATE;
+		if (PersistenceUtil.isPersistable(fieldType))
+			return ENTITY;
+		throw new UnsupportedFieldTypeException(fieldType.getName());
+	}
+}
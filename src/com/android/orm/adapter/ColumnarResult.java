@@ -0,0 +1,157 @@
+package com.android.orm.adapter;
+
+import android.database.Cursor;
+
+/**
+ * column oriented result of a query for analytic reads over many rows. Each column is filled into a single primitive array sized from the cursor count, so values are not boxed per row.
+ * <p>
+ * Type of each column is given by the caller since cursor column types can not be resolved on all supported api levels. Null values are read as 0 or null and can be checked by isNull.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+public final class ColumnarResult {
+	
+	/**
+	 * array type a column is read into
+	 */
+	public enum Type {
+		/** long[] , for integer columns */
+		LONG,
+		/** double[] , for real columns */
+		DOUBLE,
+		/** String[] */
+		STRING
+	}
+	
+	private final String[] columnNames;
+	
+	private final Type[] types;
+	
+	// long[], double[] or String[] of each column
+	private final Object[] values;
+	
+	// null flags of each column, created only for columns having a null value
+	private final boolean[][] nulls;
+	
+	private final int rowCount;
+	
+	/**
+	 * reads all rows of the cursor, cursor is not closed
+	 */
+	ColumnarResult(Cursor cursor, Type[] types) {
+		if (types.length != cursor.getColumnCount())
+			throw new IllegalArgumentException("expected " + cursor.getColumnCount() + " column types but " + types.length + " given");
+		this.types = types.clone();
+		this.rowCount = cursor.getCount();
+		this.columnNames = cursor.getColumnNames();
+		this.values = new Object[types.length];
+		this.nulls = new boolean[types.length][];
+		for (int column = 0; column < types.length; column++) {
+			switch (types[column]) {
+				case LONG:
+					this.values[column] = new long[this.rowCount];
+					break;
+				case DOUBLE:
+					this.values[column] = new double[this.rowCount];
+					break;
+				default:
+					this.values[column] = new String[this.rowCount];
+			}
+		}
+		int row = 0;
+		while (row < this.rowCount && cursor.moveToNext()) {
+			for (int column = 0; column < types.length; column++) {
+				if (cursor.isNull(column)) {
+					if (this.nulls[column] == null)
+						this.nulls[column] = new boolean[this.rowCount];
+					this.nulls[column][row] = true;
+					continue;
+				}
+				switch (types[column]) {
+					case LONG:
+						((long[]) this.values[column])[row] = cursor.getLong(column);
+						break;
+					case DOUBLE:
+						((double[]) this.values[column])[row] = cursor.getDouble(column);
+						break;
+					default:
+						((String[]) this.values[column])[row] = cursor.getString(column);
+				}
+			}
+			row++;
+		}
+	}
+	
+	public int getRowCount() {
+		return this.rowCount;
+	}
+	
+	public int getColumnCount() {
+		return this.columnNames.length;
+	}
+	
+	public String getColumnName(int column) {
+		return this.columnNames[column];
+	}
+	
+	public Type getType(int column) {
+		return this.types[column];
+	}
+	
+	/**
+	 * @return index of the column
+	 * @throws IllegalArgumentException if column does not exist
+	 */
+	public int getColumnIndex(String columnName) {
+		for (int i = 0; i < this.columnNames.length; i++)
+			if (this.columnNames[i].equalsIgnoreCase(columnName))
+				return i;
+		throw new IllegalArgumentException("column " + columnName + " does not exist");
+	}
+	
+	public boolean isNull(int row, int column) {
+		return this.nulls[column] != null && this.nulls[column][row];
+	}
+	
+	public long getLong(int row, int column) {
+		return getLongs(column)[row];
+	}
+	
+	public double getDouble(int row, int column) {
+		return getDoubles(column)[row];
+	}
+	
+	public String getString(int row, int column) {
+		return getStrings(column)[row];
+	}
+	
+	/**
+	 * @return values of a LONG column, returned array is not copied and should not be modified
+	 */
+	public long[] getLongs(int column) {
+		checkType(column, Type.LONG);
+		return (long[]) this.values[column];
+	}
+	
+	/**
+	 * @return values of a DOUBLE column, returned array is not copied and should not be modified
+	 */
+	public double[] getDoubles(int column) {
+		checkType(column, Type.DOUBLE);
+		return (double[]) this.values[column];
+	}
+	
+	/**
+	 * @return values of a STRING column, returned array is not copied and should not be modified
+	 */
+	public String[] getStrings(int column) {
+		checkType(column, Type.STRING);
+		return (String[]) this.values[column];
+	}
+	
+	private void checkType(int column, Type type) {
+		if (this.types[column] != type)
+			throw new IllegalArgumentException("column " + this.columnNames[column] + " is read as " + this.types[column] + " not " + type);
+	}
+}
@@ -0,0 +1,190 @@
+package com.android.orm.adapter;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * connections of an adapter, a single writer connection opened by SQLiteOpenHelper and a bounded pool of read only connections opened on demand. Read connections are used only
+ * when journal mode of the database is WAL, with a rollback journal a reader locks out the writer so reads use the writer connection.
+ * <p>
+ * writes are serialized by the lock of the writer connection. Readers are checked out from an idle queue without a global lock, a thread waits only when all read connections are in use.
+ * Reads of a thread which holds the writer, e.g. inside a write transaction, use the writer so they see uncommitted rows of the transaction.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+final class ConnectionPool {
+	
+	// waiting threads check periodically whether a failed reader slot can be opened again
+	private static final long READER_WAIT_MILLIS = 100;
+	
+	private final SQLiteOpenHelper databaseHelper;
+	
+	private final AdapterConfiguration configuration;
+	
+	private final int readConnections;
+	
+	private final BlockingQueue<SQLiteDatabase> idleReaders;
+	
+	private final AtomicInteger openedReaders;
+	
+	// readers returned by acquireReader and not released yet, cleared by close so a reader released after close is closed instead of pooled
+	private final Set<SQLiteDatabase> checkedOutReaders;
+	
+	// true if journal mode of the writer is WAL when the pool is opened
+	private volatile boolean writeAheadLogging = false;
+	
+	private volatile SQLiteDatabase writer;
+	
+	// compiled statements of the writer
+	private volatile StatementCache statements;
+	
+	private volatile boolean closed = false;
+	
+	/**
+	 * @param databaseHelper applies configuration to the writer when it opens
+	 * @param configuration read connections are opened with its per connection settings
+	 */
+	ConnectionPool(SQLiteOpenHelper databaseHelper, AdapterConfiguration configuration) {
+		this.databaseHelper = databaseHelper;
+		this.configuration = configuration;
+		this.readConnections = configuration.getReadConnections();
+		this.idleReaders = new LinkedBlockingQueue<SQLiteDatabase>();
+		this.openedReaders = new AtomicInteger(0);
+		this.checkedOutReaders = Collections.newSetFromMap(new ConcurrentHashMap<SQLiteDatabase, Boolean>());
+	}
+	
+	/**
+	 * opens writer connection, creates or upgrades database if needed
+	 */
+	final void open() {
+		this.closed = false;
+		this.writer = this.databaseHelper.getWritableDatabase();
+		// WAL may be requested but not supported, e.g before api 11
+		this.writeAheadLogging = "wal".equalsIgnoreCase(SqliteHelper.pragma(this.writer, "journal_mode"));
+		this.statements = new StatementCache(this.writer, this.configuration.getStatementCacheSize());
+	}
+	
+	/**
+	 * @throws IllegalStateException if pool is not open
+	 */
+	final SQLiteDatabase getWriter() {
+		SQLiteDatabase writer = this.writer;
+		if (this.closed || writer == null)
+			throw new IllegalStateException("database connections are not open");
+		return writer;
+	}
+	
+	/**
+	 * @return compiled statements of the writer connection
+	 * @throws IllegalStateException if pool is not open
+	 */
+	final StatementCache getStatementCache() {
+		StatementCache statements = this.statements;
+		if (this.closed || statements == null)
+			throw new IllegalStateException("database connections are not open");
+		return statements;
+	}
+	
+	/**
+	 * checks out a read connection, should be returned by releaseReader. Writer is returned if there are no read connections or journal mode is not WAL
+	 */
+	final SQLiteDatabase acquireReader() {
+		SQLiteDatabase writer = getWriter();
+		if (this.readConnections == 0 || !this.writeAheadLogging || writer.isDbLockedByCurrentThread())
+			return writer;
+		for (;;) {
+			SQLiteDatabase reader = this.idleReaders.poll();
+			if (reader != null)
+				return checkOut(reader);
+			int opened = this.openedReaders.get();
+			if (opened < this.readConnections) {
+				if (this.openedReaders.compareAndSet(opened, opened + 1))
+					return checkOut(openReader(writer));
+				continue;
+			}
+			try {
+				reader = this.idleReaders.poll(READER_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("interrupted while waiting for a read connection");
+			}
+			if (reader != null)
+				return checkOut(reader);
+			getWriter();
+		}
+	}
+	
+	private final SQLiteDatabase checkOut(final SQLiteDatabase reader) {
+		this.checkedOutReaders.add(reader);
+		// pool may be closed while reader is checked out, a reader already cleared by close is closed when it is released
+		if (this.closed && this.checkedOutReaders.remove(reader)) {
+			reader.close();
+			throw new IllegalStateException("database connections are not open");
+		}
+		return reader;
+	}
+	
+	/**
+	 * returns a connection checked out by acquireReader, a reader checked out before the pool is closed is closed
+	 */
+	final void releaseReader(final SQLiteDatabase reader) {
+		// writer is closed by the pool, it may be released after close too
+		if (reader == this.writer || !reader.isReadOnly())
+			return;
+		if (!this.checkedOutReaders.remove(reader) || this.closed) {
+			reader.close();
+			return;
+		}
+		this.idleReaders.offer(reader);
+		// pool may be closed while reader is offered
+		if (this.closed && this.idleReaders.remove(reader))
+			reader.close();
+	}
+	
+	/**
+	 * closes idle readers and writer, readers in use are closed when they are released
+	 */
+	final void close() {
+		this.closed = true;
+		// readers in use are not counted anymore, the pool may be opened again before they are released
+		this.checkedOutReaders.clear();
+		SQLiteDatabase reader;
+		while ((reader = this.idleReaders.poll()) != null)
+			reader.close();
+		this.openedReaders.set(0);
+		StatementCache statements = this.statements;
+		this.statements = null;
+		if (statements != null)
+			statements.close();
+		this.databaseHelper.close();
+		this.writer = null;
+	}
+	
+	private final SQLiteDatabase openReader(final SQLiteDatabase writer) {
+		try {
+			SQLiteDatabase reader = SQLiteDatabase.openDatabase(writer.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+			try {
+				SqliteHelper.configureReader(reader, this.configuration);
+			}
+			catch (RuntimeException e) {
+				reader.close();
+				throw e;
+			}
+			return reader;
+		}
+		catch (RuntimeException e) {
+			this.openedReaders.decrementAndGet();
+			throw e;
+		}
+	}
+}
@@ -2,14 +2,27 @@ package com.android.orm.adapter;
 
 import android.util.Pair;
 
+import com.android.orm.OrmConstants;
+
 final class CrossTableMetaData {
 	
-	// {tableName,Entity.class}
+	// {entityName,Entity.class}
 	private final String name;
 	
 	private final Pair<String, Class<?>> firstTableNameEntityPair;
 	
 	private final Pair<String, Class<?>> secondTableNameEntityPair;
+	
+	// link columns keeping _id of first and second entity
+	private final String firstColumnName;
+	
+	private final String secondColumnName;
+	
+	// statements are used for every link, they are generated once
+	private final String insertStatement;
+	
+	private final String deleteStatement;
+	
 	/**
 	 * cross table name will be firstTableNameEntityPair.first+"_"+secondTableNameEntityPair.first+"_CROSS";
 	 * @param firstTableNameEntityPair
@@ -19,6 +32,14 @@ final class CrossTableMetaData {
 		this.firstTableNameEntityPair = firstTableNameEntityPair;
 		this.secondTableNameEntityPair = secondTableNameEntityPair;
 		this.name = firstTableNameEntityPair.first+"_"+secondTableNameEntityPair.first+"_CROSS";
+		this.firstColumnName = firstTableNameEntityPair.first.toLowerCase() + OrmConstants.PRIMARY_KEY_COLUMN_NAME;
+		// an entity related to itself
+		if (firstTableNameEntityPair.first.equals(secondTableNameEntityPair.first))
+			this.secondColumnName = secondTableNameEntityPair.first.toLowerCase() + "_target" + OrmConstants.PRIMARY_KEY_COLUMN_NAME;
+		else
+			this.secondColumnName = secondTableNameEntityPair.first.toLowerCase() + OrmConstants.PRIMARY_KEY_COLUMN_NAME;
+		this.insertStatement = "INSERT OR IGNORE INTO " + this.name + " (" + this.firstColumnName + ", " + this.secondColumnName + ") VALUES (?, ?);";
+		this.deleteStatement = "DELETE FROM " + this.name + " WHERE " + this.firstColumnName + " = ? AND " + this.secondColumnName + " = ?;";
 	}
 	
 	public Pair<String, Class<?>> getFirstTableNameEntityPair() {
@@ -28,10 +49,39 @@ final class CrossTableMetaData {
 	public Pair<String, Class<?>> getSecondTableNameEntityPair() {
 		return secondTableNameEntityPair;
 	}
-
+	
 	
 	public String getName() {
 		return name;
 	}
 	
+	public String getFirstColumnName() {
+		return firstColumnName;
+	}
+	
+	public String getSecondColumnName() {
+		return secondColumnName;
+	}
+	
+	/**
+	 * @return true if class is one of the related entities or their sub classes
+	 */
+	final boolean relates(final Class<?> clazz) {
+		return this.firstTableNameEntityPair.second.isAssignableFrom(clazz) || this.secondTableNameEntityPair.second.isAssignableFrom(clazz);
+	}
+	
+	/**
+	 * @return INSERT OR IGNORE statement with first and second entity ids as parameters, existing links are kept
+	 */
+	final String getInsertStatement() {
+		return this.insertStatement;
+	}
+	
+	/**
+	 * @return DELETE statement with first and second entity ids as parameters
+	 */
+	final String getDeleteStatement() {
+		return this.deleteStatement;
+	}
+
 }
@@ -0,0 +1,160 @@
+package com.android.orm.adapter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import com.android.orm.OrmConstants;
+import com.android.orm.Persistable;
+import com.android.orm.exception.PersistenceException;
+import com.android.orm.util.PersistenceUtil;
+
+/**
+ * writes ManyToMany links of entities to cross tables. INSERT and DELETE statements of each cross table are taken from the statement cache of the writer connection. Should be used
+ * inside a single transaction.
+ * <p>
+ * a relation field which is null is not written, so an entity whose relations are not set does not lose its links. Update writes only relations whose target ids differ from the ones
+ * kept by the session, see getChangedRelations.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+final class CrossTableWriter {
+	
+	private final StatementCache statements;
+	
+	CrossTableWriter(StatementCache statements) {
+		this.statements = statements;
+	}
+	
+	/**
+	 * writes links of a new entity
+	 *
+	 * @param id generated id of the entity
+	 * @throws PersistenceException if a target is not saved to database
+	 */
+	final void insertLinks(final EntityMetaData entityMetaData, final Persistable entity, final long id) {
+		for (ManyToManyMetaData manyToMany : entityMetaData.getManyToMany()) {
+			Collection<Persistable> targets = manyToMany.getTargets(entity);
+			if (targets == null)
+				continue;
+			for (Persistable target : targets)
+				link(this.statements.get(manyToMany.getCrossTable().getInsertStatement()), manyToMany, id, getTargetId(entity, target));
+		}
+	}
+	
+	/**
+	 * compares links of the entity in database with its relation fields, writes only added and removed links
+	 *
+	 * @throws PersistenceException if a target is not saved to database
+	 */
+	final void updateLinks(final EntityMetaData entityMetaData, final Persistable entity) {
+		updateLinks(entity, entityMetaData.getManyToMany());
+	}
+	
+	/**
+	 * updateLinks of the given relations of the entity
+	 *
+	 * @param relations relations of the entity, e.g. getChangedRelations
+	 */
+	final void updateLinks(final Persistable entity, final Collection<ManyToManyMetaData> relations) {
+		for (ManyToManyMetaData manyToMany : relations) {
+			Set<Long> current = getTargetIds(entity, manyToMany);
+			if (current == null)
+				continue;
+			Set<Long> existing = new HashSet<Long>();
+			Cursor cursor = this.statements.getDataBase().query(manyToMany.getCrossTable().getName(), new String[] { manyToMany.getTargetColumn() }, manyToMany.getOwnerColumn() + " = ?",
+					new String[] { String.valueOf(entity.getId()) }, null, null, null);
+			try {
+				while (cursor.moveToNext())
+					existing.add(cursor.getLong(0));
+			}
+			finally {
+				cursor.close();
+			}
+			for (Long targetId : current)
+				if (!existing.remove(targetId))
+					link(this.statements.get(manyToMany.getCrossTable().getInsertStatement()), manyToMany, entity.getId(), targetId);
+			// links left in existing are removed from the field
+			for (Long targetId : existing)
+				link(this.statements.get(manyToMany.getCrossTable().getDeleteStatement()), manyToMany, entity.getId(), targetId);
+		}
+	}
+	
+	/**
+	 * @param identityMap session of the write, null if there is none
+	 * @return relations of the entity which are set and whose target ids are not the ones kept by the session, each of them costs a query of the existing links on update
+	 * @throws PersistenceException if a target is not saved to database
+	 */
+	static final List<ManyToManyMetaData> getChangedRelations(final EntityMetaData entityMetaData, final Persistable entity, final IdentityMap identityMap) {
+		List<ManyToManyMetaData> changed = new ArrayList<ManyToManyMetaData>();
+		for (ManyToManyMetaData manyToMany : entityMetaData.getManyToMany()) {
+			Set<Long> current = getTargetIds(entity, manyToMany);
+			if (current == null)
+				continue;
+			Set<Long> kept = identityMap == null ? null : identityMap.getLinks(entity, manyToMany.getFieldName());
+			if (!current.equals(kept))
+				changed.add(manyToMany);
+		}
+		return changed;
+	}
+	
+	/**
+	 * @return ids of the relation's targets, null if relation field is null
+	 * @throws PersistenceException if a target is not saved to database
+	 */
+	static final Set<Long> getTargetIds(final Persistable entity, final ManyToManyMetaData manyToMany) {
+		Collection<Persistable> targets = manyToMany.getTargets(entity);
+		if (targets == null)
+			return null;
+		Set<Long> ids = new HashSet<Long>();
+		for (Persistable target : targets)
+			ids.add(getTargetId(entity, target));
+		return ids;
+	}
+	
+	/**
+	 * deletes links of the rows from all cross tables relating the entity, including the ones declared only by the other side
+	 *
+	 * @param ids ids of the entity's rows
+	 */
+	static final void deleteLinks(final StatementCache statements, final EntityMetaData entityMetaData, final List<String> ids) {
+		for (CrossTableMetaData crossTable : DatabaseAdapterFactory.getCrossTableRegistry().values()) {
+			if (!crossTable.relates(entityMetaData.getClazz()))
+				continue;
+			for (int start = 0; start < ids.size(); start += OrmConstants.SQLITE_MAX_VARIABLE_NUMBER) {
+				List<String> chunk = ids.subList(start, Math.min(ids.size(), start + OrmConstants.SQLITE_MAX_VARIABLE_NUMBER));
+				if (crossTable.getFirstTableNameEntityPair().second.isAssignableFrom(entityMetaData.getClazz()))
+					deleteLinks(statements, crossTable, crossTable.getFirstColumnName(), chunk);
+				if (crossTable.getSecondTableNameEntityPair().second.isAssignableFrom(entityMetaData.getClazz()))
+					deleteLinks(statements, crossTable, crossTable.getSecondColumnName(), chunk);
+			}
+		}
+	}
+	
+	private static final void deleteLinks(final StatementCache statements, final CrossTableMetaData crossTable, final String column, final List<String> ids) {
+		SQLiteStatement delete = statements.get(SqliteHelper.generateDeleteStatement(crossTable.getName(), SqliteHelper.generateInClause(column, ids.size())));
+		SqliteHelper.bindStrings(delete, ids);
+		delete.execute();
+	}
+	
+	/**
+	 * binds ids in cross table column order and executes the statement
+	 */
+	private static final void link(final SQLiteStatement statement, final ManyToManyMetaData manyToMany, final long ownerId, final long targetId) {
+		statement.bindLong(manyToMany.isOwnerFirst() ? 1 : 2, ownerId);
+		statement.bindLong(manyToMany.isOwnerFirst() ? 2 : 1, targetId);
+		statement.execute();
+	}
+	
+	private static final long getTargetId(final Persistable entity, final Persistable target) {
+		if (target == null || !PersistenceUtil.isPersisted(target))
+			throw new PersistenceException(entity, "ManyToMany target " + target + " should be saved to database before it is linked");
+		return target.getId();
+	}
+}
@@ -0,0 +1,79 @@
+package com.android.orm.adapter;
+
+import java.util.NoSuchElementException;
+
+import android.database.Cursor;
+
+/**
+ * ResultIterator over a cursor, subclasses map the current row of the cursor to the result type.
+ * 
+ * @author Hamza Gumrah
+ */
+abstract class CursorResultIterator<T> implements ResultIterator<T> {
+	
+	protected final Cursor cursor;
+	
+	// true if cursor is moved to a row which is not returned by next() yet
+	private boolean advanced = false;
+	
+	private boolean hasNext = false;
+	
+	CursorResultIterator(Cursor cursor) {
+		this.cursor = cursor;
+	}
+	
+	/**
+	 * @return result of the current row of the cursor
+	 */
+	protected abstract T read(Cursor cursor);
+	
+	@Override
+	public final boolean hasNext() {
+		if (!this.advanced) {
+			if (this.cursor.isClosed())
+				return false;
+			this.hasNext = this.cursor.moveToNext();
+			this.advanced = true;
+			if (!this.hasNext)
+				this.cursor.close();
+		}
+		return this.hasNext;
+	}
+	
+	@Override
+	public final T next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		this.advanced = false;
+		return read(this.cursor);
+	}
+	
+	@Override
+	public final void remove() {
+		throw new UnsupportedOperationException("query results are read only");
+	}
+	
+	@Override
+	public final void close() {
+		if (!this.cursor.isClosed())
+			this.cursor.close();
+	}
+	
+	/**
+	 * iterator over typed row views
+	 */
+	static final class RowIterator extends CursorResultIterator<Row> {
+		
+		private final Row row;
+		
+		RowIterator(Cursor cursor) {
+			super(cursor);
+			this.row = new Row(cursor);
+		}
+		
+		@Override
+		protected Row read(Cursor cursor) {
+			return this.row;
+		}
+	}
+}
@@ -1,8 +1,10 @@
 package com.android.orm.adapter;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import com.android.orm.Persistable;
 
@@ -29,6 +31,24 @@ public interface DatabaseAdapter {
 	void setForeignKeySupport(boolean enabled);
 	
 	
+	/**
+	 * reads connection settings from the database, requested settings of AdapterConfiguration which are not supported by the device's sqlite version are not reported as requested.
+	 * 
+	 * @return settings in effect on the writer connection
+	 */
+	AdapterConfiguration getEffectiveConfiguration();
+	
+	/**
+	 * starts a session for the calling thread. until endSession, each row is loaded once and the same instance is returned for repeated loads
+	 * of the same row. persist, update and delete keep loaded instances consistent. Without a session instances are shared only inside a single get.
+	 */
+	void beginSession();
+	
+	/**
+	 * ends session of the calling thread and releases its loaded instances
+	 */
+	void endSession();
+	
 	/**
 	 * inserts an entity to database
 	 * 
@@ -54,13 +74,77 @@ public interface DatabaseAdapter {
 	 * @throws PersistenceException
 	 */
 	<T extends Persistable> void persist(Set<T> entitySet);
+	/**
+	 * inserts or updates entities in a single transaction, rows which already exist are updated instead of failing the batch. Row of an entity is matched by its id if it is persisted,
+	 * else by its natural key (Column.naturalKey()); entities matching no row are inserted and get a new id. roll backs if any exception occurs, ids are restored to their values before
+	 * the call.
+	 * 
+	 * @param entityCollection if entityCollection is null or has no records than returns.
+	 * @throws BatchPersistenceException
+	 */
+	<T extends Persistable> void upsert(Collection<T> entityCollection);
+	
+	/**
+	 * queues the insert of the entity, queued writes are executed by a single writer thread and committed in groups. Bounds of a group are AdapterConfiguration.getGroupCommitSize() and
+	 * getGroupCommitDelay(). Queued writes do not update identity map of the caller's session.
+	 * 
+	 * @param entity should not be modified until the future completes
+	 * @return future which completes with the generated id, or fails with the cause of the failure
+	 */
+	<T extends Persistable> Future<Long> enqueuePersist(T entity);
+	
+	/**
+	 * queues the update of the entity, see enqueuePersist
+	 * 
+	 * @return future which completes with the id of the entity
+	 */
+	Future<Long> enqueueUpdate(Persistable entity);
+	
+	/**
+	 * queues the delete of the entity, see enqueuePersist
+	 * 
+	 * @return future which completes with the id of the entity, fails with RecordNotFoundException if entity is not in database
+	 */
+	Future<Long> enqueueDelete(Persistable entity);
+	
 	/**
 	 * @param systemId
 	 * @param clazz
-	 * @return entity with corresponding id else null
+	 * @return entity with corresponding id else null. FetchType.LAZY references are stubs having only the reference value, unless referenced rows are already loaded. FetchType.LAZY
+	 *         OneToMany and ManyToMany fields are left null
 	 */
 	<T extends Persistable> T get(long id, Class<T> clazz);
 	
+	/**
+	 * gets entity with its FetchType.LAZY references and relations loaded, references of the loaded references stay lazy
+	 * 
+	 * @param id
+	 * @param clazz
+	 * @return entity with corresponding id else null
+	 */
+	<T extends Persistable> T getByLazy(long id, Class<T> clazz);
+	
+	/**
+	 * replaces stubs of FetchType.LAZY references of a loaded entity with loaded entities, a reference whose row does not exist anymore is set to null. FetchType.LAZY OneToMany and
+	 * ManyToMany relations of the entity are loaded too
+	 * 
+	 * @param entity
+	 * @return entity
+	 */
+	<T extends Persistable> T loadReferences(T entity);
+	
+	/**
+	 * @param clazz entity class
+	 * @return hit, miss and eviction counters of the entity's second level cache, null if cache is not enabled by Entity.cacheEntries()
+	 */
+	CacheStatistics getCacheStatistics(Class<? extends Persistable> clazz);
+	
+	/**
+	 * @return hit, miss and eviction counters of the writer connection's compiled statement cache, size is the number of compiled statements. Bytes are not measured.
+	 * @see AdapterConfiguration#setStatementCacheSize(int)
+	 */
+	CacheStatistics getStatementCacheStatistics();
+	
 	/**
 	 * enables to write any custom query
 	 * 
@@ -71,14 +155,59 @@ public interface DatabaseAdapter {
 	 * @param groupBy
 	 * @param having
 	 * @param orderBy
-	 * @return
+	 * @return rows of the query in cursor order, each row maps column names to Long, Double, String, byte[] or null values
 	 */
 	Collection<Map<String, Object>> query(String tableName, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy);
 	
 	/**
-	 * updates entity
+	 * columnar version of query for analytic reads, values of each column are read into a single primitive array instead of a map per row.
+	 * 
+	 * @param columns selected columns or expressions, should not be null
+	 * @param types array type of each column in columns order
+	 * @return all rows of the query
+	 */
+	ColumnarResult queryColumns(String tableName, String[] columns, ColumnarResult.Type[] types, String selection, String[] selectionArgs, String groupBy, String having, String orderBy);
+	
+	/**
+	 * streaming version of query, rows are read from the cursor while iterating instead of being collected to maps. Returned Row is a view over the current row.
+	 * 
+	 * @return iterator over the rows, should be closed if it is not iterated to the end
+	 */
+	ResultIterator<Row> stream(String tableName, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy);
+	
+	/**
+	 * streams entities, rows are hydrated in windows of fetch batch size so references and relations of a window are loaded together.
+	 * 
+	 * @param clazz entity class
+	 * @param selection WHERE clause without WHERE keyword, columns of joined tables can be used by name, primary key should be written as T0._id
+	 * @param selectionArgs
+	 * @param orderBy
+	 * @return iterator over the entities, should be closed if it is not iterated to the end
+	 */
+	<T extends Persistable> ResultIterator<T> stream(Class<T> clazz, String selection, String[] selectionArgs, String orderBy);
+	
+	/**
+	 * loads entities selected by the query, values of the query are bound as arguments. Queries of the same shape reuse the generated SQL.
+	 * 
+	 * @param query criteria over fields of a registered entity
+	 * @return selected entities in query order
+	 * @throws IllegalArgumentException if a path of the query is not a field of the entity
+	 */
+	<T extends Persistable> List<T> list(Query<T> query);
+	
+	/**
+	 * streaming version of list(Query), rows are hydrated in windows of fetch batch size so references and relations of a window are loaded together.
+	 * 
+	 * @return iterator over the entities, should be closed if it is not iterated to the end
+	 */
+	<T extends Persistable> ResultIterator<T> stream(Query<T> query);
+	
+	/**
+	 * updates entity, only changed columns are written. Entity is compared with its values when it was loaded or last written in the current session, without a session it is compared
+	 * with its row in second level cache. If neither is known all columns are written. An entity without changes is not written.
 	 * 
 	 * @param entity
+	 * @throws RecordNotFoundException if entity's row does not exist
 	 */
 	void update(Persistable entity);
 	
@@ -89,4 +218,34 @@ public interface DatabaseAdapter {
 	 */
 	void delete(Persistable entity);
 	
+	/**
+	 * deletes entities in a single transaction without cascade, see delete(Collection, boolean)
+	 */
+	<T extends Persistable> int delete(Collection<T> entityCollection);
+	
+	/**
+	 * deletes entities in a single transaction using bound IN clauses, entities which are not in database are ignored. roll backs if any exception occurs.
+	 * 
+	 * @param entityCollection if entityCollection is null or has no records than returns 0.
+	 * @param cascade true if rows of OneToMany target entities referring to deleted rows should be deleted as well, recursively
+	 * @return number of deleted entities, cascaded rows are not counted
+	 * @throws PersistenceException if an entity was not saved to database
+	 */
+	<T extends Persistable> int delete(Collection<T> entityCollection, boolean cascade);
+	
+	/**
+	 * deletes rows by id without cascade, see deleteByIds(Class, long[], boolean)
+	 */
+	<T extends Persistable> int deleteByIds(Class<T> clazz, long[] ids);
+	
+	/**
+	 * deletes rows of the entity by id in a single transaction using bound IN clauses, ids which are not in database are ignored.
+	 * 
+	 * @param clazz entity class
+	 * @param ids
+	 * @param cascade true if rows of OneToMany target entities referring to deleted rows should be deleted as well, recursively
+	 * @return number of deleted rows, cascaded rows are not counted
+	 */
+	<T extends Persistable> int deleteByIds(Class<T> clazz, long[] ids, boolean cascade);
+	
 }
@@ -1,14 +1,27 @@
 package com.android.orm.adapter;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import com.android.orm.OrmConstants;
@@ -17,16 +30,35 @@ import com.android.orm.exception.BatchPersistenceException;
 import com.android.orm.exception.DatabaseAdapterInstantiationException;
 import com.android.orm.exception.PersistenceException;
 import com.android.orm.exception.RecordNotFoundException;
+import com.android.orm.exception.UnRegisteredEntityException;
 import com.android.orm.util.PersistenceUtil;
 
 /**
- * Generates a singleTone SqliteAdapter
+ * Generates a singleTone SqliteAdapter. The adapter is thread safe, writes use a single writer connection and reads use a pool of read only connections, so it should be shared by all threads
+ * instead of opening additional adapters.
+ * <p>
+ * lifecycle : getAdapter(ctx, ...) opens the adapter once, later calls and getAdapter() return the same adapter. closeAdapter() closes all connections, the next getAdapter(ctx, ...) opens a new
+ * one.
+ * </p>
  * 
  * @author Hamza Gumrah
  */
 public abstract class DatabaseAdapterFactory {
 	
-	private static DatabaseAdapter adapter = null;
+	private static final String TAG = "DatabaseAdapterFactory";
+	
+	private static final Object LOCK = new Object();
+	
+	private static volatile DatabaseAdapter adapter = null;
+	
+	// facade with default executors, created by getAsyncAdapter() and shut down with the adapter
+	private static AsyncDatabaseAdapter asyncAdapter = null;
+	
+	private static ExecutorService readExecutor = null;
+	
+	private static ExecutorService writeExecutor = null;
+	
+	private static AdapterConfiguration adapterConfiguration = null;
 	
 	private static DatabaseAdapterFactory self = new DatabaseAdapterFactory() {};
 	
@@ -36,7 +68,7 @@ public abstract class DatabaseAdapterFactory {
 	private static Registry registry = null;
 	
 	/**
-	 * Use this method for initializing SqliteAdapter
+	 * Use this method for initializing SqliteAdapter with default configuration
 	 * 
 	 * @param ctx
 	 * @param databaseName
@@ -46,24 +78,86 @@ public abstract class DatabaseAdapterFactory {
 	 * @throws DatabaseAdapterInstantiationException
 	 */
 	public static DatabaseAdapter getAdapter(Context ctx, String databaseName, int databaseVersion, String... entityQualifiedNames) throws DatabaseAdapterInstantiationException {
-		if (adapter == null) {
-			synchronized (adapter) {
-				if (adapter == null)
-					try {
-						//send Set to avoid duplicate values
-						Set<String> entityNames = new HashSet<String>();
-						for(String name:entityQualifiedNames)
-							entityNames.add(name);
+		return getAdapter(ctx, databaseName, databaseVersion, new AdapterConfiguration(), entityQualifiedNames);
+	}
+	
+	/**
+	 * Use this method for initializing SqliteAdapter. If adapter is already initialized it is returned as is.
+	 * 
+	 * @param ctx
+	 * @param databaseName
+	 * @param databaseVersion
+	 * @param configuration connection settings, see DatabaseAdapter.getEffectiveConfiguration() for the settings which took effect
+	 * @param entityQualifiedNames
+	 * @return generates an SqliteAdapter and returns it.
+	 * @throws DatabaseAdapterInstantiationException
+	 */
+	public static DatabaseAdapter getAdapter(Context ctx, String databaseName, int databaseVersion, AdapterConfiguration configuration, String... entityQualifiedNames)
+			throws DatabaseAdapterInstantiationException {
+		DatabaseAdapter current = adapter;
+		if (current != null)
+			return current;
+		synchronized (LOCK) {
+			if (adapter == null)
+				try {
+					//send Set to avoid duplicate values
+					// registry is merged in this order
+					Set<String> entityNames = new LinkedHashSet<String>();
+					for(String name:entityQualifiedNames)
+						entityNames.add(name);
+					if (configuration.isRegistrySnapshot())
+						registry = newRegistry(ctx, databaseName, entityNames);
+					else
 						registry = new Registry(entityNames);
-						adapter = self.newAdapter(ctx, databaseName, databaseVersion);
-						adapter.open();
-					}
-					catch (Exception e) {
-						throw new DatabaseAdapterInstantiationException(e.getMessage());
-					}
+					// cached query SQL refers to tables of the previous registry
+					QueryCompiler.clear();
+					DatabaseAdapter created = self.newAdapter(ctx, databaseName, databaseVersion, configuration);
+					created.open();
+					adapterConfiguration = configuration;
+					adapter = created;
+				}
+				catch (Exception e) {
+					throw new DatabaseAdapterInstantiationException(e.getMessage());
+				}
+			return adapter;
+		}
+	}
+	
+	/**
+	 * creates the registry with a snapshot in the files directory of the application. Snapshot is rewritten when the application package or the entity names change, entity classes can
+	 * not change without a package update.
+	 */
+	private static Registry newRegistry(Context ctx, String databaseName, Set<String> entityNames) throws ClassNotFoundException, NoSuchMethodException {
+		PackageInfo packageInfo;
+		try {
+			packageInfo = ctx.getPackageManager().getPackageInfo(ctx.getPackageName(), 0);
+		}
+		catch (NameNotFoundException e) {
+			Log.w(TAG, "package of the application is not found, registry snapshot is disabled");
+			return new Registry(entityNames);
+		}
+		long classesVersion = packageInfo.lastUpdateTime * 31 + packageInfo.versionCode;
+		File snapshot = new File(ctx.getFilesDir(), databaseName + OrmConstants.REGISTRY_SNAPSHOT_SUFFIX);
+		return new Registry(entityNames, snapshot, RegistrySnapshot.fingerprint(entityNames, classesVersion));
+	}
+	
+	/**
+	 * closes connections of the adapter. Operations which are running on other threads should be finished before.
+	 */
+	public static void closeAdapter() {
+		synchronized (LOCK) {
+			if (asyncAdapter != null) {
+				readExecutor.shutdown();
+				writeExecutor.shutdown();
+				asyncAdapter = null;
+				readExecutor = null;
+				writeExecutor = null;
+			}
+			if (adapter != null) {
+				adapter.close();
+				adapter = null;
 			}
 		}
-		return adapter;
 	}
 	
 	/**
@@ -75,6 +169,45 @@ public abstract class DatabaseAdapterFactory {
 		return adapter;
 	}
 	
+	/**
+	 * non blocking facade of the adapter with default executors, reads run on a pool with a thread per read connection and writes run on a single thread since writes are serialized by
+	 * the writer connection. Executors are shut down by closeAdapter().
+	 * 
+	 * @return async facade of the initialized adapter
+	 * @throws IllegalStateException if adapter is not initialized
+	 */
+	public static AsyncDatabaseAdapter getAsyncAdapter() {
+		synchronized (LOCK) {
+			if (asyncAdapter == null) {
+				DatabaseAdapter current = getInitializedAdapter();
+				readExecutor = Executors.newFixedThreadPool(Math.max(1, adapterConfiguration.getReadConnections()));
+				writeExecutor = Executors.newSingleThreadExecutor();
+				asyncAdapter = new AsyncAdapter(current, readExecutor, writeExecutor);
+			}
+			return asyncAdapter;
+		}
+	}
+	
+	/**
+	 * non blocking facade of the adapter with the given executors, lifecycle of the executors belongs to the caller. Giving different executors for reads and writes keeps reads running
+	 * while writes wait for the writer connection.
+	 * 
+	 * @param readExecutor executor of get and query
+	 * @param writeExecutor executor of persist, update and delete
+	 * @return async facade of the initialized adapter
+	 * @throws IllegalStateException if adapter is not initialized
+	 */
+	public static AsyncDatabaseAdapter getAsyncAdapter(Executor readExecutor, Executor writeExecutor) {
+		return new AsyncAdapter(getInitializedAdapter(), readExecutor, writeExecutor);
+	}
+	
+	private static DatabaseAdapter getInitializedAdapter() {
+		DatabaseAdapter current = adapter;
+		if (current == null)
+			throw new IllegalStateException("DatabaseAdapter is not initialized, call getAdapter first");
+		return current;
+	}
+	
 	static final Map<String, EntityMetaData> getEntityRegistry() {
 		if (registry == null)
 			throw new IllegalArgumentException("Registry information is not sufficient");
@@ -95,20 +228,27 @@ public abstract class DatabaseAdapterFactory {
 			throw new IllegalArgumentException("Registry information is not sufficient");
 		return registry.getTableMetaData(tableName);
 	}
+	static final Map<String, CrossTableMetaData> getCrossTableRegistry() {
+		if (registry == null)
+			throw new IllegalArgumentException("Registry information is not sufficient");
+		return registry.getCrossTableRegistry();
+	}
 	
 	
 	/**
-	 * when multi thread operations needed, open another connection to database using a new adapter. it is essential to close additional adapters after usage.
+	 * creates the adapter opened by getAdapter. Adapters are thread safe, use the shared adapter for multi thread operations instead of creating new ones.
 	 * 
 	 * @param ctx
 	 * @param databaseName
 	 * @param databaseVersion
+	 * @param configuration
 	 * @return
 	 * @throws ClassNotFoundException
 	 * @throws NoSuchMethodException
 	 */
-	public DatabaseAdapter newAdapter(Context ctx, String databaseName, int databaseVersion) throws ClassNotFoundException, NoSuchMethodException {
-		return new SqliteAdapter(ctx, databaseName, databaseVersion);
+	protected DatabaseAdapter newAdapter(Context ctx, String databaseName, int databaseVersion, AdapterConfiguration configuration) throws ClassNotFoundException,
+			NoSuchMethodException {
+		return new SqliteAdapter(ctx, databaseName, databaseVersion, configuration);
 	}
 	
 	private class SqliteAdapter implements DatabaseAdapter {
@@ -117,72 +257,133 @@ public abstract class DatabaseAdapterFactory {
 		
 		private final Context context;
 		
-		private final SQLiteOpenHelper databaseHelper;
+		private final AdapterConfiguration configuration;
 		
-		private SQLiteDatabase dataBase;
+		private final ConnectionPool connections;
+		
+		// started by the first queued write
+		private volatile WriteQueue writeQueue;
 		
 		private final String DATABASE_NAME;
 		
 		private final int DATABASE_VERSION;
 		
+		// identity map of the current session, sessions are thread confined
+		private final ThreadLocal<IdentityMap> session = new ThreadLocal<IdentityMap>();
+		
 		/**
 		 * @param ctx
 		 * @param databaseName
 		 * @param databaseVersion
-		 * @param entityQualifiedNames
+		 * @param configuration
 		 * @throws ClassNotFoundException if entity classes not found by ClassLoader
 		 * @throws NoSuchMethodException
 		 */
-		public SqliteAdapter(Context ctx, String databaseName, int databaseVersion) throws ClassNotFoundException, NoSuchMethodException {
+		public SqliteAdapter(Context ctx, String databaseName, int databaseVersion, AdapterConfiguration configuration) throws ClassNotFoundException, NoSuchMethodException {
 			this.context = ctx;
 			this.DATABASE_NAME = databaseName;
 			this.DATABASE_VERSION = databaseVersion;
-			this.databaseHelper = new SqliteDatabaseHelper();
+			this.configuration = configuration;
+			this.connections = new ConnectionPool(new SqliteDatabaseHelper(), configuration);
 			
 		}
 		
 		@Override
 		public void open() {
-			this.dataBase = this.databaseHelper.getWritableDatabase();
+			this.connections.open();
 		}
 		
 		@Override
 		public void close() {
-			this.databaseHelper.close();
+			synchronized (this.connections) {
+				if (this.writeQueue != null) {
+					this.writeQueue.close();
+					this.writeQueue = null;
+				}
+			}
+			this.connections.close();
+		}
+		
+		@Override
+		public AdapterConfiguration getEffectiveConfiguration() {
+			return SqliteHelper.readConfiguration(this.connections.getWriter(), this.configuration);
+		}
+		
+		@Override
+		public void beginSession() {
+			if (this.session.get() == null)
+				this.session.set(new IdentityMap(true));
+		}
+		
+		@Override
+		public void endSession() {
+			IdentityMap identityMap = this.session.get();
+			if (identityMap != null)
+				identityMap.clear();
+			this.session.remove();
+		}
+		
+		/**
+		 * @return identity map of the current session, or a new one which lives for a single operation
+		 */
+		private IdentityMap getIdentityMap() {
+			IdentityMap identityMap = this.session.get();
+			if (identityMap == null)
+				return new IdentityMap(false);
+			return identityMap;
 		}
 		
 		@Override
 		public <T extends Persistable> void persist(T entity) {
+			checkLoaded(entity);
+			SQLiteDatabase dataBase = this.connections.getWriter();
+			BatchInserter inserter = new BatchInserter(this.connections.getStatementCache());
+			dataBase.beginTransaction();
 			try {
-				Map<String,ContentValues> values = SqliteHelper.getContentValues(entity);
-				long id = 0;
-				//TODO id should be primary key value of main table
-				for(String tableName : values.keySet()){
-					id = dataBase.insert(tableName, null, values.get(tableName));
-				}
-			
-				entity.setId(id);
+				entity.setId(inserter.insert(entity));
+				dataBase.setTransactionSuccessful();
 			}
 			catch (Exception e) {
 				throw new PersistenceException(entity, e.getMessage());
 			}
+			finally {
+				dataBase.endTransaction();
+			}
+			invalidateCache(entity);
+			IdentityMap identityMap = this.session.get();
+			if (identityMap != null)
+				register(identityMap, entity);
 		}
 		
 		@Override
 		public <T extends Persistable> void persist(Collection<T> entityCollection) {
+			batchInsert(entityCollection);
+		}
+		
+		@Override
+		public <T extends Persistable> void persist(Set<T> entityCollection) {
+			batchInsert(entityCollection);
+		}
+		
+		/**
+		 * inserts all entities in a single transaction reusing one compiled statement per mapped table.
+		 * 
+		 * @param entityCollection
+		 * @throws BatchPersistenceException
+		 */
+		private <T extends Persistable> void batchInsert(Collection<T> entityCollection) {
 			if(entityCollection==null || entityCollection.size()==0)
 				return;
+			for (T entity : entityCollection)
+				checkLoaded(entity);
 			BatchPersistenceException ex = null;
-			this.dataBase.beginTransaction();
+			SQLiteDatabase dataBase = this.connections.getWriter();
+			BatchInserter inserter = new BatchInserter(this.connections.getStatementCache());
+			dataBase.beginTransaction();
 			try {
-				for (T entity : entityCollection) {
-					Map<String,ContentValues> values = SqliteHelper.getContentValues(entity);
-					for(String key:values.keySet()){
-						
-					}
-					entity.setId(dataBase.insert(PersistenceUtil.getEntityName(entity.getClass()),null,values));
-				}
-				this.dataBase.setTransactionSuccessful();
+				for (T entity : entityCollection)
+					entity.setId(inserter.insert(entity));
+				dataBase.setTransactionSuccessful();
 			}
 			catch (Exception e) {
 				Log.e(TAG, "Rolling back batch insert, ERROR : "+e.getMessage());
@@ -191,70 +392,571 @@ public abstract class DatabaseAdapterFactory {
 				ex = new BatchPersistenceException(e.getMessage());
 			}
 			finally{
-				this.dataBase.endTransaction();
+				dataBase.endTransaction();
 				if(ex!=null)
 					throw ex;
 			}
+			IdentityMap identityMap = this.session.get();
+			for (T entity : entityCollection) {
+				invalidateCache(entity);
+				if (identityMap != null)
+					register(identityMap, entity);
+			}
 		}
 		
 		@Override
-		public <T extends Persistable> void persist(Set<T> entityCollection) {
-			if(entityCollection==null || entityCollection.size()==0)
+		public <T extends Persistable> void upsert(Collection<T> entityCollection) {
+			if (entityCollection == null || entityCollection.isEmpty())
 				return;
-			this.dataBase.beginTransaction();
+			// ids are restored if batch is rolled back
+			long[] ids = new long[entityCollection.size()];
+			int i = 0;
+			for (T entity : entityCollection) {
+				checkLoaded(entity);
+				ids[i++] = entity.getId();
+			}
 			BatchPersistenceException ex = null;
+			SQLiteDatabase dataBase = this.connections.getWriter();
+			BatchUpserter upserter = new BatchUpserter(this.connections.getStatementCache());
+			dataBase.beginTransaction();
 			try {
-				for (T entity : entityCollection) {
-					ContentValues values = SqliteHelper.getContentValues(entity);
-					entity.setId(dataBase.insert(PersistenceUtil.getEntityName(entity.getClass()),null,values));
-				}
-				this.dataBase.setTransactionSuccessful();
+				for (T entity : entityCollection)
+					entity.setId(upserter.upsert(entity));
+				dataBase.setTransactionSuccessful();
 			}
 			catch (Exception e) {
-				Log.e(TAG, "Rolling back batch insert, ERROR : "+e.getMessage());
-				for(T entity:entityCollection)
-					entity.setId(OrmConstants.NOT_PERSISTED_ID);
+				Log.e(TAG, "Rolling back batch upsert, ERROR : " + e.getMessage());
+				i = 0;
+				for (T entity : entityCollection)
+					entity.setId(ids[i++]);
 				ex = new BatchPersistenceException(e.getMessage());
 			}
-			finally{
-				this.dataBase.endTransaction();
-				if(ex!=null)
+			finally {
+				dataBase.endTransaction();
+				if (ex != null)
 					throw ex;
 			}
+			IdentityMap identityMap = this.session.get();
+			for (T entity : entityCollection) {
+				invalidateCache(entity);
+				if (identityMap != null)
+					register(identityMap, entity);
+			}
 		}
+		
 		@Override
 		public <T extends Persistable> T get(long systemId, Class<T> clazz) {
-			return null;
+			SQLiteDatabase reader = this.connections.acquireReader();
+			try {
+				return new EntityLoader(reader, getIdentityMap(), this.configuration.getFetchBatchSize()).get(systemId, clazz);
+			}
+			finally {
+				this.connections.releaseReader(reader);
+			}
+		}
+		
+		@Override
+		public <T extends Persistable> T getByLazy(long id, Class<T> clazz) {
+			SQLiteDatabase reader = this.connections.acquireReader();
+			try {
+				// references are loaded with the same identity map, a reference back to the entity gets this instance
+				EntityLoader loader = new EntityLoader(reader, getIdentityMap(), this.configuration.getFetchBatchSize());
+				T entity = loader.get(id, clazz);
+				if (entity != null)
+					loader.loadReferences(entity);
+				return entity;
+			}
+			finally {
+				this.connections.releaseReader(reader);
+			}
+		}
+		
+		@Override
+		public <T extends Persistable> T loadReferences(T entity) {
+			if (entity == null)
+				return null;
+			SQLiteDatabase reader = this.connections.acquireReader();
+			try {
+				new EntityLoader(reader, getIdentityMap(), this.configuration.getFetchBatchSize()).loadReferences(entity);
+				return entity;
+			}
+			finally {
+				this.connections.releaseReader(reader);
+			}
 		}
 		
 		@Override
 		public void setForeignKeySupport(boolean enabled) {
 			if (enabled)
-				this.dataBase.execSQL("PRAGMA foreign_keys = ON;");
+				this.connections.getWriter().execSQL("PRAGMA foreign_keys = ON;");
 			else
-				this.dataBase.execSQL("PRAGMA foreign_keys = OFF;");
+				this.connections.getWriter().execSQL("PRAGMA foreign_keys = OFF;");
 		}
 		
 		@Override
 		public void update(Persistable entity) {
-			// TODO Auto-generated method stub
-			
+			if (!PersistenceUtil.isPersisted(entity))
+				throw new PersistenceException(entity, "Can not update entity which was not saved to database ");
+			checkLoaded(entity);
+			EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(PersistenceUtil.getEntityName(entity.getClass()));
+			if (entityMetaData == null)
+				throw new UnRegisteredEntityException(entity.getClass().getName());
+			Map<String, ContentValues> changes = SqliteHelper.getChangedContentValues(entityMetaData, entity, findSnapshot(entityMetaData, entity));
+			IdentityMap identityMap = this.session.get();
+			// relations whose targets are the ones loaded or last written in the session are not compared with database
+			List<ManyToManyMetaData> relations = CrossTableWriter.getChangedRelations(entityMetaData, entity, identityMap);
+			if (changes.isEmpty() && relations.isEmpty())
+				return;
+			SQLiteDatabase dataBase = this.connections.getWriter();
+			CrossTableWriter links = new CrossTableWriter(this.connections.getStatementCache());
+			dataBase.beginTransaction();
+			try {
+				updateRows(this.connections.getStatementCache(), entityMetaData, entity, changes);
+				links.updateLinks(entity, relations);
+				dataBase.setTransactionSuccessful();
+			}
+			finally {
+				dataBase.endTransaction();
+			}
+			invalidateCache(entity);
+			// updated instance becomes the instance of its row
+			if (identityMap != null)
+				register(identityMap, entity);
+		}
+		
+		/**
+		 * @return values of the entity's row when it was loaded or last written, null if they are not known
+		 */
+		private Object[] findSnapshot(EntityMetaData entityMetaData, Persistable entity) {
+			IdentityMap identityMap = this.session.get();
+			if (identityMap != null) {
+				Object[] snapshot = identityMap.getSnapshot(entity);
+				if (snapshot != null)
+					return snapshot;
+			}
+			if (entityMetaData.getCache() != null)
+				return entityMetaData.getCache().peek(entity.getId());
+			return null;
+		}
+		
+		/**
+		 * registers a written entity to the session, its snapshot and links are the values just written
+		 */
+		private void register(IdentityMap identityMap, Persistable entity) {
+			identityMap.put(entity);
+			if (identityMap.isTracking()) {
+				EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(entity.getClass().getName());
+				identityMap.track(entity, entityMetaData.getHydrator().snapshot(entity));
+				// relations which are null are not written, their links stay as they are kept
+				for (ManyToManyMetaData manyToMany : entityMetaData.getManyToMany()) {
+					Set<Long> targetIds = CrossTableWriter.getTargetIds(entity, manyToMany);
+					if (targetIds != null)
+						identityMap.trackLinks(entity, manyToMany.getFieldName(), targetIds);
+				}
+			}
 		}
 		
 		@Override
 		public void delete(Persistable entity) {
-			if (PersistenceUtil.isPersisted(entity))
+			if (!PersistenceUtil.isPersisted(entity))
 				throw new PersistenceException(entity, "Can not delete entity which was not saved to database ");
-			String entityName = PersistenceUtil.getEntityName(entity.getClass());
-			int rowNumber = dataBase.delete(entityName, OrmConstants.PRIMARY_KEY_COLUMN_NAME + " = " + entity.getId(), null);
+			EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(PersistenceUtil.getEntityName(entity.getClass()));
+			if (entityMetaData == null)
+				throw new UnRegisteredEntityException(entity.getClass().getName());
+			SQLiteDatabase dataBase = this.connections.getWriter();
+			dataBase.beginTransaction();
+			try {
+				deleteRows(this.connections.getStatementCache(), entityMetaData, entity);
+				dataBase.setTransactionSuccessful();
+			}
+			finally {
+				dataBase.endTransaction();
+			}
+			invalidateCache(entity);
+			IdentityMap identityMap = this.session.get();
+			if (identityMap != null)
+				identityMap.remove(entity.getClass(), entity.getId());
+		}
+		
+		@Override
+		public <T extends Persistable> int delete(Collection<T> entityCollection) {
+			return delete(entityCollection, false);
+		}
+		
+		@Override
+		public <T extends Persistable> int delete(Collection<T> entityCollection, boolean cascade) {
+			if (entityCollection == null || entityCollection.isEmpty())
+				return 0;
+			// entities of different classes are deleted per class
+			Map<Class<?>, List<Long>> ids = new LinkedHashMap<Class<?>, List<Long>>();
+			for (T entity : entityCollection) {
+				if (!PersistenceUtil.isPersisted(entity))
+					throw new PersistenceException(entity, "Can not delete entity which was not saved to database ");
+				List<Long> classIds = ids.get(entity.getClass());
+				if (classIds == null) {
+					classIds = new ArrayList<Long>();
+					ids.put(entity.getClass(), classIds);
+				}
+				classIds.add(entity.getId());
+			}
+			return deleteIds(ids, cascade);
+		}
+		
+		@Override
+		public <T extends Persistable> int deleteByIds(Class<T> clazz, long[] ids) {
+			return deleteByIds(clazz, ids, false);
+		}
+		
+		@Override
+		public <T extends Persistable> int deleteByIds(Class<T> clazz, long[] ids, boolean cascade) {
+			if (ids == null || ids.length == 0)
+				return 0;
+			List<Long> classIds = new ArrayList<Long>(ids.length);
+			for (long id : ids)
+				classIds.add(id);
+			Map<Class<?>, List<Long>> idMap = new LinkedHashMap<Class<?>, List<Long>>();
+			idMap.put(clazz, classIds);
+			return deleteIds(idMap, cascade);
+		}
+		
+		/**
+		 * deletes rows in a single transaction, removes deleted rows including cascaded ones from cache and session
+		 * 
+		 * @return number of deleted rows, cascaded rows are not counted
+		 */
+		private int deleteIds(Map<Class<?>, List<Long>> ids, boolean cascade) {
+			List<EntityMetaData> entityMetaDatas = new ArrayList<EntityMetaData>(ids.size());
+			for (Class<?> clazz : ids.keySet()) {
+				EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(PersistenceUtil.getEntityName(clazz));
+				if (entityMetaData == null)
+					throw new UnRegisteredEntityException(clazz.getName());
+				entityMetaDatas.add(entityMetaData);
+			}
+			int rowNumber = 0;
+			SQLiteDatabase dataBase = this.connections.getWriter();
+			BatchDeleter deleter = new BatchDeleter(this.connections.getStatementCache(), cascade);
+			dataBase.beginTransaction();
+			try {
+				for (EntityMetaData entityMetaData : entityMetaDatas)
+					rowNumber += deleter.delete(entityMetaData, ids.get(entityMetaData.getClazz()));
+				dataBase.setTransactionSuccessful();
+			}
+			finally {
+				dataBase.endTransaction();
+			}
+			IdentityMap identityMap = this.session.get();
+			for (Map.Entry<Class<?>, Set<Long>> entry : deleter.getDeleted().entrySet()) {
+				EntityCache cache = DatabaseAdapterFactory.getEntityMetaData(entry.getKey().getName()).getCache();
+				for (Long id : entry.getValue()) {
+					if (cache != null)
+						cache.invalidate(id);
+					if (identityMap != null)
+						identityMap.remove(entry.getKey(), id);
+				}
+			}
+			return rowNumber;
+		}
+		
+		/**
+		 * writes changed columns of the entity to its rows, should be called inside a transaction
+		 * 
+		 * @param changes see SqliteHelper.getChangedContentValues
+		 * @throws RecordNotFoundException
+		 */
+		private void updateRows(StatementCache statements, EntityMetaData entityMetaData, Persistable entity, Map<String, ContentValues> changes) {
+			for (TableMetaData tableMetaData : entityMetaData.getMappedTables()) {
+				ContentValues values = changes.get(tableMetaData.getName());
+				if (values == null)
+					continue;
+				// statement of each set of changed columns is cached
+				SQLiteStatement update = statements.get(SqliteHelper.generateUpdateStatement(tableMetaData, values));
+				SqliteHelper.bindUpdateValues(update, tableMetaData, values, entity.getId());
+				update.execute();
+				if (statements.changes() == 0)
+					throw new RecordNotFoundException(entity);
+			}
+		}
+		
+		/**
+		 * deletes rows of the entity from all mapped tables, should be called inside a transaction
+		 * 
+		 * @throws RecordNotFoundException
+		 */
+		private void deleteRows(StatementCache statements, EntityMetaData entityMetaData, Persistable entity) {
+			// joined tables share _id of the root table
+			long rowNumber = 0;
+			for (TableMetaData tableMetaData : entityMetaData.getMappedTables()) {
+				SQLiteStatement delete = statements.get(tableMetaData.getDeleteStatement());
+				delete.bindLong(1, entity.getId());
+				delete.execute();
+				rowNumber += statements.changes();
+			}
 			if (rowNumber == 0)
 				throw new RecordNotFoundException(entity);
+			CrossTableWriter.deleteLinks(statements, entityMetaData, Collections.singletonList(String.valueOf(entity.getId())));
+		}
+		
+		/**
+		 * @return write queue of the adapter, starts it at first call
+		 */
+		private WriteQueue getWriteQueue() {
+			WriteQueue queue = this.writeQueue;
+			if (queue != null)
+				return queue;
+			synchronized (this.connections) {
+				if (this.writeQueue == null) {
+					this.connections.getWriter();
+					this.writeQueue = new WriteQueue(this.connections, this.configuration);
+				}
+				return this.writeQueue;
+			}
+		}
+		
+		@Override
+		public <T extends Persistable> Future<Long> enqueuePersist(final T entity) {
+			if (DatabaseAdapterFactory.getEntityMetaData(entity.getClass().getName()) == null)
+				throw new UnRegisteredEntityException(entity.getClass().getName());
+			checkLoaded(entity);
+			return getWriteQueue().submit(new WriteQueue.Operation() {
+				
+				@Override
+				public long execute(StatementCache statements, BatchInserter inserter) {
+					entity.setId(inserter.insert(entity));
+					return entity.getId();
+				}
+				
+				@Override
+				public void rolledBack() {
+					entity.setId(OrmConstants.NOT_PERSISTED_ID);
+				}
+				
+				@Override
+				public void committed() {
+					invalidateCache(entity);
+				}
+			});
+		}
+		
+		@Override
+		public Future<Long> enqueueUpdate(final Persistable entity) {
+			if (!PersistenceUtil.isPersisted(entity))
+				throw new PersistenceException(entity, "Can not update entity which was not saved to database ");
+			checkLoaded(entity);
+			final EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(PersistenceUtil.getEntityName(entity.getClass()));
+			if (entityMetaData == null)
+				throw new UnRegisteredEntityException(entity.getClass().getName());
+			// snapshot and changed relations are taken on the caller's thread, session can not be updated when the write commits so entity is not tracked anymore
+			final Object[] snapshot = findSnapshot(entityMetaData, entity);
+			IdentityMap identityMap = this.session.get();
+			final List<ManyToManyMetaData> relations = CrossTableWriter.getChangedRelations(entityMetaData, entity, identityMap);
+			if (identityMap != null)
+				identityMap.track(entity, null);
+			return getWriteQueue().submit(new WriteQueue.Operation() {
+				
+				@Override
+				public long execute(StatementCache statements, BatchInserter inserter) {
+					updateRows(statements, entityMetaData, entity, SqliteHelper.getChangedContentValues(entityMetaData, entity, snapshot));
+					inserter.getCrossTableWriter().updateLinks(entity, relations);
+					return entity.getId();
+				}
+				
+				@Override
+				public void rolledBack() {
+				}
+				
+				@Override
+				public void committed() {
+					invalidateCache(entity);
+				}
+			});
+		}
+		
+		@Override
+		public Future<Long> enqueueDelete(final Persistable entity) {
+			if (!PersistenceUtil.isPersisted(entity))
+				throw new PersistenceException(entity, "Can not delete entity which was not saved to database ");
+			final EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(PersistenceUtil.getEntityName(entity.getClass()));
+			if (entityMetaData == null)
+				throw new UnRegisteredEntityException(entity.getClass().getName());
+			return getWriteQueue().submit(new WriteQueue.Operation() {
+				
+				@Override
+				public long execute(StatementCache statements, BatchInserter inserter) {
+					deleteRows(statements, entityMetaData, entity);
+					return entity.getId();
+				}
+				
+				@Override
+				public void rolledBack() {
+				}
+				
+				@Override
+				public void committed() {
+					invalidateCache(entity);
+				}
+			});
+		}
+		
+		/**
+		 * @throws PersistenceException if entity is a lazy reference stub whose row is not loaded, its default values would overwrite the row
+		 */
+		private void checkLoaded(Persistable entity) {
+			if (UnloadedReferences.contains(entity))
+				throw new PersistenceException(entity, "that is an unloaded lazy reference, load it with loadReferences or get before writing it");
+		}
+		
+		/**
+		 * removes row of the entity from second level cache, called after each write
+		 */
+		private void invalidateCache(Persistable entity) {
+			if (!PersistenceUtil.isPersisted(entity))
+				return;
+			EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(entity.getClass().getName());
+			if (entityMetaData != null && entityMetaData.getCache() != null)
+				entityMetaData.getCache().invalidate(entity.getId());
+		}
+		
+		@Override
+		public CacheStatistics getCacheStatistics(Class<? extends Persistable> clazz) {
+			EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(clazz.getName());
+			if (entityMetaData == null)
+				throw new UnRegisteredEntityException(clazz.getName());
+			if (entityMetaData.getCache() == null)
+				return null;
+			return entityMetaData.getCache().getStatistics();
+		}
+		
+		@Override
+		public CacheStatistics getStatementCacheStatistics() {
+			return this.connections.getStatementCache().getStatistics();
 		}
 		
 		@Override
 		public Collection<Map<String, Object>> query(String tableName, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy) {
-			// TODO Auto-generated method stub
-			return null;
+			SQLiteDatabase reader = this.connections.acquireReader();
+			try {
+				Cursor cursor = reader.query(tableName, columns, selection, selectionArgs, groupBy, having, orderBy);
+				try {
+					return SqliteHelper.readRows(cursor);
+				}
+				finally {
+					cursor.close();
+				}
+			}
+			finally {
+				this.connections.releaseReader(reader);
+			}
+		}
+		
+		@Override
+		public ColumnarResult queryColumns(String tableName, String[] columns, ColumnarResult.Type[] types, String selection, String[] selectionArgs, String groupBy, String having,
+				String orderBy) {
+			SQLiteDatabase reader = this.connections.acquireReader();
+			try {
+				Cursor cursor = reader.query(tableName, columns, selection, selectionArgs, groupBy, having, orderBy);
+				try {
+					return new ColumnarResult(cursor, types);
+				}
+				finally {
+					cursor.close();
+				}
+			}
+			finally {
+				this.connections.releaseReader(reader);
+			}
+		}
+		
+		@Override
+		public ResultIterator<Row> stream(String tableName, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy) {
+			SQLiteDatabase reader = this.connections.acquireReader();
+			try {
+				return new ReaderResultIterator<Row>(reader, new CursorResultIterator.RowIterator(reader.query(tableName, columns, selection, selectionArgs, groupBy, having, orderBy)));
+			}
+			catch (RuntimeException e) {
+				this.connections.releaseReader(reader);
+				throw e;
+			}
+		}
+		
+		@Override
+		public <T extends Persistable> ResultIterator<T> stream(Class<T> clazz, String selection, String[] selectionArgs, String orderBy) {
+			SQLiteDatabase reader = this.connections.acquireReader();
+			try {
+				return new ReaderResultIterator<T>(reader, new EntityLoader(reader, getIdentityMap(), this.configuration.getFetchBatchSize()).stream(clazz, selection, selectionArgs, orderBy));
+			}
+			catch (RuntimeException e) {
+				this.connections.releaseReader(reader);
+				throw e;
+			}
+		}
+		
+		@Override
+		public <T extends Persistable> List<T> list(Query<T> query) {
+			SQLiteDatabase reader = this.connections.acquireReader();
+			try {
+				return new EntityLoader(reader, getIdentityMap(), this.configuration.getFetchBatchSize()).list(query);
+			}
+			finally {
+				this.connections.releaseReader(reader);
+			}
+		}
+		
+		@Override
+		public <T extends Persistable> ResultIterator<T> stream(Query<T> query) {
+			SQLiteDatabase reader = this.connections.acquireReader();
+			try {
+				return new ReaderResultIterator<T>(reader, new EntityLoader(reader, getIdentityMap(), this.configuration.getFetchBatchSize()).stream(query));
+			}
+			catch (RuntimeException e) {
+				this.connections.releaseReader(reader);
+				throw e;
+			}
+		}
+		
+		/**
+		 * keeps read connection of a stream checked out until the stream is exhausted or closed
+		 */
+		private class ReaderResultIterator<T> implements ResultIterator<T> {
+			
+			private final ResultIterator<T> iterator;
+			
+			private SQLiteDatabase reader;
+			
+			ReaderResultIterator(SQLiteDatabase reader, ResultIterator<T> iterator) {
+				this.reader = reader;
+				this.iterator = iterator;
+			}
+			
+			@Override
+			public boolean hasNext() {
+				boolean hasNext = this.iterator.hasNext();
+				if (!hasNext)
+					release();
+				return hasNext;
+			}
+			
+			@Override
+			public T next() {
+				return this.iterator.next();
+			}
+			
+			@Override
+			public void remove() {
+				this.iterator.remove();
+			}
+			
+			@Override
+			public void close() {
+				this.iterator.close();
+				release();
+			}
+			
+			private void release() {
+				if (this.reader != null) {
+					connections.releaseReader(this.reader);
+					this.reader = null;
+				}
+			}
 		}
 		
 		/**
@@ -270,31 +972,44 @@ public abstract class DatabaseAdapterFactory {
 			
 			@Override
 			public void onCreate(SQLiteDatabase db) {
-				dataBase.beginTransaction();
+				// called while connections are opened, only the given connection can be used
+				db.beginTransaction();
 				try {
 					for (String sql : SqliteHelper.generateCreateStatements()) {
 						Log.i(TAG, sql);
-						dataBase.execSQL(sql);
+						db.execSQL(sql);
 					}
-					dataBase.setTransactionSuccessful();
+					db.setTransactionSuccessful();
 				}
 				catch (Exception e) {
 					Log.e(TAG, "Can not create tables , rolling back ... Error : " + e.getMessage());
 				}
 				finally {
-					dataBase.endTransaction();
+					db.endTransaction();
 				}
 				
 			}
 			
+			@Override
+			public void onOpen(SQLiteDatabase db) {
+				SqliteHelper.configureWriter(db, configuration);
+				Log.i(TAG, "Opened database with " + SqliteHelper.readConfiguration(db, configuration));
+			}
+			
+			/**
+			 * migrates existing tables to the registry keeping their rows, a failed migration is rolled back and the database keeps its old version
+			 */
 			@Override
 			public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-				Log.w(TAG, "Upgrading database from version "+oldVersion+ " to "+newVersion+" current implementation will drop all tables ...");
-				for(String sql:SqliteHelper.generateDropStatements()){
-					Log.i(TAG, sql);
-					dataBase.execSQL(sql);
+				Log.w(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion + ", migrating tables to the registry ...");
+				db.beginTransaction();
+				try {
+					new SchemaMigrator(db).migrate();
+					db.setTransactionSuccessful();
+				}
+				finally {
+					db.endTransaction();
 				}
-				this.onCreate(db);	
 			}
 			
 		}
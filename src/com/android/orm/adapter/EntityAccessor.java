@@ -0,0 +1,50 @@
+package com.android.orm.adapter;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import com.android.orm.Persistable;
+
+/**
+ * reads and writes column fields of an entity without reflection. Implementations are generated at compile time by EntityAccessorProcessor with name
+ * entityQualifiedName + OrmConstants.ACCESSOR_CLASS_SUFFIX, Registry picks them up during adapter creation. If an entity has no generated accessor, a reflection based one is used.
+ * <p>
+ * fields are addressed by their index in getFieldNames()
+ * </p>
+ * 
+ * @author Hamza Gumrah
+ */
+public interface EntityAccessor<T extends Persistable> {
+	
+	/**
+	 * @return names of the @Column fields, index of a name is the field index used by other methods
+	 */
+	String[] getFieldNames();
+	
+	/**
+	 * @return new instance of the entity using no argument constructor
+	 */
+	T newInstance();
+	
+	/**
+	 * @return value returned by the getter of the field
+	 */
+	Object getValue(T entity, int field);
+	
+	/**
+	 * calls setter of the field with value
+	 */
+	void setValue(T entity, int field, Object value);
+	
+	/**
+	 * binds column value of the field to statement at index. foreign keys are bound with their reference value.
+	 * 
+	 * @throws com.android.orm.exception.ColumnNotNullableException if value is null and column is not nullable
+	 */
+	void bind(T entity, int field, SQLiteStatement statement, int index);
+	
+	/**
+	 * sets the field from cursor column at index. foreign key fields are not supported, references are resolved by the adapter.
+	 */
+	void read(T entity, int field, Cursor cursor, int index);
+}
@@ -0,0 +1,136 @@
+package com.android.orm.adapter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * second level cache of an entity, shared by all sessions and threads. Keeps column values of rows (see EntityHydrator.readRow) instead of entity instances, each hit hydrates a new instance
+ * so callers can not modify cached data. Bounded by entry count and optionally by approximate size in bytes, least recently used rows are evicted first.
+ * <p>
+ * a row read before a concurrent write is committed would be cached stale after the write invalidates it, so loaders take the invalidation count before querying and a row is not
+ * cached if any row is invalidated since.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+final class EntityCache {
+	
+	// increased by every invalidation of any cache, under the lock of the invalidated cache
+	private static final AtomicLong INVALIDATIONS = new AtomicLong(0);
+	
+	private final int maxEntries;
+	
+	private final long maxBytes;
+	
+	// access ordered, eldest entry is the least recently used one
+	private final LinkedHashMap<Long, Object[]> rows;
+	
+	private long bytes = 0;
+	
+	private long hitCount = 0;
+	
+	private long missCount = 0;
+	
+	private long evictionCount = 0;
+	
+	/**
+	 * @param maxEntries should be greater than 0
+	 * @param maxBytes 0 if cache is bounded only by maxEntries
+	 */
+	EntityCache(int maxEntries, long maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.rows = new LinkedHashMap<Long, Object[]>(16, 0.75f, true);
+	}
+	
+	/**
+	 * @return cached row or null, counts a hit or miss
+	 */
+	final synchronized Object[] get(final long id) {
+		Object[] row = this.rows.get(id);
+		if (row == null)
+			this.missCount++;
+		else
+			this.hitCount++;
+		return row;
+	}
+	
+	/**
+	 * @return cached row or null, does not count a hit or miss
+	 */
+	final synchronized Object[] peek(final long id) {
+		return this.rows.get(id);
+	}
+	
+	/**
+	 * @return invalidation count of all caches, should be taken before rows to be cached are queried
+	 */
+	static final long getInvalidations() {
+		return INVALIDATIONS.get();
+	}
+	
+	/**
+	 * caches the row unless a row is invalidated after it is read
+	 *
+	 * @param invalidations value of getInvalidations taken before the row is queried
+	 */
+	final synchronized void put(final long id, final Object[] row, final long invalidations) {
+		if (INVALIDATIONS.get() != invalidations)
+			return;
+		Object[] previous = this.rows.put(id, row);
+		if (previous != null)
+			this.bytes -= estimateBytes(previous);
+		this.bytes += estimateBytes(row);
+		trim();
+	}
+	
+	/**
+	 * removes row from cache, should be called for every write of the row
+	 */
+	final synchronized void invalidate(final long id) {
+		INVALIDATIONS.incrementAndGet();
+		Object[] previous = this.rows.remove(id);
+		if (previous != null)
+			this.bytes -= estimateBytes(previous);
+	}
+	
+	final synchronized void clear() {
+		INVALIDATIONS.incrementAndGet();
+		this.rows.clear();
+		this.bytes = 0;
+	}
+	
+	final synchronized CacheStatistics getStatistics() {
+		return new CacheStatistics(this.hitCount, this.missCount, this.evictionCount, this.rows.size(), this.bytes);
+	}
+	
+	private final void trim() {
+		Iterator<Map.Entry<Long, Object[]>> iterator = this.rows.entrySet().iterator();
+		while (iterator.hasNext() && (this.rows.size() > this.maxEntries || (this.maxBytes > 0 && this.bytes > this.maxBytes))) {
+			this.bytes -= estimateBytes(iterator.next().getValue());
+			iterator.remove();
+			this.evictionCount++;
+		}
+	}
+	
+	/**
+	 * rough heap size of a cached row, enough to bound the cache not to measure it
+	 */
+	private static final long estimateBytes(final Object[] row) {
+		// array header, map entry and key
+		long size = 16 + 4 * row.length + 48;
+		for (Object value : row) {
+			if (value == null)
+				continue;
+			if (value instanceof String)
+				size += 40 + 2 * ((String) value).length();
+			else if (value instanceof byte[])
+				size += 16 + ((byte[]) value).length;
+			else
+				size += 16;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,312 @@
+package com.android.orm.adapter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import android.database.Cursor;
+
+import com.android.orm.OrmConstants;
+import com.android.orm.Persistable;
+import com.android.orm.exception.EntityViolation;
+
+/**
+ * cursor to entity mapping plan of an entity. Generated once per entity and cached in EntityMetaData.
+ * <p>
+ * all mapped tables are selected with a single joined SELECT, root table is aliased T0 and joined tables T1,T2... on _id. Since the column list of the SELECT is generated here, cursor index of
+ * each column is known and never looked up by name: _id is at 0, columns follow in mapped table and TableMetaData.getColumns() order.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+final class EntityHydrator {
+	
+	static final String ROOT_ALIAS = "T0";
+	
+	private final EntityMetaData entityMetaData;
+	
+	private final String selectStatement;
+	
+	// SELECT and FROM clauses of selectStatement, used to select extra columns with joins
+	private final String selectClause;
+	
+	private final String fromClause;
+	
+	// in cursor order, cursor index of columns[i] is i + 1
+	private final ColumnMetaData[] columns;
+	
+	// accessor field index of each column, -1 if column belongs to another entity sharing the table
+	private final int[] fields;
+	
+	// {alias.columnName} of each column
+	private final String[] qualifiedColumns;
+	
+	// positions in columns which are foreign keys
+	private final int[] foreignKeys;
+	
+	EntityHydrator(EntityMetaData entityMetaData) {
+		this.entityMetaData = entityMetaData;
+		List<ColumnMetaData> columnList = new ArrayList<ColumnMetaData>();
+		List<Integer> fieldList = new ArrayList<Integer>();
+		List<String> qualifiedList = new ArrayList<String>();
+		StringBuilder selectBuilder = new StringBuilder("SELECT ");
+		selectBuilder.append(ROOT_ALIAS).append(".").append(OrmConstants.PRIMARY_KEY_COLUMN_NAME);
+		StringBuilder fromBuilder = new StringBuilder(" FROM ");
+		int tableIndex = 0;
+		for (TableMetaData tableMetaData : entityMetaData.getMappedTables()) {
+			String alias = "T" + tableIndex;
+			if (tableIndex == 0)
+				fromBuilder.append(tableMetaData.getName().toUpperCase()).append(" ").append(alias);
+			else
+				fromBuilder.append(" INNER JOIN ").append(tableMetaData.getName().toUpperCase()).append(" ").append(alias).append(" ON ").append(alias).append(".")
+						.append(OrmConstants.PRIMARY_KEY_COLUMN_NAME).append(" = ").append(ROOT_ALIAS).append(".").append(OrmConstants.PRIMARY_KEY_COLUMN_NAME);
+			int[] tableFields = entityMetaData.getFieldIndexes(tableMetaData);
+			int i = 0;
+			for (ColumnMetaData columnMetaData : tableMetaData.getColumns()) {
+				String qualifiedColumn = alias + "." + columnMetaData.getColumnName();
+				selectBuilder.append(", ").append(qualifiedColumn);
+				columnList.add(columnMetaData);
+				fieldList.add(tableFields[i++]);
+				qualifiedList.add(qualifiedColumn);
+			}
+			tableIndex++;
+		}
+		this.selectClause = selectBuilder.toString();
+		this.fromClause = fromBuilder.toString();
+		this.selectStatement = this.selectClause + this.fromClause;
+		this.columns = columnList.toArray(new ColumnMetaData[columnList.size()]);
+		this.qualifiedColumns = qualifiedList.toArray(new String[qualifiedList.size()]);
+		this.fields = new int[fieldList.size()];
+		List<Integer> foreignKeyList = new ArrayList<Integer>();
+		for (int i = 0; i < this.fields.length; i++) {
+			this.fields[i] = fieldList.get(i);
+			if (this.fields[i] >= 0 && this.columns[i].isForeignKey())
+				foreignKeyList.add(i);
+		}
+		this.foreignKeys = new int[foreignKeyList.size()];
+		for (int i = 0; i < this.foreignKeys.length; i++)
+			this.foreignKeys[i] = foreignKeyList.get(i);
+	}
+	
+	/**
+	 * @return SELECT T0._id, T0.column ... FROM ROOT T0 INNER JOIN CHILD T1 ON T1._id = T0._id , without WHERE clause
+	 */
+	final String getSelectStatement() {
+		return this.selectStatement;
+	}
+	
+	/**
+	 * select statement with an extra column after the entity's columns, at cursor index getColumnCount() + 1
+	 * 
+	 * @param join JOIN clause providing the extra column
+	 */
+	final String getSelectStatement(final String extraColumn, final String join) {
+		return this.selectClause + ", " + extraColumn + this.fromClause + " " + join;
+	}
+	
+	/**
+	 * @return number of selected columns excluding _id
+	 */
+	final int getColumnCount() {
+		return this.columns.length;
+	}
+	
+	/**
+	 * @param columnName
+	 * @return alias.columnName to be used in WHERE clauses, null if entity has no such column
+	 */
+	final String getQualifiedColumn(final String columnName) {
+		if (columnName.equals(OrmConstants.PRIMARY_KEY_COLUMN_NAME))
+			return ROOT_ALIAS + "." + OrmConstants.PRIMARY_KEY_COLUMN_NAME;
+		for (int i = 0; i < this.columns.length; i++)
+			if (this.columns[i].getColumnName().equals(columnName))
+				return this.qualifiedColumns[i];
+		return null;
+	}
+	
+	/**
+	 * creates entity from current row of the cursor, sets id and all non foreign key columns. foreign keys are resolved by the caller using getForeignKeyCount(), readForeignKey and setReference
+	 *
+	 * @param cursor positioned on a row of getSelectStatement()
+	 * @param stub unloaded stub of the row which is filled instead of a new instance, or null
+	 */
+	final Persistable hydrate(final Cursor cursor, final Persistable stub) {
+		EntityAccessor<Persistable> accessor = this.entityMetaData.getAccessor();
+		Persistable entity = stub == null ? accessor.newInstance() : stub;
+		if (stub != null)
+			UnloadedReferences.remove(stub);
+		entity.setId(cursor.getLong(0));
+		for (int i = 0; i < this.columns.length; i++) {
+			if (this.fields[i] < 0 || this.columns[i].isForeignKey())
+				continue;
+			accessor.read(entity, this.fields[i], cursor, i + 1);
+		}
+		return entity;
+	}
+	
+	/**
+	 * reads current row of the cursor as values, used by second level cache. index 0 keeps _id, index i + 1 keeps value of the column at i with reference values for foreign keys.
+	 */
+	final Object[] readRow(final Cursor cursor) {
+		Object[] row = new Object[this.columns.length + 1];
+		row[0] = cursor.getLong(0);
+		for (int i = 0; i < this.columns.length; i++)
+			if (this.fields[i] >= 0)
+				row[i + 1] = SqliteHelper.readFromCursor(cursor, i + 1, this.columns[i]);
+		return row;
+	}
+	
+	/**
+	 * creates entity from a row read by readRow, mutable values are copied so that cached rows can not be modified through entities.
+	 *
+	 * @param stub unloaded stub of the row which is filled instead of a new instance, or null
+	 */
+	final Persistable hydrate(final Object[] row, final Persistable stub) {
+		EntityAccessor<Persistable> accessor = this.entityMetaData.getAccessor();
+		Persistable entity = stub == null ? accessor.newInstance() : stub;
+		if (stub != null)
+			UnloadedReferences.remove(stub);
+		entity.setId((Long) row[0]);
+		for (int i = 0; i < this.columns.length; i++) {
+			if (this.fields[i] < 0 || this.columns[i].isForeignKey())
+				continue;
+			accessor.setValue(entity, this.fields[i], copy(row[i + 1]));
+		}
+		return entity;
+	}
+	
+	/**
+	 * reads values of the entity in readRow format, a foreign key is kept as its reference value. Used for dirty checking, mutable values are copied so that the snapshot does not change
+	 * with the entity.
+	 */
+	final Object[] snapshot(final Persistable entity) {
+		EntityAccessor<Persistable> accessor = this.entityMetaData.getAccessor();
+		Object[] row = new Object[this.columns.length + 1];
+		row[0] = entity.getId();
+		for (int i = 0; i < this.columns.length; i++) {
+			if (this.fields[i] < 0)
+				continue;
+			Object value = accessor.getValue(entity, this.fields[i]);
+			if (value instanceof Persistable)
+				value = this.columns[i].getForeignKeyMetaData().getReferenceValue((Persistable) value);
+			row[i + 1] = copy(value);
+		}
+		return row;
+	}
+	
+	/**
+	 * @return true if column at position has different values in the rows, rows are in readRow format
+	 */
+	final boolean isChanged(final Object[] previous, final Object[] current, final int position) {
+		Object previousValue = previous[position + 1];
+		Object currentValue = current[position + 1];
+		if (previousValue == null)
+			return currentValue != null;
+		if (previousValue instanceof byte[])
+			return !(currentValue instanceof byte[]) || !Arrays.equals((byte[]) previousValue, (byte[]) currentValue);
+		return !previousValue.equals(currentValue);
+	}
+	
+	/**
+	 * @return copy of mutable values, value itself for immutable ones
+	 */
+	private static final Object copy(final Object value) {
+		if (value instanceof byte[])
+			return ((byte[]) value).clone();
+		if (value instanceof java.util.Date)
+			return ((java.util.Date) value).clone();
+		return value;
+	}
+	
+	final Object readForeignKey(final Object[] row, final int foreignKey) {
+		return row[this.foreignKeys[foreignKey] + 1];
+	}
+	
+	final int getForeignKeyCount() {
+		return this.foreignKeys.length;
+	}
+	
+	final ColumnMetaData getForeignKey(final int foreignKey) {
+		return this.columns[this.foreignKeys[foreignKey]];
+	}
+	
+	/**
+	 * @return first foreign key referring to the entity, -1 if there is no such foreign key
+	 */
+	final int findForeignKey(final String referenceEntityName) {
+		for (int i = 0; i < this.foreignKeys.length; i++)
+			if (this.columns[this.foreignKeys[i]].getForeignKeyMetaData().getReferenceEntityName().equals(referenceEntityName))
+				return i;
+		return -1;
+	}
+	
+	/**
+	 * foreign key of a OneToMany relation targeting this entity, a relation declared on a base class is inherited so the foreign key may refer to a super class of the owner
+	 *
+	 * @param owner entity class whose rows are referred, or a sub class of it
+	 * @return first foreign key referring to the owner or to its closest super class
+	 * @throws EntityViolation if no foreign key refers to the owner or its super classes
+	 */
+	final int findRelationForeignKey(final Class<?> owner) {
+		int foreignKey = -1;
+		for (Class<?> type = owner; foreignKey < 0 && !Object.class.equals(type); type = type.getSuperclass())
+			foreignKey = findForeignKey(type.getName());
+		if (foreignKey < 0)
+			throw new EntityViolation(owner.getName(), "target entity " + this.entityMetaData.getClazz().getName() + " of OneToMany relation has no foreign key to it");
+		return foreignKey;
+	}
+	
+	/**
+	 * @return alias.columnName of the foreign key
+	 */
+	final String getQualifiedForeignKey(final int foreignKey) {
+		return this.qualifiedColumns[this.foreignKeys[foreignKey]];
+	}
+	
+	/**
+	 * @return reference value of the foreign key in current row of the cursor, null if column is null
+	 */
+	final Object readForeignKey(final Cursor cursor, final int foreignKey) {
+		int position = this.foreignKeys[foreignKey];
+		return SqliteHelper.readFromCursor(cursor, position + 1, this.columns[position]);
+	}
+	
+	/**
+	 * creates an unloaded instance of this entity which only has the reference value, used for lazy foreign keys. Reference value is set to id or to the field of the reference column.
+	 * Stub is kept in UnloadedReferences until its row is hydrated into it.
+	 *
+	 * @return stub, null if reference column is not a plain column of the entity
+	 */
+	final Persistable newReference(final String referenceColumnName, final Object referenceValue) {
+		EntityAccessor<Persistable> accessor = this.entityMetaData.getAccessor();
+		if (referenceColumnName.equals(OrmConstants.PRIMARY_KEY_COLUMN_NAME)) {
+			Persistable reference = accessor.newInstance();
+			reference.setId((Long) referenceValue);
+			UnloadedReferences.add(reference);
+			return reference;
+		}
+		for (int i = 0; i < this.columns.length; i++) {
+			if (this.fields[i] < 0 || this.columns[i].isForeignKey() || !this.columns[i].getColumnName().equals(referenceColumnName))
+				continue;
+			Persistable reference = accessor.newInstance();
+			accessor.setValue(reference, this.fields[i], referenceValue);
+			UnloadedReferences.add(reference);
+			return reference;
+		}
+		return null;
+	}
+	
+	/**
+	 * @return value of the foreign key field, loaded entity or a stub
+	 */
+	final Persistable getReference(final Persistable entity, final int foreignKey) {
+		return (Persistable) this.entityMetaData.getAccessor().getValue(entity, this.fields[this.foreignKeys[foreignKey]]);
+	}
+	
+	/**
+	 * sets referenced entity of the foreign key field
+	 */
+	final void setReference(final Persistable entity, final int foreignKey, final Persistable reference) {
+		this.entityMetaData.getAccessor().setValue(entity, this.fields[this.foreignKeys[foreignKey]], reference);
+	}
+}
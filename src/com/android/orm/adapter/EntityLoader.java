@@ -0,0 +1,630 @@
+package com.android.orm.adapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.android.orm.OrmConstants;
+import com.android.orm.Persistable;
+import com.android.orm.exception.UnRegisteredEntityException;
+
+/**
+ * loads entities from database using EntityHydrator of each entity. foreign key references are loaded eagerly, except FetchType.LAZY ones which are set to a stub having only the reference
+ * value (id or the reference field) unless the referenced row is already loaded. A stub referring by primary key is registered to the identity map and its row is hydrated into it when
+ * the row is loaded, other stubs are replaced by loaded entities with loadReferences. Stubs are not written by the adapter until they are loaded, see UnloadedReferences.
+ * <p>
+ * eager references are loaded in batches : rows are hydrated first and their reference values are collected, then each referenced entity is loaded with IN queries of at most batchSize
+ * values and the instances are set to the referencing entities. References of the loaded references are collected in turn, so a result set costs one query per referenced entity and
+ * level instead of one query per row.
+ * </p>
+ * <p>
+ * FetchType.EAGER OneToMany relations are loaded the same way for all hydrated entities of a class : targets are selected with IN queries over their foreign key to the entity, grouped
+ * in memory by the foreign key and set through the relation's setter. EAGER ManyToMany targets are selected with a single join over the cross table per chunk of owners. LAZY
+ * relations are left null and loaded by loadReferences.
+ * </p>
+ * <p>
+ * loaded entities are registered to the identity map, a row which is already in the map is not hydrated again and rows referenced by primary key are returned without querying database.
+ * Rows of entities with second level cache are kept in EntityCache and served from it for primary key lookups.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+final class EntityLoader {
+	
+	// alias of cross table joined to target entity's select statement
+	private static final String CROSS_TABLE_ALIAS = "X";
+	
+	private final SQLiteDatabase dataBase;
+	
+	private final IdentityMap identityMap;
+	
+	private final int batchSize;
+	
+	// invalidation count of second level caches before the first query of the loader, rows read after a later invalidation are not cached
+	private final long invalidations;
+	
+	/**
+	 * @param identityMap identity map of the session, or a new one to share instances inside a single load
+	 * @param batchSize maximum number of reference values in a single IN query
+	 */
+	EntityLoader(SQLiteDatabase dataBase, IdentityMap identityMap, int batchSize) {
+		this.dataBase = dataBase;
+		this.identityMap = identityMap;
+		this.batchSize = Math.min(batchSize, OrmConstants.SQLITE_MAX_VARIABLE_NUMBER);
+		this.invalidations = EntityCache.getInvalidations();
+	}
+	
+	/**
+	 * @param id
+	 * @param clazz
+	 * @return entity with corresponding id else null
+	 */
+	final <T extends Persistable> T get(final long id, final Class<T> clazz) {
+		EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(clazz.getName());
+		if (entityMetaData == null)
+			throw new UnRegisteredEntityException(clazz.getName());
+		Batch batch = new Batch();
+		Persistable loaded = findLoaded(entityMetaData, id, batch);
+		if (loaded != null) {
+			resolve(batch);
+			return clazz.cast(loaded);
+		}
+		List<Persistable> result = load(entityMetaData, EntityHydrator.ROOT_ALIAS + "." + OrmConstants.PRIMARY_KEY_COLUMN_NAME + " = ?", new String[] { String.valueOf(id) });
+		if (result.isEmpty())
+			return null;
+		return clazz.cast(result.get(0));
+	}
+	
+	/**
+	 * @param entityMetaData
+	 * @param selection WHERE clause over qualified columns of the entity, see EntityHydrator.getQualifiedColumn
+	 * @param selectionArgs
+	 * @return loaded entities
+	 */
+	final List<Persistable> load(final EntityMetaData entityMetaData, final String selection, final String[] selectionArgs) {
+		Batch batch = new Batch();
+		List<Persistable> result = load(entityMetaData, selection, selectionArgs, batch);
+		resolve(batch);
+		return result;
+	}
+	
+	/**
+	 * @param selection WHERE clause over qualified columns of the entity, see EntityHydrator.getQualifiedColumn
+	 * @param orderBy ORDER BY clause or null
+	 * @return iterator which hydrates rows in windows of batchSize, references and relations are batched per window
+	 */
+	final <T extends Persistable> ResultIterator<T> stream(final Class<T> clazz, final String selection, final String[] selectionArgs, final String orderBy) {
+		EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(clazz.getName());
+		if (entityMetaData == null)
+			throw new UnRegisteredEntityException(clazz.getName());
+		return stream(clazz, entityMetaData, query(entityMetaData, selection, selectionArgs, orderBy));
+	}
+	
+	/**
+	 * @return entities selected by the query, SQL of the query is generated once per query shape
+	 */
+	final <T extends Persistable> List<T> list(final Query<T> query) {
+		EntityMetaData entityMetaData = getEntityMetaData(query);
+		QueryCompiler.CompiledQuery compiled = QueryCompiler.compile(query);
+		Batch batch = new Batch();
+		List<T> result = new ArrayList<T>();
+		Cursor cursor = this.dataBase.rawQuery(compiled.getSql(), compiled.getArguments(query));
+		try {
+			while (cursor.moveToNext())
+				result.add(query.getEntityClass().cast(hydrateRow(entityMetaData, cursor, batch)));
+		}
+		finally {
+			cursor.close();
+		}
+		resolve(batch);
+		return result;
+	}
+	
+	/**
+	 * @return iterator which hydrates rows of the query in windows of batchSize
+	 */
+	final <T extends Persistable> ResultIterator<T> stream(final Query<T> query) {
+		EntityMetaData entityMetaData = getEntityMetaData(query);
+		QueryCompiler.CompiledQuery compiled = QueryCompiler.compile(query);
+		return stream(query.getEntityClass(), entityMetaData, this.dataBase.rawQuery(compiled.getSql(), compiled.getArguments(query)));
+	}
+	
+	private final EntityMetaData getEntityMetaData(final Query<?> query) {
+		EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(query.getEntityClass().getName());
+		if (entityMetaData == null)
+			throw new UnRegisteredEntityException(query.getEntityClass().getName());
+		return entityMetaData;
+	}
+	
+	private final <T extends Persistable> ResultIterator<T> stream(final Class<T> clazz, final EntityMetaData entityMetaData, final Cursor cursor) {
+		return new WindowIterator<T>(clazz, entityMetaData, cursor);
+	}
+	
+	/**
+	 * replaces stubs of lazy foreign keys of the entity with loaded entities, a reference whose row does not exist is set to null. Lazy OneToMany and ManyToMany relations of the
+	 * entity are loaded too.
+	 *
+	 * @param entity loaded entity
+	 */
+	final void loadReferences(final Persistable entity) {
+		EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(entity.getClass().getName());
+		if (entityMetaData == null)
+			throw new UnRegisteredEntityException(entity.getClass().getName());
+		EntityHydrator hydrator = entityMetaData.getHydrator();
+		Batch batch = new Batch();
+		for (int i = 0; i < hydrator.getForeignKeyCount(); i++) {
+			ForeignKeyMetaData foreignKeyMetaData = hydrator.getForeignKey(i).getForeignKeyMetaData();
+			if (!foreignKeyMetaData.isLazy())
+				continue;
+			Persistable reference = hydrator.getReference(entity, i);
+			if (reference == null)
+				continue;
+			Object referenceValue = foreignKeyMetaData.getReferenceValue(reference);
+			if (referenceValue != null)
+				batch.references.add(new PendingReference(entity, hydrator, i, referenceValue));
+		}
+		List<Persistable> entities = Collections.singletonList(entity);
+		if (entityMetaData.getOneToMany() != null)
+			for (OneToManyMetaData oneToMany : entityMetaData.getOneToMany())
+				if (!oneToMany.isEager())
+					loadRelation(entityMetaData, oneToMany, entities, batch);
+		for (ManyToManyMetaData manyToMany : entityMetaData.getManyToMany())
+			if (!manyToMany.isEager())
+				loadRelation(manyToMany, entities, batch);
+		resolve(batch);
+	}
+	
+	/**
+	 * hydrates rows of the query, references are collected to the batch
+	 */
+	private final List<Persistable> load(final EntityMetaData entityMetaData, final String selection, final String[] selectionArgs, final Batch batch) {
+		List<Persistable> result = new ArrayList<Persistable>();
+		Cursor cursor = query(entityMetaData, selection, selectionArgs, null);
+		try {
+			while (cursor.moveToNext())
+				result.add(hydrateRow(entityMetaData, cursor, batch));
+		}
+		finally {
+			cursor.close();
+		}
+		return result;
+	}
+	
+	private final Cursor query(final EntityMetaData entityMetaData, final String selection, final String[] selectionArgs, final String orderBy) {
+		StringBuilder sql = new StringBuilder(entityMetaData.getHydrator().getSelectStatement());
+		if (selection != null)
+			sql.append(" WHERE ").append(selection);
+		if (orderBy != null)
+			sql.append(" ORDER BY ").append(orderBy);
+		return this.dataBase.rawQuery(sql.toString(), selectionArgs);
+	}
+	
+	/**
+	 * @param cursor positioned on a row of the entity's select statement
+	 * @return loaded instance of the row from identity map, or hydrated entity whose eager references are collected to the batch. A lazy stub of the row in identity map is
+	 *         hydrated in place
+	 */
+	private final Persistable hydrateRow(final EntityMetaData entityMetaData, final Cursor cursor, final Batch batch) {
+		EntityHydrator hydrator = entityMetaData.getHydrator();
+		Persistable stub = this.identityMap.get(entityMetaData.getClazz(), cursor.getLong(0));
+		if (stub != null && !UnloadedReferences.contains(stub))
+			return stub;
+		EntityCache cache = entityMetaData.getCache();
+		if (cache != null) {
+			Object[] row = hydrator.readRow(cursor);
+			cache.put((Long) row[0], row, this.invalidations);
+			return hydrate(hydrator, row, stub, batch);
+		}
+		Persistable entity = hydrator.hydrate(cursor, stub);
+		// registered before references are resolved, a reference back to this row gets this instance
+		this.identityMap.put(entity);
+		for (int i = 0; i < hydrator.getForeignKeyCount(); i++) {
+			Object referenceValue = hydrator.readForeignKey(cursor, i);
+			if (referenceValue != null)
+				addReference(batch, entity, hydrator, i, referenceValue);
+		}
+		batch.add(entity, hydrator);
+		return entity;
+	}
+	
+	/**
+	 * @return instance of the row from identity map or second level cache without querying database, null if row is not loaded before. A lazy stub is not returned, it is hydrated
+	 *         from the cache or left to be loaded from database
+	 */
+	private final Persistable findLoaded(final EntityMetaData entityMetaData, final long id, final Batch batch) {
+		Persistable stub = this.identityMap.get(entityMetaData.getClazz(), id);
+		if (stub != null && !UnloadedReferences.contains(stub))
+			return stub;
+		EntityCache cache = entityMetaData.getCache();
+		if (cache == null)
+			return null;
+		Object[] row = cache.get(id);
+		if (row == null)
+			return null;
+		return hydrate(entityMetaData.getHydrator(), row, stub, batch);
+	}
+	
+	/**
+	 * hydrates a cached row, registers it to identity map and collects its references to the batch
+	 *
+	 * @param stub unloaded stub of the row or null
+	 */
+	private final Persistable hydrate(final EntityHydrator hydrator, final Object[] row, final Persistable stub, final Batch batch) {
+		Persistable entity = hydrator.hydrate(row, stub);
+		this.identityMap.put(entity);
+		for (int i = 0; i < hydrator.getForeignKeyCount(); i++) {
+			Object referenceValue = hydrator.readForeignKey(row, i);
+			if (referenceValue != null)
+				addReference(batch, entity, hydrator, i, referenceValue);
+		}
+		batch.add(entity, hydrator);
+		return entity;
+	}
+	
+	/**
+	 * sets lazy references to the loaded instance or a stub, other references are collected to the batch
+	 */
+	private final void addReference(final Batch batch, final Persistable entity, final EntityHydrator hydrator, final int foreignKey, final Object referenceValue) {
+		ForeignKeyMetaData foreignKeyMetaData = hydrator.getForeignKey(foreignKey).getForeignKeyMetaData();
+		if (foreignKeyMetaData.isLazy()) {
+			Persistable reference = lazyReference(foreignKeyMetaData, referenceValue, batch);
+			if (reference != null) {
+				hydrator.setReference(entity, foreignKey, reference);
+				return;
+			}
+		}
+		batch.references.add(new PendingReference(entity, hydrator, foreignKey, referenceValue));
+	}
+	
+	/**
+	 * @return loaded instance or stub if it is in identity map, loaded instance if it is in cache, else a new stub. A stub referring by primary key is registered to identity map so
+	 *         the row keeps a single instance, loading the row fills the stub. null if reference column can not be set on a stub, e.g it is a foreign key itself
+	 */
+	private final Persistable lazyReference(final ForeignKeyMetaData foreignKeyMetaData, final Object referenceValue, final Batch batch) {
+		EntityMetaData referenceMetaData = getReferenceMetaData(foreignKeyMetaData);
+		boolean primaryKey = foreignKeyMetaData.getReferenceColumnName().equals(OrmConstants.PRIMARY_KEY_COLUMN_NAME);
+		if (primaryKey) {
+			Persistable registered = this.identityMap.get(referenceMetaData.getClazz(), (Long) referenceValue);
+			if (registered != null)
+				return registered;
+			Persistable loaded = findLoaded(referenceMetaData, (Long) referenceValue, batch);
+			if (loaded != null)
+				return loaded;
+		}
+		Persistable reference = referenceMetaData.getHydrator().newReference(foreignKeyMetaData.getReferenceColumnName(), referenceValue);
+		if (reference != null && primaryKey)
+			this.identityMap.put(reference);
+		return reference;
+	}
+	
+	/**
+	 * loads references and eager relations of the batch until no reference is left and every hydrated entity has its eager relations. Entities of the batch are tracked after their
+	 * references are set so foreign keys are not seen as changed.
+	 */
+	private final void resolve(final Batch batch) {
+		resolveReferences(batch);
+		int populated = 0;
+		while (populated < batch.entities.size()) {
+			// targets hydrated for these entities get their relations in the next round
+			List<Persistable> entities = new ArrayList<Persistable>(batch.entities.subList(populated, batch.entities.size()));
+			populated = batch.entities.size();
+			loadRelations(entities, batch);
+			resolveReferences(batch);
+		}
+		for (int i = 0; i < batch.entities.size(); i++)
+			track(batch.hydrators.get(i), batch.entities.get(i));
+	}
+	
+	/**
+	 * loads references of the batch grouped by referenced entity and reference column, level by level until no reference is left
+	 */
+	private final void resolveReferences(final Batch batch) {
+		while (!batch.references.isEmpty()) {
+			Map<String, List<PendingReference>> groups = new LinkedHashMap<String, List<PendingReference>>();
+			for (PendingReference reference : batch.references) {
+				ForeignKeyMetaData foreignKeyMetaData = reference.getForeignKeyMetaData();
+				String key = foreignKeyMetaData.getReferenceEntityName() + "." + foreignKeyMetaData.getReferenceColumnName();
+				List<PendingReference> group = groups.get(key);
+				if (group == null) {
+					group = new ArrayList<PendingReference>();
+					groups.put(key, group);
+				}
+				group.add(reference);
+			}
+			// references of the loaded rows are resolved in the next level
+			batch.references = new ArrayList<PendingReference>();
+			for (List<PendingReference> group : groups.values())
+				resolve(group, batch);
+		}
+	}
+	
+	/**
+	 * loads eager OneToMany and ManyToMany relations of the entities, each relation of an entity class is loaded with IN queries for all entities of the class. Lazy relations are
+	 * left to loadReferences.
+	 */
+	private final void loadRelations(final List<Persistable> entities, final Batch batch) {
+		Map<Class<?>, List<Persistable>> classes = new LinkedHashMap<Class<?>, List<Persistable>>();
+		for (Persistable entity : entities) {
+			List<Persistable> classEntities = classes.get(entity.getClass());
+			if (classEntities == null) {
+				classEntities = new ArrayList<Persistable>();
+				classes.put(entity.getClass(), classEntities);
+			}
+			classEntities.add(entity);
+		}
+		for (Map.Entry<Class<?>, List<Persistable>> entry : classes.entrySet()) {
+			EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(entry.getKey().getName());
+			if (entityMetaData.getOneToMany() != null)
+				for (OneToManyMetaData oneToMany : entityMetaData.getOneToMany())
+					if (oneToMany.isEager())
+						loadRelation(entityMetaData, oneToMany, entry.getValue(), batch);
+			for (ManyToManyMetaData manyToMany : entityMetaData.getManyToMany())
+				if (manyToMany.isEager())
+					loadRelation(manyToMany, entry.getValue(), batch);
+		}
+	}
+	
+	/**
+	 * loads targets of the relation joined with the cross table, owner id is selected after the target's columns. Targets are grouped by owner id and set through the relation's
+	 * setter, entities without links get an empty collection.
+	 */
+	private final void loadRelation(final ManyToManyMetaData manyToMany, final List<Persistable> entities, final Batch batch) {
+		EntityMetaData targetMetaData = DatabaseAdapterFactory.getEntityMetaData(manyToMany.getTargetEntity().getName());
+		if (targetMetaData == null)
+			throw new UnRegisteredEntityException(manyToMany.getTargetEntity().getName());
+		EntityHydrator targetHydrator = targetMetaData.getHydrator();
+		String crossTable = manyToMany.getCrossTable().getName().toUpperCase();
+		String ownerColumn = CROSS_TABLE_ALIAS + "." + manyToMany.getOwnerColumn();
+		String select = targetHydrator.getSelectStatement(ownerColumn, "INNER JOIN " + crossTable + " " + CROSS_TABLE_ALIAS + " ON " + CROSS_TABLE_ALIAS + "."
+				+ manyToMany.getTargetColumn() + " = " + EntityHydrator.ROOT_ALIAS + "." + OrmConstants.PRIMARY_KEY_COLUMN_NAME);
+		int ownerIndex = targetHydrator.getColumnCount() + 1;
+		Map<Long, List<Persistable>> groups = new HashMap<Long, List<Persistable>>();
+		List<String> ids = new ArrayList<String>(entities.size());
+		for (Persistable entity : entities)
+			ids.add(String.valueOf(entity.getId()));
+		for (int start = 0; start < ids.size(); start += this.batchSize) {
+			List<String> chunk = ids.subList(start, Math.min(ids.size(), start + this.batchSize));
+			Cursor cursor = this.dataBase.rawQuery(select + " WHERE " + SqliteHelper.generateInClause(ownerColumn, chunk.size()), chunk.toArray(new String[chunk.size()]));
+			try {
+				while (cursor.moveToNext()) {
+					Persistable target = hydrateRow(targetMetaData, cursor, batch);
+					Long ownerId = cursor.getLong(ownerIndex);
+					List<Persistable> group = groups.get(ownerId);
+					if (group == null) {
+						group = new ArrayList<Persistable>();
+						groups.put(ownerId, group);
+					}
+					group.add(target);
+				}
+			}
+			finally {
+				cursor.close();
+			}
+		}
+		for (Persistable entity : entities) {
+			List<Persistable> group = groups.get(entity.getId());
+			manyToMany.setTargets(entity, group == null ? new ArrayList<Persistable>() : group);
+			// loaded links let update skip the relation while its targets do not change
+			if (this.identityMap.isTracking()) {
+				Set<Long> targetIds = new HashSet<Long>();
+				if (group != null)
+					for (Persistable target : group)
+						targetIds.add(target.getId());
+				this.identityMap.trackLinks(entity, manyToMany.getFieldName(), targetIds);
+			}
+		}
+	}
+	
+	/**
+	 * loads targets of the relation referring to any of the entities, groups them by the entity they refer to and sets them through the relation's setter. Entities without targets
+	 * get an empty collection.
+	 */
+	private final void loadRelation(final EntityMetaData entityMetaData, final OneToManyMetaData oneToMany, final List<Persistable> entities, final Batch batch) {
+		EntityMetaData targetMetaData = DatabaseAdapterFactory.getEntityMetaData(oneToMany.getTargetEntity().getName());
+		if (targetMetaData == null)
+			throw new UnRegisteredEntityException(oneToMany.getTargetEntity().getName());
+		EntityHydrator targetHydrator = targetMetaData.getHydrator();
+		int foreignKey = targetHydrator.findRelationForeignKey(entityMetaData.getClazz());
+		ForeignKeyMetaData foreignKeyMetaData = targetHydrator.getForeignKey(foreignKey).getForeignKeyMetaData();
+		Set<Object> referenceValues = new LinkedHashSet<Object>();
+		for (Persistable entity : entities) {
+			Object referenceValue = foreignKeyMetaData.getReferenceValue(entity);
+			if (referenceValue != null)
+				referenceValues.add(referenceValue);
+		}
+		List<String> values = new ArrayList<String>(referenceValues.size());
+		for (Object referenceValue : referenceValues)
+			values.add(SqliteHelper.toSelectionArg(referenceValue, foreignKeyMetaData.getReferenceColumnType()));
+		List<Persistable> targets = new ArrayList<Persistable>();
+		String foreignKeyColumn = targetHydrator.getQualifiedForeignKey(foreignKey);
+		for (int start = 0; start < values.size(); start += this.batchSize) {
+			List<String> chunk = values.subList(start, Math.min(values.size(), start + this.batchSize));
+			targets.addAll(load(targetMetaData, SqliteHelper.generateInClause(foreignKeyColumn, chunk.size()), chunk.toArray(new String[chunk.size()]), batch));
+		}
+		// foreign keys of the targets refer to the entities after their references are set
+		resolveReferences(batch);
+		Map<Object, List<Persistable>> groups = new HashMap<Object, List<Persistable>>();
+		for (Persistable target : targets) {
+			Persistable reference = targetHydrator.getReference(target, foreignKey);
+			if (reference == null)
+				continue;
+			Object referenceValue = foreignKeyMetaData.getReferenceValue(reference);
+			List<Persistable> group = groups.get(referenceValue);
+			if (group == null) {
+				group = new ArrayList<Persistable>();
+				groups.put(referenceValue, group);
+			}
+			group.add(target);
+		}
+		for (Persistable entity : entities) {
+			Object referenceValue = foreignKeyMetaData.getReferenceValue(entity);
+			List<Persistable> group = referenceValue == null ? null : groups.get(referenceValue);
+			oneToMany.setTargets(entity, group == null ? new ArrayList<Persistable>() : group);
+		}
+	}
+	
+	/**
+	 * loads referenced rows of references having the same referenced entity and reference column, and sets them
+	 */
+	private final void resolve(final List<PendingReference> group, final Batch batch) {
+		ForeignKeyMetaData foreignKeyMetaData = group.get(0).getForeignKeyMetaData();
+		EntityMetaData referenceMetaData = getReferenceMetaData(foreignKeyMetaData);
+		boolean primaryKey = foreignKeyMetaData.getReferenceColumnName().equals(OrmConstants.PRIMARY_KEY_COLUMN_NAME);
+		Map<Object, Persistable> references = new HashMap<Object, Persistable>();
+		Set<Object> missing = new LinkedHashSet<Object>();
+		for (PendingReference reference : group) {
+			if (references.containsKey(reference.referenceValue) || missing.contains(reference.referenceValue))
+				continue;
+			Persistable loaded = primaryKey ? findLoaded(referenceMetaData, (Long) reference.referenceValue, batch) : null;
+			if (loaded != null)
+				references.put(reference.referenceValue, loaded);
+			else
+				missing.add(reference.referenceValue);
+		}
+		String referenceColumn = referenceMetaData.getHydrator().getQualifiedColumn(foreignKeyMetaData.getReferenceColumnName());
+		List<String> values = new ArrayList<String>(missing.size());
+		for (Object referenceValue : missing)
+			values.add(SqliteHelper.toSelectionArg(referenceValue, foreignKeyMetaData.getReferenceColumnType()));
+		for (int start = 0; start < values.size(); start += this.batchSize) {
+			List<String> chunk = values.subList(start, Math.min(values.size(), start + this.batchSize));
+			for (Persistable loaded : load(referenceMetaData, SqliteHelper.generateInClause(referenceColumn, chunk.size()), chunk.toArray(new String[chunk.size()]), batch)) {
+				Object referenceValue = foreignKeyMetaData.getReferenceValue(loaded);
+				// first row is kept if reference column is not unique
+				if (!references.containsKey(referenceValue))
+					references.put(referenceValue, loaded);
+			}
+		}
+		for (PendingReference reference : group)
+			reference.hydrator.setReference(reference.entity, reference.foreignKey, references.get(reference.referenceValue));
+	}
+	
+	/**
+	 * keeps loaded values of the entity in a tracking identity map, taken after references are set so foreign keys are not seen as changed
+	 */
+	private final void track(final EntityHydrator hydrator, final Persistable entity) {
+		if (this.identityMap.isTracking())
+			this.identityMap.track(entity, hydrator.snapshot(entity));
+	}
+	
+	private static final EntityMetaData getReferenceMetaData(final ForeignKeyMetaData foreignKeyMetaData) {
+		EntityMetaData referenceMetaData = DatabaseAdapterFactory.getEntityMetaData(foreignKeyMetaData.getReferenceEntityName());
+		if (referenceMetaData == null)
+			throw new UnRegisteredEntityException(foreignKeyMetaData.getReferenceEntityName());
+		return referenceMetaData;
+	}
+	
+	/**
+	 * iterator over an entity query which hydrates up to batchSize rows ahead and resolves them as one batch, so a window costs one query per referenced entity and relation instead
+	 * of one query per row. Entities of a window are kept until they are returned.
+	 */
+	private final class WindowIterator<T extends Persistable> implements ResultIterator<T> {
+		
+		private final Class<T> clazz;
+		
+		private final EntityMetaData entityMetaData;
+		
+		private final Cursor cursor;
+		
+		private final List<Persistable> window;
+		
+		// index of the next entity of the window
+		private int position = 0;
+		
+		WindowIterator(Class<T> clazz, EntityMetaData entityMetaData, Cursor cursor) {
+			this.clazz = clazz;
+			this.entityMetaData = entityMetaData;
+			this.cursor = cursor;
+			this.window = new ArrayList<Persistable>(EntityLoader.this.batchSize);
+		}
+		
+		@Override
+		public final boolean hasNext() {
+			if (this.position < this.window.size())
+				return true;
+			this.window.clear();
+			this.position = 0;
+			if (this.cursor.isClosed())
+				return false;
+			Batch batch = new Batch();
+			while (this.window.size() < EntityLoader.this.batchSize && this.cursor.moveToNext())
+				this.window.add(hydrateRow(this.entityMetaData, this.cursor, batch));
+			if (this.window.size() < EntityLoader.this.batchSize)
+				this.cursor.close();
+			resolve(batch);
+			return !this.window.isEmpty();
+		}
+		
+		@Override
+		public final T next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return this.clazz.cast(this.window.get(this.position++));
+		}
+		
+		@Override
+		public final void remove() {
+			throw new UnsupportedOperationException("query results are read only");
+		}
+		
+		@Override
+		public final void close() {
+			this.window.clear();
+			this.position = 0;
+			if (!this.cursor.isClosed())
+				this.cursor.close();
+		}
+	}
+	
+	/**
+	 * entities hydrated by a single load and their unresolved eager references
+	 */
+	private static final class Batch {
+		
+		private List<PendingReference> references = new ArrayList<PendingReference>();
+		
+		private final List<Persistable> entities = new ArrayList<Persistable>();
+		
+		// hydrator of entities[i]
+		private final List<EntityHydrator> hydrators = new ArrayList<EntityHydrator>();
+		
+		private final void add(final Persistable entity, final EntityHydrator hydrator) {
+			this.entities.add(entity);
+			this.hydrators.add(hydrator);
+		}
+	}
+	
+	/**
+	 * foreign key of a hydrated entity waiting for its referenced entity
+	 */
+	private static final class PendingReference {
+		
+		private final Persistable entity;
+		
+		private final EntityHydrator hydrator;
+		
+		private final int foreignKey;
+		
+		private final Object referenceValue;
+		
+		PendingReference(Persistable entity, EntityHydrator hydrator, int foreignKey, Object referenceValue) {
+			this.entity = entity;
+			this.hydrator = hydrator;
+			this.foreignKey = foreignKey;
+			this.referenceValue = referenceValue;
+		}
+		
+		private final ForeignKeyMetaData getForeignKeyMetaData() {
+			return this.hydrator.getForeignKey(this.foreignKey).getForeignKeyMetaData();
+		}
+	}
+}
@@ -1,7 +1,15 @@
 package com.android.orm.adapter;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import com.android.orm.Persistable;
+import com.android.orm.annotation.Entity;
+import com.android.orm.exception.EntityViolation;
+
 /**
  * keeps required data for an entity : *if it is dependent on other entities, *has indexes checks circular references. If there exist a circular reference between two entities @throws
  * CircularForeignKeyException an entity can map to multiple tables when Inheritence is JOINED
@@ -31,6 +39,35 @@ final class EntityMetaData {
 	 * and during get, oneToMany entities should be fetched as well.
 	 */
 	private final Set<OneToManyMetaData> oneToMany;
+	
+	/**
+	 * ManyToMany relations of the entity, links are kept in cross tables
+	 */
+	private final Set<ManyToManyMetaData> manyToMany;
+	
+	private final EntityAccessor<Persistable> accessor;
+	
+	/**
+	 * accessor field indexes of each mapped table's columns, in TableMetaData.getColumns() order. -1 if column belongs to another entity sharing the table
+	 */
+	private final Map<TableMetaData, int[]> fieldIndexes;
+	
+	// table keeping natural key columns of the entity, null if entity has no natural key
+	private TableMetaData naturalKeyTable = null;
+	
+	// natural key columns and their accessor field indexes
+	private ColumnMetaData[] naturalKeyColumns = null;
+	
+	private int[] naturalKeyFields = null;
+	
+	// generated on first upsert
+	private String naturalKeyQuery = null;
+	
+	// cursor mapping plan, generated on first load
+	private EntityHydrator hydrator = null;
+	
+	// second level cache, null if it is not enabled for the entity
+	private final EntityCache cache;
 //	/**
 //	 * tables do not have oneToOne information we need to keep them in entity
 //	 * during persistence oneToMany entities should be persist as well.
@@ -38,10 +75,18 @@ final class EntityMetaData {
 //	 */
 //	private final Set<RelationalMetaData.OneToOneMetaData> oneToOne;
 	
-	public EntityMetaData(Set<TableMetaData> mappedTables, Class<?> clazz,Set<OneToManyMetaData> oneToManies) {
+	public EntityMetaData(Set<TableMetaData> mappedTables, Class<?> clazz,Set<OneToManyMetaData> oneToManies, Set<ManyToManyMetaData> manyToManies, EntityAccessor<Persistable> accessor) {
 		this.mappedTables = mappedTables;
 		this.clazz = clazz;
 		this.oneToMany = oneToManies;
+		this.manyToMany = manyToManies;
+		this.accessor = accessor;
+		this.fieldIndexes = new HashMap<TableMetaData, int[]>(mappedTables.size());
+		Entity entity = clazz.getAnnotation(Entity.class);
+		if (entity != null && entity.cacheEntries() > 0)
+			this.cache = new EntityCache(entity.cacheEntries(), entity.cacheBytes());
+		else
+			this.cache = null;
 		boolean dependent = false;
 		for (TableMetaData metaData : mappedTables) {
 			if (metaData.hasForeignKey()) {
@@ -68,7 +113,7 @@ final class EntityMetaData {
 	 * @return if Inheritence is SingleTable will return one table , which is the reflection of 
 	 * entity in database,
 	 * else if Joined table will return a table set, which are chained to each other on parent-child
-	 * relation.
+	 * relation. Iteration order is parent to child, first table generates the row id during insert.
 	 */
 	public Set<TableMetaData> getMappedTables() {
 		return mappedTables;
@@ -91,6 +136,110 @@ final class EntityMetaData {
 	public Set<OneToManyMetaData> getOneToMany() {
 		return oneToMany;
 	}
+	
+	/**
+	 * @return ManyToMany relations
+	 */
+	public Set<ManyToManyMetaData> getManyToMany() {
+		return manyToMany;
+	}
+	/**
+	 * @return generated accessor of the entity, or reflection based one if entity is not processed
+	 */
+	final EntityAccessor<Persistable> getAccessor() {
+		return accessor;
+	}
+	
+	/**
+	 * binds table columns to accessor fields. should be called after all entities are registered since tables can be shared by entities of the same hierarchy.
+	 */
+	final void resolveFieldIndexes() {
+		Map<String, Integer> indexOfField = new HashMap<String, Integer>();
+		String[] fieldNames = this.accessor.getFieldNames();
+		for (int i = 0; i < fieldNames.length; i++)
+			indexOfField.put(fieldNames[i], i);
+		List<ColumnMetaData> keyColumns = new ArrayList<ColumnMetaData>();
+		List<Integer> keyFields = new ArrayList<Integer>();
+		for (TableMetaData metaData : this.mappedTables) {
+			int[] indexes = new int[metaData.getColumns().size()];
+			int i = 0;
+			for (ColumnMetaData columnMetaData : metaData.getColumns()) {
+				Integer index = indexOfField.get(columnMetaData.getFieldName());
+				indexes[i++] = index == null ? -1 : index;
+				if (index == null || !columnMetaData.isNaturalKey())
+					continue;
+				if (this.naturalKeyTable != null && !this.naturalKeyTable.equals(metaData))
+					throw new EntityViolation(this.clazz.getName(), "natural key columns should be in the same table");
+				this.naturalKeyTable = metaData;
+				keyColumns.add(columnMetaData);
+				keyFields.add(index);
+			}
+			this.fieldIndexes.put(metaData, indexes);
+		}
+		if (this.naturalKeyTable != null) {
+			this.naturalKeyColumns = keyColumns.toArray(new ColumnMetaData[keyColumns.size()]);
+			this.naturalKeyFields = new int[keyFields.size()];
+			List<String> keyColumnNames = new ArrayList<String>(keyColumns.size());
+			for (int i = 0; i < this.naturalKeyFields.length; i++) {
+				this.naturalKeyFields[i] = keyFields.get(i);
+				keyColumnNames.add(this.naturalKeyColumns[i].getColumnName());
+			}
+			// a natural key matches a single row
+			this.naturalKeyTable.addIndex(new IndexMetaData("", keyColumnNames, true));
+		}
+	}
+	
+	/**
+	 * @return table of the natural key columns, null if entity has no natural key
+	 */
+	final TableMetaData getNaturalKeyTable() {
+		return this.naturalKeyTable;
+	}
+	
+	final ColumnMetaData[] getNaturalKeyColumns() {
+		return this.naturalKeyColumns;
+	}
+	
+	/**
+	 * @return accessor field indexes of getNaturalKeyColumns()
+	 */
+	final int[] getNaturalKeyFields() {
+		return this.naturalKeyFields;
+	}
+	
+	/**
+	 * @return query of the id by natural key, see SqliteHelper.generateNaturalKeyQuery
+	 */
+	final String getNaturalKeyQuery() {
+		if (this.naturalKeyQuery == null)
+			this.naturalKeyQuery = SqliteHelper.generateNaturalKeyQuery(this);
+		return this.naturalKeyQuery;
+	}
+	
+	/**
+	 * @return cursor mapping plan of the entity, cursor column indexes are resolved once per entity
+	 */
+	final EntityHydrator getHydrator() {
+		if (this.hydrator == null)
+			this.hydrator = new EntityHydrator(this);
+		return this.hydrator;
+	}
+	
+	/**
+	 * @return second level cache of the entity, null if Entity.cacheEntries() is 0
+	 */
+	final EntityCache getCache() {
+		return this.cache;
+	}
+	
+	/**
+	 * @param tableMetaData one of the mapped tables
+	 * @return accessor field indexes of the table's columns in TableMetaData.getColumns() order
+	 */
+	final int[] getFieldIndexes(TableMetaData tableMetaData) {
+		return this.fieldIndexes.get(tableMetaData);
+	}
+	
 	/**
 	 * 
 	 * @return number of tables which this entity reflected
@@ -1,10 +1,17 @@
 package com.android.orm.adapter;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
 import com.android.orm.OrmConstants;
+import com.android.orm.Persistable;
+import com.android.orm.exception.EntityViolation;
+import com.android.orm.type.FetchType;
+import com.android.orm.util.PersistenceUtil;
 
 /**
- * keeps meta data for foreign keys, reference field name reference field type
- * 
+ * keeps meta data for foreign keys, reference field name reference field type, fetch type and the resolved getter of the reference field
+ *
  * @author Hamza Gumrah
  */
 final class ForeignKeyMetaData {
@@ -17,23 +24,72 @@ final class ForeignKeyMetaData {
 	
 	private final Class<?> referenceFieldType;
 	
-	ForeignKeyMetaData(String referenceEntityName) {
-		this(referenceEntityName, OrmConstants.PRIMARY_KEY_COLUMN_NAME, OrmConstants.DEFAULT_FOREIGN_KEY_REFERENCE, Long.class);
+	// null if reference is primary key, Persistable.getId() is used instead
+	private volatile Method referenceGetter;
+	
+	// class the reference getter is bound on first use, null if getter is given or reference is primary key
+	private final Class<?> referenceEntity;
+	
+	private final ColumnType referenceColumnType;
+	
+	private final FetchType fetchType;
+	
+	ForeignKeyMetaData(String referenceEntityName, FetchType fetchType) {
+		this(referenceEntityName, OrmConstants.PRIMARY_KEY_COLUMN_NAME, OrmConstants.DEFAULT_FOREIGN_KEY_REFERENCE, Long.class, null, fetchType);
 	}
 	
-	ForeignKeyMetaData(String referenceEntityName, String referenceColumnName, String referenceFieldName, Class<?> referenceFieldType) {
+	/**
+	 * @param referenceGetter getter of the reference field, null if reference is primary key
+	 */
+	ForeignKeyMetaData(String referenceEntityName, String referenceColumnName, String referenceFieldName, Class<?> referenceFieldType, Method referenceGetter, FetchType fetchType) {
 		super();
 		this.referenceEntityName = referenceEntityName;
+		this.fetchType = fetchType;
 		if (referenceFieldName != null && referenceFieldType != null) {
 			this.referenceFieldName = referenceFieldName;
 			this.referenceFieldType = referenceFieldType;
 			this.referenceColumnName = referenceColumnName;
+			this.referenceGetter = referenceGetter;
+			this.referenceEntity = null;
 		}
 		else {
 			this.referenceFieldName = OrmConstants.DEFAULT_FOREIGN_KEY_REFERENCE;
 			this.referenceFieldType = Long.class;
 			this.referenceColumnName = OrmConstants.PRIMARY_KEY_COLUMN_NAME;
+			this.referenceGetter = null;
+			this.referenceEntity = null;
 		}
+		// a Persistable reference is stored with its id
+		if (PersistenceUtil.isPersistable(this.referenceFieldType))
+			this.referenceColumnType = ColumnType.LONG;
+		else
+			this.referenceColumnType = ColumnType.of(this.referenceFieldType);
+	}
+	
+	/**
+	 * foreign key read from a registry snapshot, getter of the reference field is found on referenceEntity when it is first used
+	 * 
+	 * @param referenceEntity referenced entity class
+	 */
+	ForeignKeyMetaData(Class<?> referenceEntity, String referenceColumnName, String referenceFieldName, Class<?> referenceFieldType, FetchType fetchType) {
+		this.referenceEntityName = referenceEntity.getName();
+		this.referenceColumnName = referenceColumnName;
+		this.referenceFieldName = referenceFieldName;
+		this.referenceFieldType = referenceFieldType;
+		this.referenceGetter = null;
+		this.fetchType = fetchType;
+		this.referenceEntity = isPrimaryKeyReference() ? null : referenceEntity;
+		if (PersistenceUtil.isPersistable(this.referenceFieldType))
+			this.referenceColumnType = ColumnType.LONG;
+		else
+			this.referenceColumnType = ColumnType.of(this.referenceFieldType);
+	}
+	
+	/**
+	 * @return true if foreign key column keeps _id of the referenced entity
+	 */
+	final boolean isPrimaryKeyReference() {
+		return OrmConstants.PRIMARY_KEY_COLUMN_NAME.equals(this.referenceColumnName);
 	}
 	
 	public String getReferenceEntityName() {
@@ -52,4 +108,47 @@ final class ForeignKeyMetaData {
 		return referenceFieldType;
 	}
 	
+	public FetchType getFetchType() {
+		return fetchType;
+	}
+	
+	/**
+	 * @return true if referenced entity is not loaded with the referencing entity
+	 */
+	final boolean isLazy() {
+		return this.fetchType == FetchType.LAZY;
+	}
+	
+	/**
+	 * @return type tag of the value written to foreign key column
+	 */
+	final ColumnType getReferenceColumnType() {
+		return referenceColumnType;
+	}
+	
+	/**
+	 * @param reference referenced entity
+	 * @return value which is written to foreign key column
+	 */
+	final Object getReferenceValue(final Persistable reference) {
+		Method getter = this.referenceGetter;
+		if (getter == null) {
+			if (this.referenceEntity == null)
+				return reference.getId();
+			this.referenceGetter = getter = MethodBinder.getter(this.referenceEntity, this.referenceFieldName);
+		}
+		try {
+			Object value = getter.invoke(reference);
+			if (value instanceof Persistable)
+				return ((Persistable) value).getId();
+			return value;
+		}
+		catch (IllegalAccessException e) {
+			throw new EntityViolation(this.referenceEntityName, "can not access getter of foreign key reference " + this.referenceFieldName);
+		}
+		catch (InvocationTargetException e) {
+			throw new EntityViolation(this.referenceEntityName, "getter of foreign key reference " + this.referenceFieldName + " failed : " + e.getCause());
+		}
+	}
+
 }
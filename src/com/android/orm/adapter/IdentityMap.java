@@ -0,0 +1,174 @@
+package com.android.orm.adapter;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.android.orm.Persistable;
+
+/**
+ * keeps loaded entities of a session with weak references, keyed by entity class and _id. Same row reached from different paths of an object graph resolves to the same instance, and entities
+ * which are not referenced by the application anymore can be garbage collected.
+ * <p>
+ * not thread safe, each session belongs to a single thread.
+ * </p>
+ * <p>
+ * a tracking map also keeps a snapshot of column values of each entity as it was loaded or last written, update compares the entity with its snapshot and writes only changed columns.
+ * Target ids of ManyToMany relations are kept the same way, so update skips relations whose targets did not change.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+final class IdentityMap {
+	
+	private final Map<Class<?>, Map<Long, IdentityReference>> entities;
+	
+	private final ReferenceQueue<Persistable> queue;
+	
+	private final boolean tracking;
+	
+	/**
+	 * @param tracking true if snapshots of entities should be kept, only session maps track entities
+	 */
+	IdentityMap(boolean tracking) {
+		this.entities = new HashMap<Class<?>, Map<Long, IdentityReference>>();
+		this.queue = new ReferenceQueue<Persistable>();
+		this.tracking = tracking;
+	}
+	
+	final boolean isTracking() {
+		return this.tracking;
+	}
+	
+	/**
+	 * @return loaded instance of the row, null if it is not loaded in this session or it is garbage collected
+	 */
+	final Persistable get(final Class<?> clazz, final long id) {
+		Map<Long, IdentityReference> ids = this.entities.get(clazz);
+		if (ids == null)
+			return null;
+		IdentityReference reference = ids.get(id);
+		if (reference == null)
+			return null;
+		return reference.get();
+	}
+	
+	/**
+	 * registers entity as the instance of its row, replaces previous instance if exists. Snapshot and links of an instance which is already registered are kept.
+	 *
+	 * @param entity persisted entity
+	 */
+	final void put(final Persistable entity) {
+		expungeStaleEntries();
+		Map<Long, IdentityReference> ids = this.entities.get(entity.getClass());
+		if (ids == null) {
+			ids = new HashMap<Long, IdentityReference>();
+			this.entities.put(entity.getClass(), ids);
+		}
+		IdentityReference registered = ids.get(entity.getId());
+		if (registered != null && registered.get() == entity)
+			return;
+		ids.put(entity.getId(), new IdentityReference(entity, this.queue));
+	}
+	
+	/**
+	 * keeps snapshot of the entity, ignored if map is not tracking or entity is not the registered instance of its row
+	 * 
+	 * @param snapshot column values of the entity, see EntityHydrator.snapshot. null discards previous snapshot and links
+	 */
+	final void track(final Persistable entity, final Object[] snapshot) {
+		IdentityReference reference = getReference(entity);
+		if (!this.tracking || reference == null)
+			return;
+		reference.snapshot = snapshot;
+		if (snapshot == null)
+			reference.links = null;
+	}
+	
+	/**
+	 * keeps target ids of a ManyToMany relation of the entity as they are in database, ignored like track
+	 *
+	 * @param targetIds null discards previous ids of the relation
+	 */
+	final void trackLinks(final Persistable entity, final String fieldName, final Set<Long> targetIds) {
+		IdentityReference reference = getReference(entity);
+		if (!this.tracking || reference == null)
+			return;
+		if (reference.links == null)
+			reference.links = new HashMap<String, Set<Long>>();
+		reference.links.put(fieldName, targetIds);
+	}
+	
+	/**
+	 * @return target ids of the relation when it was loaded or last written, null if they are not tracked
+	 */
+	final Set<Long> getLinks(final Persistable entity, final String fieldName) {
+		IdentityReference reference = getReference(entity);
+		return reference == null || reference.links == null ? null : reference.links.get(fieldName);
+	}
+	
+	/**
+	 * @return snapshot of the entity, null if it is not tracked
+	 */
+	final Object[] getSnapshot(final Persistable entity) {
+		IdentityReference reference = getReference(entity);
+		return reference == null ? null : reference.snapshot;
+	}
+	
+	private final IdentityReference getReference(final Persistable entity) {
+		Map<Long, IdentityReference> ids = this.entities.get(entity.getClass());
+		if (ids == null)
+			return null;
+		IdentityReference reference = ids.get(entity.getId());
+		if (reference == null || reference.get() != entity)
+			return null;
+		return reference;
+	}
+	
+	final void remove(final Class<?> clazz, final long id) {
+		Map<Long, IdentityReference> ids = this.entities.get(clazz);
+		if (ids != null)
+			ids.remove(id);
+	}
+	
+	final void clear() {
+		this.entities.clear();
+		while (this.queue.poll() != null)
+			;
+	}
+	
+	/**
+	 * removes entries of garbage collected entities
+	 */
+	private final void expungeStaleEntries() {
+		Reference<? extends Persistable> polled;
+		while ((polled = this.queue.poll()) != null) {
+			IdentityReference reference = (IdentityReference) polled;
+			Map<Long, IdentityReference> ids = this.entities.get(reference.clazz);
+			// row may be registered again with a new instance
+			if (ids != null && ids.get(reference.id) == reference)
+				ids.remove(reference.id);
+		}
+	}
+	
+	private static final class IdentityReference extends WeakReference<Persistable> {
+		
+		private final Class<?> clazz;
+		
+		private final Long id;
+		
+		private Object[] snapshot = null;
+		
+		// key:field name of a ManyToMany relation
+		private Map<String, Set<Long>> links = null;
+		
+		IdentityReference(Persistable entity, ReferenceQueue<Persistable> queue) {
+			super(entity, queue);
+			this.clazz = entity.getClass();
+			this.id = entity.getId();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.android.orm.adapter;
+
+import java.util.List;
+
+/**
+ * keeps columns of an index declared by @Index, @CompositeIndex or generated for a foreign key column
+ * 
+ * @author Hamza Gumrah
+ */
+final class IndexMetaData {
+	
+	// "" if name is generated from table and column names
+	private final String name;
+	
+	// column names in index order
+	private final List<String> columns;
+	
+	private final boolean unique;
+	
+	IndexMetaData(String name, List<String> columns, boolean unique) {
+		this.name = name;
+		this.columns = columns;
+		this.unique = unique;
+	}
+	
+	/**
+	 * @return declared name, or table name and column names joined with "_"
+	 */
+	final String getName(final String tableName) {
+		if (!this.name.equals(""))
+			return this.name;
+		StringBuilder builder = new StringBuilder(tableName.toUpperCase());
+		for (String column : this.columns)
+			builder.append("_").append(column);
+		return builder.toString();
+	}
+	
+	/**
+	 * @return declared name, "" if it is generated
+	 */
+	final String getDeclaredName() {
+		return this.name;
+	}
+	
+	final List<String> getColumns() {
+		return this.columns;
+	}
+	
+	final boolean isUnique() {
+		return this.unique;
+	}
+	
+	/**
+	 * @return true if this index is not unique and other index starts with the same columns, lookups by this index can use the other one
+	 */
+	final boolean isCoveredBy(final IndexMetaData other) {
+		if (this.unique || other.columns.size() < this.columns.size())
+			return false;
+		return other.columns.subList(0, this.columns.size()).equals(this.columns);
+	}
+}
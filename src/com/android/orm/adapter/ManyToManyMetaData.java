@@ -1,32 +1,156 @@
 package com.android.orm.adapter;
 
 import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.android.orm.Persistable;
+import com.android.orm.type.FetchType;
 
 
 final class ManyToManyMetaData {
 	
+	// class whose getter and setter of the field are bound on first use
+	private final Class<?> owner;
+	
+	private final String fieldName;
+	
+	private final Class<?> fieldType;
+	
 	private final Class<?> targetEntity;
 	
-	private final Method getMethod;
+	private final String mapKey;
+	
+	private final FetchType fetchType;
+	
+	private final CrossTableMetaData crossTable;
+	
+	// true if owner of the field is the first entity of the cross table
+	private final boolean ownerFirst;
+	
+	private volatile Method getMethod;
+	
+	private volatile Method setMethod;
 	
-	private final Method setMethod;
+	// getter of mapKey field on target entity, null if field is not a map
+	private volatile Method mapKeyGetter;
 	
-	public ManyToManyMetaData(Class<?> targetEntity, Method getMethod, Method setMethod) {
+	/**
+	 * getter and setter of the field and getter of mapKey are found when they are first used, see bind()
+	 * 
+	 * @param owner entity class declaring the relation
+	 * @param mapKey field of target entity whose values are keys of a Map field
+	 * @param fetchType EAGER if targets are loaded with the owner
+	 */
+	public ManyToManyMetaData(Class<?> owner, String fieldName, Class<?> fieldType, Class<?> targetEntity, String mapKey, FetchType fetchType, CrossTableMetaData crossTable, boolean ownerFirst) {
+		this.owner = owner;
+		this.fieldName = fieldName;
+		this.fieldType = fieldType;
 		this.targetEntity = targetEntity;
-		this.getMethod = getMethod;
-		this.setMethod = setMethod;
+		this.mapKey = mapKey;
+		this.fetchType = fetchType;
+		this.crossTable = crossTable;
+		this.ownerFirst = ownerFirst;
 	}
 	
 	public Class<?> getTargetEntity() {
 		return targetEntity;
 	}
 	
+	public String getMapKey() {
+		return mapKey;
+	}
+	
+	final FetchType getFetchType() {
+		return this.fetchType;
+	}
+	
+	/**
+	 * @return true if targets are loaded with the owner, else only by loadReferences
+	 */
+	final boolean isEager() {
+		return this.fetchType == FetchType.EAGER;
+	}
+	
+	final String getFieldName() {
+		return this.fieldName;
+	}
+	
+	final Class<?> getFieldType() {
+		return this.fieldType;
+	}
+	
 	public Method getGetter() {
-		return this.getMethod;
+		Method method = this.getMethod;
+		if (method == null)
+			this.getMethod = method = MethodBinder.getter(this.owner, this.fieldName);
+		return method;
 	}
 	
 	public Method getSetter() {
-		return this.setMethod;
+		Method method = this.setMethod;
+		if (method == null)
+			this.setMethod = method = MethodBinder.setter(this.owner, this.fieldType, this.fieldName);
+		return method;
+	}
+	
+	/**
+	 * @return getter of mapKey field on target entity, null if field is not a map
+	 */
+	final Method getMapKeyGetter() {
+		Method method = this.mapKeyGetter;
+		if (method == null && Map.class.isAssignableFrom(this.fieldType))
+			this.mapKeyGetter = method = MethodBinder.getter(this.targetEntity, this.mapKey);
+		return method;
+	}
+	
+	/**
+	 * finds all methods of the relation, registry scan binds them at once so that a missing method fails registry creation
+	 */
+	final void bind() {
+		getGetter();
+		getSetter();
+		getMapKeyGetter();
+	}
+	
+	public CrossTableMetaData getCrossTable() {
+		return crossTable;
+	}
+	
+	/**
+	 * @return true if owner of the field is the first entity of the cross table, link statements take first entity's id first
+	 */
+	final boolean isOwnerFirst() {
+		return ownerFirst;
 	}
 	
-}
\ No newline at end of file
+	/**
+	 * @return cross table column keeping id of the field's owner
+	 */
+	final String getOwnerColumn() {
+		return this.ownerFirst ? this.crossTable.getFirstColumnName() : this.crossTable.getSecondColumnName();
+	}
+	
+	/**
+	 * @return cross table column keeping id of the target entity
+	 */
+	final String getTargetColumn() {
+		return this.ownerFirst ? this.crossTable.getSecondColumnName() : this.crossTable.getFirstColumnName();
+	}
+	
+	/**
+	 * @return targets in the field, null if field is null
+	 */
+	final Collection<Persistable> getTargets(final Persistable entity) {
+		return RelationValues.get(getGetter(), entity);
+	}
+	
+	/**
+	 * sets loaded targets to the field through its setter, see RelationValues.set
+	 */
+	final void setTargets(final Persistable entity, final List<Persistable> targets) {
+		RelationValues.set(getSetter(), getMapKeyGetter(), entity, targets);
+	}
+
+}
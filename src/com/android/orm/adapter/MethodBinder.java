@@ -0,0 +1,41 @@
+package com.android.orm.adapter;
+
+import java.lang.reflect.Method;
+
+import com.android.orm.exception.EntityViolation;
+import com.android.orm.util.ReflectionUtil;
+
+/**
+ * finds getters and setters of metadata loaded from a registry snapshot, methods are looked up on first use instead of registry creation
+ *
+ * @author Hamza Gumrah
+ */
+final class MethodBinder {
+	
+	private MethodBinder() {
+	}
+	
+	/**
+	 * @throws EntityViolation if clazz has no public getter for the field
+	 */
+	static final Method getter(final Class<?> clazz, final String fieldName) {
+		try {
+			return ReflectionUtil.findGetMethod(clazz, fieldName);
+		}
+		catch (NoSuchMethodException e) {
+			throw new EntityViolation(clazz.getName(), "has no getter for field " + fieldName);
+		}
+	}
+	
+	/**
+	 * @throws EntityViolation if clazz has no public setter for the field
+	 */
+	static final Method setter(final Class<?> clazz, final Class<?> fieldType, final String fieldName) {
+		try {
+			return ReflectionUtil.findSetMethod(clazz, fieldType, fieldName);
+		}
+		catch (NoSuchMethodException e) {
+			throw new EntityViolation(clazz.getName(), "has no setter for field " + fieldName + " of type " + fieldType.getName());
+		}
+	}
+}
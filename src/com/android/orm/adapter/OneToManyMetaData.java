@@ -1,40 +1,123 @@
 package com.android.orm.adapter;
 
 import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
 
-import com.android.orm.annotation.OneToMany;
+import com.android.orm.Persistable;
+import com.android.orm.type.FetchType;
 
 
 final class OneToManyMetaData {
 	
-	private final Method getMethod;
+	// class whose getter and setter of the field are bound on first use
+	private final Class<?> owner;
 	
-	private final Method setMethod;
+	private final String fieldName;
 	
-	private final OneToMany self;
+	private final Class<?> fieldType;
 	
-	public OneToManyMetaData(OneToMany self, Method getMethod, Method setMethod) {
-		this.self = self;
-		this.getMethod = getMethod;
-		this.setMethod = setMethod;
+	private final Class<?> targetEntity;
+	
+	private final String mapKey;
+	
+	private final FetchType fetchType;
+	
+	private volatile Method getMethod;
+	
+	private volatile Method setMethod;
+	
+	// getter of mapKey field on target entity, null if field is not a map
+	private volatile Method mapKeyGetter;
+	
+	/**
+	 * getter and setter of the field and getter of mapKey are found when they are first used, see bind()
+	 * 
+	 * @param owner entity class declaring the relation
+	 * @param mapKey field of target entity whose values are keys of a Map field
+	 * @param fetchType EAGER if targets are loaded with the owner
+	 */
+	public OneToManyMetaData(Class<?> owner, String fieldName, Class<?> fieldType, Class<?> targetEntity, String mapKey, FetchType fetchType) {
+		this.owner = owner;
+		this.fieldName = fieldName;
+		this.fieldType = fieldType;
+		this.targetEntity = targetEntity;
+		this.mapKey = mapKey;
+		this.fetchType = fetchType;
 	}
 	
 	public Class<?> getTargetEntity() {
-		return self.targetEntityClass();
+		return this.targetEntity;
 	}
 	public String getMapKey(){
-		return self.mapKey();
+		return this.mapKey;
 	}
+	
+	final FetchType getFetchType() {
+		return this.fetchType;
+	}
+	
+	/**
+	 * @return true if targets are loaded with the owner, else only by loadReferences
+	 */
+	final boolean isEager() {
+		return this.fetchType == FetchType.EAGER;
+	}
+	
+	final String getFieldName() {
+		return this.fieldName;
+	}
+	
+	final Class<?> getFieldType() {
+		return this.fieldType;
+	}
+	
+	/**
+	 * @return true if field is a Map, mapKey has a default value so field type decides
+	 */
 	public boolean isMap(){
-		if(self.mapKey().equals(""))
-			return false;
-		return true;
+		return Map.class.isAssignableFrom(this.fieldType);
 	}
 	public Method getGetter() {
-		return this.getMethod;
+		Method method = this.getMethod;
+		if (method == null)
+			this.getMethod = method = MethodBinder.getter(this.owner, this.fieldName);
+		return method;
 	}
 	
 	public Method getSetter() {
-		return this.setMethod;
+		Method method = this.setMethod;
+		if (method == null)
+			this.setMethod = method = MethodBinder.setter(this.owner, this.fieldType, this.fieldName);
+		return method;
+	}
+	
+	/**
+	 * @return getter of mapKey field on target entity, null if field is not a map
+	 */
+	final Method getMapKeyGetter() {
+		Method method = this.mapKeyGetter;
+		if (method == null && isMap())
+			this.mapKeyGetter = method = MethodBinder.getter(this.targetEntity, this.mapKey);
+		return method;
+	}
+	
+	/**
+	 * finds all methods of the relation, registry scan binds them at once so that a missing method fails registry creation
+	 */
+	final void bind() {
+		getGetter();
+		getSetter();
+		getMapKeyGetter();
+	}
+	
+	/**
+	 * sets loaded target entities to the field through its setter. Map fields get mapKey values of targets as keys, other fields get a List or Set in load order.
+	 *
+	 * @param entity owner of the field
+	 * @param targets
+	 */
+	final void setTargets(final Persistable entity, final List<Persistable> targets) {
+		RelationValues.set(getSetter(), getMapKeyGetter(), entity, targets);
 	}
 }
@@ -0,0 +1,273 @@
+package com.android.orm.adapter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.android.orm.OrmConstants;
+import com.android.orm.Persistable;
+
+/**
+ * criteria of an entity query, run by DatabaseAdapter.list(Query) and DatabaseAdapter.stream(Query). Values are always bound as arguments, never written to the SQL.
+ * <p>
+ * fields are given by field name of the entity, "id" is the primary key. A field of a referenced entity is given as a path over foreign key fields, e.g. "author.name" joins the
+ * table of the author and filters by its name field. Conditions are joined with AND.
+ * </p>
+ * <p>
+ * foreign key paths of conditions and join() are inner joined, so rows without the referenced row are not selected. Paths used only by orderBy are left joined, ordering never
+ * drops rows; rows without the referenced row are ordered by null.
+ * </p>
+ * <p>
+ * queries with the same shape, i.e. same entity, fields, operators, number of IN values, joins, order and paging but different values share the generated SQL. SQL of a shape is
+ * generated once and the same SQL text lets SQLite reuse the compiled statement of the connection.
+ * </p>
+ *
+ * <pre>
+ * Query&lt;Book&gt; query = Query.from(Book.class).where(&quot;author.name&quot;, Operator.EQUAL, name).orderBy(&quot;title&quot;, true).limit(20);
+ * List&lt;Book&gt; books = adapter.list(query);
+ * </pre>
+ *
+ * @author Hamza Gumrah
+ */
+public final class Query<T extends Persistable> {
+	
+	/**
+	 * comparison operators of where(String, Operator, Object)
+	 */
+	public enum Operator {
+		EQUAL("="), NOT_EQUAL("<>"), LESS_THAN("<"), LESS_OR_EQUAL("<="), GREATER_THAN(">"), GREATER_OR_EQUAL(">="), LIKE("LIKE");
+		
+		private final String sql;
+		
+		private Operator(String sql) {
+			this.sql = sql;
+		}
+		
+		final String getSql() {
+			return this.sql;
+		}
+	}
+	
+	private final Class<T> clazz;
+	
+	private final List<Condition> conditions;
+	
+	// foreign key paths joined even if no condition uses them
+	private final List<String> joins;
+	
+	private final List<String> orderPaths;
+	
+	private final List<Boolean> orderAscending;
+	
+	// foreign key paths of conditions and joins with their prefixes, other paths are left joined
+	private final Set<String> innerJoins;
+	
+	private Integer limit = null;
+	
+	private Integer offset = null;
+	
+	// key of the generated SQL, everything but the values
+	private final StringBuilder shape;
+	
+	private Query(Class<T> clazz) {
+		this.clazz = clazz;
+		this.conditions = new ArrayList<Condition>();
+		this.joins = new ArrayList<String>(0);
+		this.orderPaths = new ArrayList<String>(0);
+		this.orderAscending = new ArrayList<Boolean>(0);
+		this.innerJoins = new LinkedHashSet<String>(0);
+		this.shape = new StringBuilder(clazz.getName());
+	}
+	
+	/**
+	 * @param clazz registered entity class
+	 * @return query selecting all rows of the entity
+	 */
+	public static <T extends Persistable> Query<T> from(Class<T> clazz) {
+		if (clazz == null)
+			throw new IllegalArgumentException("entity class of a query can not be null");
+		return new Query<T>(clazz);
+	}
+	
+	/**
+	 * @param path field name or foreign key path of the field
+	 * @param value compared value, a Persistable for foreign key fields is compared by its reference value. Use isNull for null values
+	 */
+	public Query<T> where(String path, Operator operator, Object value) {
+		if (value == null)
+			throw new IllegalArgumentException("can not compare " + path + " with null, use isNull or isNotNull");
+		this.conditions.add(new Condition(path, " " + operator.getSql() + " ?", Collections.singletonList(value)));
+		addInnerJoins(path, false);
+		this.shape.append("|W:").append(path).append(":").append(operator.name());
+		return this;
+	}
+	
+	/**
+	 * @param values at most OrmConstants.SQLITE_MAX_VARIABLE_NUMBER non null values, number of values is part of the query shape
+	 */
+	public Query<T> in(String path, Collection<?> values) {
+		if (values == null || values.isEmpty() || values.size() > OrmConstants.SQLITE_MAX_VARIABLE_NUMBER)
+			throw new IllegalArgumentException("IN condition of " + path + " requires 1 to " + OrmConstants.SQLITE_MAX_VARIABLE_NUMBER + " values");
+		if (values.contains(null))
+			throw new IllegalArgumentException("IN condition of " + path + " can not have null values");
+		StringBuilder placeholders = new StringBuilder(" IN (?");
+		for (int i = 1; i < values.size(); i++)
+			placeholders.append(", ?");
+		this.conditions.add(new Condition(path, placeholders.append(")").toString(), new ArrayList<Object>(values)));
+		addInnerJoins(path, false);
+		this.shape.append("|I:").append(path).append(":").append(values.size());
+		return this;
+	}
+	
+	public Query<T> isNull(String path) {
+		this.conditions.add(new Condition(path, " IS NULL", Collections.emptyList()));
+		addInnerJoins(path, false);
+		this.shape.append("|N:").append(path);
+		return this;
+	}
+	
+	public Query<T> isNotNull(String path) {
+		this.conditions.add(new Condition(path, " IS NOT NULL", Collections.emptyList()));
+		addInnerJoins(path, false);
+		this.shape.append("|NN:").append(path);
+		return this;
+	}
+	
+	/**
+	 * joins the referenced entity of a foreign key field, rows whose foreign key is null or refers to a missing row are not selected. Paths used in conditions are joined the same
+	 * way without calling this method, paths used only in order are left joined.
+	 *
+	 * @param foreignKeyPath foreign key field or a path of foreign key fields
+	 */
+	public Query<T> join(String foreignKeyPath) {
+		this.joins.add(foreignKeyPath);
+		addInnerJoins(foreignKeyPath, true);
+		this.shape.append("|J:").append(foreignKeyPath);
+		return this;
+	}
+	
+	/**
+	 * orders by the field, later calls order rows which are equal by the previous ones
+	 */
+	public Query<T> orderBy(String path, boolean ascending) {
+		this.orderPaths.add(path);
+		this.orderAscending.add(ascending);
+		this.shape.append("|O:").append(path).append(ascending ? ":A" : ":D");
+		return this;
+	}
+	
+	/**
+	 * @param limit maximum number of selected rows, bound as an argument
+	 */
+	public Query<T> limit(int limit) {
+		if (limit < 0)
+			throw new IllegalArgumentException("limit can not be negative : " + limit);
+		if (this.limit == null)
+			this.shape.append("|L");
+		this.limit = limit;
+		return this;
+	}
+	
+	/**
+	 * @param offset number of skipped rows, bound as an argument
+	 */
+	public Query<T> offset(int offset) {
+		if (offset < 0)
+			throw new IllegalArgumentException("offset can not be negative : " + offset);
+		if (this.offset == null)
+			this.shape.append("|F");
+		this.offset = offset;
+		return this;
+	}
+	
+	public Class<T> getEntityClass() {
+		return this.clazz;
+	}
+	
+	/**
+	 * @return key of the generated SQL, join kinds of foreign key paths are part of it
+	 */
+	final String getShape() {
+		if (this.innerJoins.isEmpty())
+			return this.shape.toString();
+		StringBuilder shape = new StringBuilder(this.shape);
+		for (String path : this.innerJoins)
+			shape.append("|IJ:").append(path);
+		return shape.toString();
+	}
+	
+	/**
+	 * @return true if rows without the referenced row of the foreign key path are not selected, false if the path is left joined
+	 */
+	final boolean isInnerJoin(final String foreignKeyPath) {
+		return this.innerJoins.contains(foreignKeyPath);
+	}
+	
+	/**
+	 * @param foreignKeyPath true if path refers to a foreign key, false if its last element is a field of the referenced entity
+	 */
+	private final void addInnerJoins(final String path, final boolean foreignKeyPath) {
+		int end = foreignKeyPath ? path.length() : path.lastIndexOf('.');
+		for (int dot = path.indexOf('.'); dot >= 0 && dot < end; dot = path.indexOf('.', dot + 1))
+			this.innerJoins.add(path.substring(0, dot));
+		if (end > 0)
+			this.innerJoins.add(path.substring(0, end));
+	}
+	
+	final List<Condition> getConditions() {
+		return this.conditions;
+	}
+	
+	final List<String> getJoins() {
+		return this.joins;
+	}
+	
+	final List<String> getOrderPaths() {
+		return this.orderPaths;
+	}
+	
+	final List<Boolean> getOrderAscending() {
+		return this.orderAscending;
+	}
+	
+	/**
+	 * @return limit or null
+	 */
+	final Integer getLimit() {
+		return this.limit;
+	}
+	
+	/**
+	 * @return offset or null
+	 */
+	final Integer getOffset() {
+		return this.offset;
+	}
+	
+	@Override
+	public String toString() {
+		return "Query [" + getShape() + "]";
+	}
+	
+	/**
+	 * a field compared with bound values
+	 */
+	static final class Condition {
+		
+		final String path;
+		
+		// SQL after the column, e.g. " = ?"
+		final String predicate;
+		
+		final List<?> values;
+		
+		Condition(String path, String predicate, List<?> values) {
+			this.path = path;
+			this.predicate = predicate;
+			this.values = values;
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package com.android.orm.adapter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.android.orm.OrmConstants;
+import com.android.orm.Persistable;
+import com.android.orm.exception.UnRegisteredEntityException;
+
+/**
+ * generates SQL of a Query over EntityHydrator's select statement. Generated SQL is cached by query shape in a LRU map shared by all adapters, so a repeated query neither resolves its
+ * fields nor builds its SQL again.
+ * <p>
+ * root entity's tables keep the aliases of EntityHydrator (T0,T1..), tables of the entity referenced by a foreign key path are joined as J{join}_{table}. Paths used only for
+ * ordering are left joined, see Query.isInnerJoin.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+final class QueryCompiler {
+	
+	// maximum number of cached query shapes
+	private static final int CACHE_SIZE = 128;
+	
+	// access ordered, key:Query.getShape()
+	private static final Map<String, CompiledQuery> CACHE = new LinkedHashMap<String, CompiledQuery>(16, 0.75f, true) {
+		
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CompiledQuery> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	
+	// sources of the query being compiled, key:foreign key path, "" for the root entity
+	private final Map<String, Source> sources;
+	
+	private final StringBuilder joinClause;
+	
+	private final Query<?> query;
+	
+	private QueryCompiler(EntityMetaData entityMetaData, Query<?> query) {
+		this.query = query;
+		this.sources = new HashMap<String, Source>();
+		this.joinClause = new StringBuilder();
+		String[] aliases = new String[entityMetaData.getTableCount()];
+		for (int i = 0; i < aliases.length; i++)
+			aliases[i] = "T" + i;
+		this.sources.put("", new Source(entityMetaData, aliases));
+	}
+	
+	/**
+	 * @return cached SQL of the query's shape, generated if the shape is not cached
+	 * @throws UnRegisteredEntityException if an entity of the query is not registered
+	 * @throws IllegalArgumentException if a path does not refer to a field
+	 */
+	static final CompiledQuery compile(final Query<?> query) {
+		String shape = query.getShape();
+		synchronized (CACHE) {
+			CompiledQuery compiled = CACHE.get(shape);
+			if (compiled != null)
+				return compiled;
+		}
+		EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(query.getEntityClass().getName());
+		if (entityMetaData == null)
+			throw new UnRegisteredEntityException(query.getEntityClass().getName());
+		CompiledQuery compiled = new QueryCompiler(entityMetaData, query).generate(entityMetaData, query);
+		synchronized (CACHE) {
+			CACHE.put(shape, compiled);
+		}
+		return compiled;
+	}
+	
+	/**
+	 * removes cached SQL, called when the registry is generated again
+	 */
+	static final void clear() {
+		synchronized (CACHE) {
+			CACHE.clear();
+		}
+	}
+	
+	private final CompiledQuery generate(final EntityMetaData entityMetaData, final Query<?> query) {
+		for (String join : query.getJoins())
+			resolveSource(join);
+		StringBuilder where = new StringBuilder();
+		List<ColumnMetaData> argumentColumns = new ArrayList<ColumnMetaData>();
+		for (Query.Condition condition : query.getConditions()) {
+			Field field = resolveField(condition.path);
+			where.append(where.length() == 0 ? " WHERE " : " AND ").append(field.qualifiedColumn).append(condition.predicate);
+			for (int i = 0; i < condition.values.size(); i++)
+				argumentColumns.add(field.column);
+		}
+		StringBuilder orderBy = new StringBuilder();
+		for (int i = 0; i < query.getOrderPaths().size(); i++) {
+			orderBy.append(i == 0 ? " ORDER BY " : ", ").append(resolveField(query.getOrderPaths().get(i)).qualifiedColumn);
+			orderBy.append(query.getOrderAscending().get(i) ? " ASC" : " DESC");
+		}
+		StringBuilder sql = new StringBuilder(entityMetaData.getHydrator().getSelectStatement());
+		sql.append(this.joinClause).append(where).append(orderBy);
+		// paging values are bound too, so pages share the statement
+		if (query.getLimit() != null)
+			sql.append(" LIMIT ?");
+		else if (query.getOffset() != null)
+			sql.append(" LIMIT -1");
+		if (query.getOffset() != null)
+			sql.append(" OFFSET ?");
+		return new CompiledQuery(sql.toString(), argumentColumns.toArray(new ColumnMetaData[argumentColumns.size()]));
+	}
+	
+	/**
+	 * @param path field name, or foreign key path followed by a field name of the referenced entity
+	 */
+	private final Field resolveField(final String path) {
+		int dot = path.lastIndexOf('.');
+		Source source = dot < 0 ? this.sources.get("") : resolveSource(path.substring(0, dot));
+		Field field = source.findField(path.substring(dot + 1));
+		if (field == null)
+			throw new IllegalArgumentException(source.entityMetaData.getClazz().getName() + " has no column field " + path.substring(dot + 1) + " for query path " + path);
+		return field;
+	}
+	
+	/**
+	 * joins tables of the entity referenced by the foreign key path, each path is joined once
+	 */
+	private final Source resolveSource(final String foreignKeyPath) {
+		Source source = this.sources.get(foreignKeyPath);
+		if (source != null)
+			return source;
+		int dot = foreignKeyPath.lastIndexOf('.');
+		Source parent = dot < 0 ? this.sources.get("") : resolveSource(foreignKeyPath.substring(0, dot));
+		Field foreignKey = parent.findField(foreignKeyPath.substring(dot + 1));
+		if (foreignKey == null || foreignKey.column == null || !foreignKey.column.isForeignKey())
+			throw new IllegalArgumentException(foreignKeyPath + " is not a foreign key path of " + this.sources.get("").entityMetaData.getClazz().getName());
+		ForeignKeyMetaData foreignKeyMetaData = foreignKey.column.getForeignKeyMetaData();
+		EntityMetaData target = DatabaseAdapterFactory.getEntityMetaData(foreignKeyMetaData.getReferenceEntityName());
+		if (target == null)
+			throw new UnRegisteredEntityException(foreignKeyMetaData.getReferenceEntityName());
+		String referencedTable = SqliteHelper.getReferencedTableName(foreignKeyMetaData);
+		int join = this.sources.size();
+		String[] aliases = new String[target.getTableCount()];
+		String referencedAlias = null;
+		int i = 0;
+		for (TableMetaData tableMetaData : target.getMappedTables()) {
+			aliases[i] = "J" + join + "_" + i;
+			if (tableMetaData.getName().equals(referencedTable))
+				referencedAlias = aliases[i];
+			i++;
+		}
+		// table of the referenced column is joined first, other tables of the entity are joined to it on _id with the same join kind
+		String joinKind = this.query.isInnerJoin(foreignKeyPath) ? " INNER JOIN " : " LEFT JOIN ";
+		i = 0;
+		for (TableMetaData tableMetaData : target.getMappedTables()) {
+			if (aliases[i].equals(referencedAlias))
+				appendJoin(joinKind, tableMetaData, aliases[i], foreignKeyMetaData.getReferenceColumnName(), foreignKey.qualifiedColumn);
+			i++;
+		}
+		i = 0;
+		for (TableMetaData tableMetaData : target.getMappedTables()) {
+			if (!aliases[i].equals(referencedAlias))
+				appendJoin(joinKind, tableMetaData, aliases[i], OrmConstants.PRIMARY_KEY_COLUMN_NAME, referencedAlias + "." + OrmConstants.PRIMARY_KEY_COLUMN_NAME);
+			i++;
+		}
+		source = new Source(target, aliases);
+		this.sources.put(foreignKeyPath, source);
+		return source;
+	}
+	
+	/**
+	 * @param joinKind " INNER JOIN " or " LEFT JOIN "
+	 */
+	private final void appendJoin(final String joinKind, final TableMetaData tableMetaData, final String alias, final String column, final String qualifiedValue) {
+		this.joinClause.append(joinKind).append(tableMetaData.getName().toUpperCase()).append(" ").append(alias).append(" ON ").append(alias).append(".").append(column)
+				.append(" = ").append(qualifiedValue);
+	}
+	
+	/**
+	 * an entity selected by the query with the aliases of its mapped tables
+	 */
+	private static final class Source {
+		
+		private final EntityMetaData entityMetaData;
+		
+		// in mapped table order
+		private final String[] aliases;
+		
+		Source(EntityMetaData entityMetaData, String[] aliases) {
+			this.entityMetaData = entityMetaData;
+			this.aliases = aliases;
+		}
+		
+		/**
+		 * @return column of the entity's field, null if entity has no such column field
+		 */
+		final Field findField(final String fieldName) {
+			if (fieldName.equals(OrmConstants.PRIMARY_KEY_FIELD_NAME))
+				return new Field(this.aliases[0] + "." + OrmConstants.PRIMARY_KEY_COLUMN_NAME, null);
+			int i = 0;
+			for (TableMetaData tableMetaData : this.entityMetaData.getMappedTables()) {
+				int[] fields = this.entityMetaData.getFieldIndexes(tableMetaData);
+				int j = 0;
+				for (ColumnMetaData columnMetaData : tableMetaData.getColumns()) {
+					// columns of another entity sharing the table are skipped
+					if (fields[j++] >= 0 && columnMetaData.getFieldName().equals(fieldName))
+						return new Field(this.aliases[i] + "." + columnMetaData.getColumnName(), columnMetaData);
+				}
+				i++;
+			}
+			return null;
+		}
+	}
+	
+	private static final class Field {
+		
+		private final String qualifiedColumn;
+		
+		// null for primary key
+		private final ColumnMetaData column;
+		
+		Field(String qualifiedColumn, ColumnMetaData column) {
+			this.qualifiedColumn = qualifiedColumn;
+			this.column = column;
+		}
+	}
+	
+	/**
+	 * SQL of a query shape with the column of each bound value
+	 */
+	static final class CompiledQuery {
+		
+		private final String sql;
+		
+		// column of each condition value in bind order, null for primary key
+		private final ColumnMetaData[] argumentColumns;
+		
+		CompiledQuery(String sql, ColumnMetaData[] argumentColumns) {
+			this.sql = sql;
+			this.argumentColumns = argumentColumns;
+		}
+		
+		final String getSql() {
+			return this.sql;
+		}
+		
+		/**
+		 * @param query a query of this shape
+		 * @return selection arguments of the query's values, values are written as they are stored
+		 */
+		final String[] getArguments(final Query<?> query) {
+			List<String> arguments = new ArrayList<String>(this.argumentColumns.length + 2);
+			for (Query.Condition condition : query.getConditions())
+				for (Object value : condition.values)
+					arguments.add(toArgument(this.argumentColumns[arguments.size()], value));
+			if (query.getLimit() != null)
+				arguments.add(String.valueOf(query.getLimit()));
+			if (query.getOffset() != null)
+				arguments.add(String.valueOf(query.getOffset()));
+			return arguments.toArray(new String[arguments.size()]);
+		}
+		
+		private static final String toArgument(final ColumnMetaData column, final Object value) {
+			if (column == null)
+				return String.valueOf(value instanceof Persistable ? ((Persistable) value).getId() : value);
+			if (!column.isForeignKey())
+				return SqliteHelper.toSelectionArg(value, column.getColumnType());
+			// a foreign key is compared with the reference value of the given entity or with the given reference value
+			ForeignKeyMetaData foreignKeyMetaData = column.getForeignKeyMetaData();
+			Object referenceValue = value instanceof Persistable ? foreignKeyMetaData.getReferenceValue((Persistable) value) : value;
+			if (referenceValue == null)
+				throw new IllegalArgumentException("reference value of " + value + " for foreign key " + column.getColumnName() + " is null, use isNull");
+			return SqliteHelper.toSelectionArg(referenceValue, foreignKeyMetaData.getReferenceColumnType());
+		}
+	}
+}
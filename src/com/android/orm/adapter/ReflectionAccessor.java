@@ -0,0 +1,92 @@
+package com.android.orm.adapter;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteStatement;
+
+import com.android.orm.Persistable;
+import com.android.orm.exception.EntityViolation;
+
+/**
+ * fallback EntityAccessor for entities which do not have a generated accessor, invokes getter and setter methods kept in ColumnMetaData.
+ * 
+ * @author Hamza Gumrah
+ */
+final class ReflectionAccessor implements EntityAccessor<Persistable> {
+	
+	private final Class<?> clazz;
+	
+	private final ColumnMetaData[] columns;
+	
+	private final String[] fieldNames;
+	
+	/**
+	 * @param clazz entity class
+	 * @param columns column fields declared by the entity and its super classes
+	 */
+	ReflectionAccessor(Class<?> clazz, List<ColumnMetaData> columns) {
+		this.clazz = clazz;
+		this.columns = columns.toArray(new ColumnMetaData[columns.size()]);
+		this.fieldNames = new String[this.columns.length];
+		for (int i = 0; i < this.columns.length; i++)
+			this.fieldNames[i] = this.columns[i].getFieldName();
+	}
+	
+	@Override
+	public String[] getFieldNames() {
+		return this.fieldNames;
+	}
+	
+	@Override
+	public Persistable newInstance() {
+		try {
+			return (Persistable) this.clazz.newInstance();
+		}
+		catch (InstantiationException e) {
+			throw new EntityViolation(this.clazz.getName(), "should have a public constructor without arguments");
+		}
+		catch (IllegalAccessException e) {
+			throw new EntityViolation(this.clazz.getName(), "should have a public constructor without arguments");
+		}
+	}
+	
+	@Override
+	public Object getValue(Persistable entity, int field) {
+		try {
+			return this.columns[field].getGetter().invoke(entity);
+		}
+		catch (IllegalAccessException e) {
+			throw new EntityViolation(this.clazz.getName(), "can not access getter of field " + this.fieldNames[field]);
+		}
+		catch (InvocationTargetException e) {
+			throw new EntityViolation(this.clazz.getName(), "getter of field " + this.fieldNames[field] + " failed : " + e.getCause());
+		}
+	}
+	
+	@Override
+	public void setValue(Persistable entity, int field, Object value) {
+		try {
+			this.columns[field].getSetter().invoke(entity, value);
+		}
+		catch (IllegalAccessException e) {
+			throw new EntityViolation(this.clazz.getName(), "can not access setter of field " + this.fieldNames[field]);
+		}
+		catch (InvocationTargetException e) {
+			throw new EntityViolation(this.clazz.getName(), "setter of field " + this.fieldNames[field] + " failed : " + e.getCause());
+		}
+	}
+	
+	@Override
+	public void bind(Persistable entity, int field, SQLiteStatement statement, int index) {
+		SqliteHelper.bindToStatement(statement, index, getValue(entity, field), this.columns[field]);
+	}
+	
+	@Override
+	public void read(Persistable entity, int field, Cursor cursor, int index) {
+		if (this.columns[field].isForeignKey())
+			throw new IllegalArgumentException("foreign key field " + this.fieldNames[field] + " is resolved by the adapter");
+		setValue(entity, field, SqliteHelper.readFromCursor(cursor, index, this.columns[field]));
+	}
+}
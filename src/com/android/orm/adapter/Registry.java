@@ -1,28 +1,52 @@
 package com.android.orm.adapter;
 
+import java.io.File;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.android.orm.OrmConstants;
+import com.android.orm.Persistable;
 import com.android.orm.annotation.Column;
+import com.android.orm.annotation.CompositeIndex;
+import com.android.orm.annotation.CompositeIndexes;
 import com.android.orm.annotation.Entity;
 import com.android.orm.annotation.ForeignKey;
+import com.android.orm.annotation.Index;
 import com.android.orm.annotation.ManyToMany;
 import com.android.orm.annotation.OneToMany;
 import com.android.orm.annotation.Table;
+import com.android.orm.exception.CircularReferenceException;
+import com.android.orm.exception.DublicatedEntityNameException;
+import com.android.orm.exception.EntityViolation;
 import com.android.orm.exception.ManyToManyViolation;
 import com.android.orm.exception.MultiplePrimaryKeyException;
+import com.android.orm.exception.PrimaryKeyException;
 import com.android.orm.exception.PrimaryKeyNotFoundException;
+import com.android.orm.exception.UnsupportedFieldTypeException;
 import com.android.orm.exception.UnsupportedForeignKeyReferenceException;
 import com.android.orm.exception.UnsupportedPrimaryKeyException;
+import com.android.orm.type.FetchType;
 import com.android.orm.util.PersistenceUtil;
 import com.android.orm.util.ReflectionUtil;
 
 import android.util.Log;
+import android.util.Pair;
 
 /**
  * keeps MetaData information regarding entities,tables,columns,foreignkeys,primarykeys e.t.c. it is generated during adapter creation, should be used only as SingleTone. DatabaseAdapterFactory
@@ -44,29 +68,165 @@ final class Registry {
 	private Map<String, CrossTableMetaData> crossTables;
 	
 	/**
+	 * entity classes are scanned in parallel, scanned tables are merged to the registry in the iteration order of entityQualifiedNames so the registry does not depend on scan order.
+	 * 
 	 * @param entityQualifiedNames qualifiedNames of entity classes, should be Set to avoid duplicate elements.
 	 * @throws ClassNotFoundException
 	 * @throws NoSuchMethodException
 	 * @throws SecurityException
 	 */
 	public Registry(final Set<String> entityQualifiedNames) throws ClassNotFoundException, SecurityException, NoSuchMethodException {
+		this(entityQualifiedNames, null, 0);
+	}
+	
+	/**
+	 * loads scanned entities from the snapshot if it is written for the same fingerprint, else scans entity classes and rewrites the snapshot. Getters and setters of a loaded snapshot
+	 * are bound when they are first used.
+	 * 
+	 * @param entityQualifiedNames qualifiedNames of entity classes, should be Set to avoid duplicate elements.
+	 * @param snapshot file of the registry snapshot, null to scan entity classes on every start
+	 * @param fingerprint fingerprint of the entity classes, see RegistrySnapshot.fingerprint
+	 * @throws ClassNotFoundException
+	 * @throws NoSuchMethodException
+	 * @throws SecurityException
+	 */
+	public Registry(final Set<String> entityQualifiedNames, final File snapshot, final long fingerprint) throws ClassNotFoundException, SecurityException, NoSuchMethodException {
 		this.entitis = new HashMap<String, EntityMetaData>();
-		for (String qualifiedName : entityQualifiedNames) {
-			EntityMetaData entityMetaData = generateMetaData(qualifiedName);
-			this.entitis.put(qualifiedName, entityMetaData);
+		this.tables = new LinkedHashMap<String, TableMetaData>();
+		this.crossTables = new HashMap<String, CrossTableMetaData>();
+		List<String> qualifiedNames = new ArrayList<String>(entityQualifiedNames);
+		List<ScannedEntity> scannedEntities = null;
+		if (snapshot != null)
+			scannedEntities = RegistrySnapshot.read(snapshot, fingerprint, qualifiedNames);
+		if (scannedEntities == null) {
+			scannedEntities = scan(qualifiedNames);
+			if (snapshot != null)
+				RegistrySnapshot.write(snapshot, fingerprint, scannedEntities);
+		}
+		for (int i = 0; i < qualifiedNames.size(); i++)
+			if (scannedEntities.get(i) != null)
+				this.entitis.put(qualifiedNames.get(i), register(scannedEntities.get(i)));
+		// binding plan : tables may be shared between entities, resolve accessor indexes after all columns are known
+		for (EntityMetaData entityMetaData : this.entitis.values())
+			entityMetaData.resolveFieldIndexes();
+	}
+	
+	/**
+	 * scans entity classes on a thread pool sized by available processors, a single class is scanned on the calling thread. Failures of both ways are rethrown by
+	 * scanFailure
+	 * 
+	 * @return scanned entity of each name in the same order, null for classes which can not be mapped
+	 */
+	private final List<ScannedEntity> scan(final List<String> qualifiedNames) throws ClassNotFoundException, SecurityException, NoSuchMethodException {
+		List<ScannedEntity> scannedEntities = new ArrayList<ScannedEntity>(qualifiedNames.size());
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(), qualifiedNames.size());
+		if (threads < 2) {
+			for (String qualifiedName : qualifiedNames) {
+				try {
+					scannedEntities.add(scan(qualifiedName));
+				}
+				catch (Exception e) {
+					throw scanFailure(qualifiedName, e);
+				}
+			}
+			return scannedEntities;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<ScannedEntity>> futures = new ArrayList<Future<ScannedEntity>>(qualifiedNames.size());
+			for (final String qualifiedName : qualifiedNames)
+				futures.add(executor.submit(new Callable<ScannedEntity>() {
+					
+					@Override
+					public ScannedEntity call() throws Exception {
+						return scan(qualifiedName);
+					}
+				}));
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					scannedEntities.add(futures.get(i).get());
+				}
+				catch (ExecutionException e) {
+					throw scanFailure(qualifiedNames.get(i), e.getCause());
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new EntityViolation(qualifiedNames.get(i), "registry generation is interrupted");
+				}
+			}
+			return scannedEntities;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * rethrows failure of a scan so that it names the entity class which could not be registered
+	 */
+	private static final RuntimeException scanFailure(final String qualifiedName, final Throwable cause) throws ClassNotFoundException, NoSuchMethodException {
+		// exceptions of the orm already name the entity
+		if (cause instanceof EntityViolation || cause instanceof ManyToManyViolation || cause instanceof PrimaryKeyException || cause instanceof UnsupportedForeignKeyReferenceException
+				|| cause instanceof UnsupportedFieldTypeException || cause instanceof CircularReferenceException || cause instanceof DublicatedEntityNameException)
+			throw (RuntimeException) cause;
+		if (cause instanceof ClassNotFoundException)
+			throw (ClassNotFoundException) cause;
+		if (cause instanceof Error)
+			throw (Error) cause;
+		if (cause instanceof NoSuchMethodException) {
+			NoSuchMethodException exception = new NoSuchMethodException(qualifiedName + " : " + cause.getMessage());
+			exception.initCause(cause);
+			throw exception;
+		}
+		EntityViolation violation = new EntityViolation(qualifiedName, "can not be registered : " + cause);
+		violation.initCause(cause);
+		return violation;
+	}
+	
+	/**
+	 * registers tables of a scanned entity, a table already registered by another entity is merged with the scanned one
+	 * 
+	 * @return EntityMetaData of the scanned entity over registered tables
+	 */
+	private final EntityMetaData register(final ScannedEntity scannedEntity) {
+		LinkedHashSet<TableMetaData> mappedTables = new LinkedHashSet<TableMetaData>();
+		for (TableMetaData tableMetaData : scannedEntity.tables) {
+			TableMetaData registered = this.tables.get(tableMetaData.getName());
+			if (registered != null) {
+				registered.merge(tableMetaData);
+				mappedTables.add(registered);
+			}
+			else {
+				this.tables.put(tableMetaData.getName(), tableMetaData);
+				mappedTables.add(tableMetaData);
+			}
 		}
+		// both sides of a relation generate equal cross tables, the first one is registered
+		for (ManyToManyMetaData manyToMany : scannedEntity.manyToMany)
+			if (!this.crossTables.containsKey(manyToMany.getCrossTable().getName()))
+				this.crossTables.put(manyToMany.getCrossTable().getName(), manyToMany.getCrossTable());
+		// cross tables are kept by the root table, rows of the entity are linked by its _id
+		for (ManyToManyMetaData manyToMany : scannedEntity.manyToMany)
+			mappedTables.iterator().next().addCrossTable(manyToMany.getCrossTable().getName());
+		// entities loaded from a snapshot have no accessor yet
+		EntityAccessor<Persistable> accessor = scannedEntity.accessor;
+		if (accessor == null)
+			accessor = findAccessor(scannedEntity.clazz, scannedEntity.columns);
+		return new EntityMetaData(mappedTables, scannedEntity.clazz, scannedEntity.oneToMany, scannedEntity.manyToMany, accessor);
 	}
 	
 	/**
-	 * @return generated EntityMetaData for Class.forName(qualifiedName)
+	 * reads annotations of the class and its super classes, does not modify the registry so that classes can be scanned concurrently
+	 * 
+	 * @return scanned entity for Class.forName(qualifiedName), null if class can not be mapped
 	 * @throws ClassNotFoundException if qualifiedName does not a Class's name.
 	 * @throws NoSuchMethodException
 	 * @throws SecurityException
 	 */
-	private final EntityMetaData generateMetaData(final String qualifiedName) throws ClassNotFoundException, SecurityException, NoSuchMethodException {
+	private final ScannedEntity scan(final String qualifiedName) throws ClassNotFoundException, SecurityException, NoSuchMethodException {
 		Class<?> clazz = Class.forName(qualifiedName);
 		// skip the class if it can not be mapped to table.
-		if (SqliteHelper.mappable(clazz)) {
+		if (!SqliteHelper.mappable(clazz)) {
 			Log.w(TAG, "class with qualifiedName : " + qualifiedName
 					+ " can not be mapped to table since it is missing @Entity annotation or Persistable interface ");
 			return null;
@@ -75,12 +235,17 @@ final class Registry {
 		// EntityMetaData entityMetaData = null;
 		// to reach declared fields of super classes, it is required to loop until Object.class
 		boolean hasPrimaryKey = false;
-		// tables related to entity
-		Set<TableMetaData> tableMetaDatas = new HashSet<TableMetaData>();
+		// tables related to entity, super class tables are added to head so that parent tables come first
+		LinkedList<TableMetaData> tableMetaDatas = new LinkedList<TableMetaData>();
+		// column fields of entity and its super classes, used by reflection accessor
+		List<ColumnMetaData> entityColumns = new ArrayList<ColumnMetaData>();
+		// tables of this entity by name, a name may be used by more than one class of the hierarchy
+		Map<String, TableMetaData> entityTables = new HashMap<String, TableMetaData>();
 		TableMetaData metaData = new TableMetaData();
 		String lastTableName = "";
 		Set<OneToManyMetaData> oneToManyDatas = new HashSet<OneToManyMetaData>();
-		while (Object.class.equals(type)) {
+		Set<ManyToManyMetaData> manyToManyDatas = new HashSet<ManyToManyMetaData>();
+		while (!Object.class.equals(type)) {
 			Field[] fields = type.getDeclaredFields();
 			Class<?> fieldType = null;
 			for (Field field : fields) {
@@ -92,7 +257,7 @@ final class Registry {
 					// if id field is both defined in superclass and its child
 					if (hasPrimaryKey)
 						throw new MultiplePrimaryKeyException(qualifiedName);
-					
+					hasPrimaryKey = true;
 				}
 				
 				else if (field.isAnnotationPresent(ManyToMany.class)) {
@@ -104,34 +269,38 @@ final class Registry {
 						Log.e(TAG, "targetEntityClass of ManyToMany relationship can not be null");
 						throw new ManyToManyViolation(field.getName(), type);
 					}
-					else if (SqliteHelper.mappable(self.targetEntityClass())) {
+					else if (!SqliteHelper.mappable(self.targetEntityClass())) {
 						Log.e(TAG, "TargetEntityClass " + self.targetEntityClass()
 								+ " can not be mapped to database; skipping OneToMany RelationShip for type : "
 								+ type.getSimpleName() + " field : " + field.getName());
 						throw new ManyToManyViolation(field.getName(), type);
 					}
-					// TODO how to find table Names?
+					ManyToManyMetaData manyToMany = generateManyToMany(clazz, field.getName(), fieldType, self.targetEntityClass(), self.mapKey(), self.fetch());
+					manyToMany.bind();
+					if (manyToMany.getMapKeyGetter() != null)
+						RelationValues.checkMapKey(field, manyToMany.getMapKeyGetter());
+					manyToManyDatas.add(manyToMany);
 				}
 				
 				else if (field.isAnnotationPresent(OneToMany.class)) {
 					if (field.isAnnotationPresent(Column.class) || field.isAnnotationPresent(ForeignKey.class))
 						Log.w(TAG, "Column and ForeignKey annotations over OneToMany will be underestimated");
 					OneToMany self = field.getAnnotation(OneToMany.class);
-					if (self.targetEntityClass() == null)
+					if (self.targetEntityClass() == null) {
 						Log.w(TAG, "TargetEntityClass can not be null; skipping OneToMany RelationShip for type : "
 								+ type.getSimpleName() + " field : " + field.getName());
-					else if (!SqliteHelper.mappable(self.targetEntityClass()))
+						continue;
+					}
+					else if (!SqliteHelper.mappable(self.targetEntityClass())) {
 						Log.w(TAG, "TargetEntityClass can not be mapped to database; skipping OneToMany RelationShip for type : "
 								+ type.getSimpleName() + " field : " + field.getName());
-					
-					if (fieldType.isAssignableFrom(Map.class)) {
-						// TODO check if mapKey exist
+						continue;
 					}
-					
-					Method getMethod = ReflectionUtil.findGetMethod(clazz, field.getName());
-					Method setMethod = ReflectionUtil.findSetMethod(clazz, fieldType, field.getName());
-					
-					oneToManyDatas.add(new OneToManyMetaData(self, getMethod, setMethod));
+					OneToManyMetaData oneToMany = new OneToManyMetaData(clazz, field.getName(), fieldType, self.targetEntityClass(), self.mapKey(), self.fetch());
+					oneToMany.bind();
+					if (oneToMany.getMapKeyGetter() != null)
+						RelationValues.checkMapKey(field, oneToMany.getMapKeyGetter());
+					oneToManyDatas.add(oneToMany);
 					
 				}
 				else if (field.isAnnotationPresent(Column.class)) {
@@ -145,15 +314,18 @@ final class Registry {
 					ForeignKeyMetaData foreignKeyMetaData = null;
 					if (field.isAnnotationPresent(ForeignKey.class)) {
 						if (SqliteHelper.mappable(fieldType)) {
-							String foreignKeyReference = field.getAnnotation(ForeignKey.class).reference();
+							ForeignKey foreignKey = field.getAnnotation(ForeignKey.class);
+							String foreignKeyReference = foreignKey.reference();
 							if (!foreignKeyReference.equals(OrmConstants.DEFAULT_FOREIGN_KEY_REFERENCE)) {
 								Class<?> referenceType = ReflectionUtil.findFieldType(fieldType, foreignKeyReference);
-								if (!PersistenceUtil.isForeignKeyReferenceSupported(referenceType))
-									throw new UnsupportedForeignKeyReferenceException(qualifiedName, field.getName(), foreignKeyReference, referenceType.getName());
-								foreignKeyMetaData = new ForeignKeyMetaData(fieldType.getName(), columnName, foreignKeyReference, referenceType);
+								if (referenceType == null || !PersistenceUtil.isForeignKeyReferenceSupported(referenceType))
+									throw new UnsupportedForeignKeyReferenceException(qualifiedName, field.getName(), foreignKeyReference, referenceType == null ? "null" : referenceType.getName());
+								// reference getter is resolved once here, not for each inserted value
+								foreignKeyMetaData = new ForeignKeyMetaData(fieldType.getName(), findColumnName(fieldType, foreignKeyReference), foreignKeyReference, referenceType,
+										ReflectionUtil.findGetMethod(fieldType, foreignKeyReference), foreignKey.fetch());
 							}
 							else
-								foreignKeyMetaData = new ForeignKeyMetaData(fieldType.getName());
+								foreignKeyMetaData = new ForeignKeyMetaData(fieldType.getName(), foreignKey.fetch());
 						}
 						else
 							Log.w(TAG, qualifiedName + " has a foreignKey annotation on field : " + field.getName()
@@ -164,13 +336,27 @@ final class Registry {
 					Method setMethod = ReflectionUtil.findSetMethod(clazz, fieldType, field.getName());
 					ColumnMetaData columnMetaData;
 					if (column.name().equals(""))
-						columnMetaData = new ColumnMetaData(column, getMethod, setMethod, foreignKeyMetaData, fieldType, field.getName());
+						columnMetaData = new ColumnMetaData(column, getMethod, setMethod, foreignKeyMetaData, fieldType, field.getName(), field.getName());
 					else
-						columnMetaData = new ColumnMetaData(column, getMethod, setMethod, foreignKeyMetaData, fieldType);
+						columnMetaData = new ColumnMetaData(column, getMethod, setMethod, foreignKeyMetaData, fieldType, field.getName());
 					metaData.addColumn(columnMetaData);
+					entityColumns.add(columnMetaData);
+					if (field.isAnnotationPresent(Index.class)) {
+						Index index = field.getAnnotation(Index.class);
+						metaData.addIndex(new IndexMetaData(index.name(), Collections.singletonList(columnName), index.unique()));
+					}
+					// joins and cascading deletes look up rows by foreign key
+					else if (foreignKeyMetaData != null && field.getAnnotation(ForeignKey.class).index())
+						metaData.addIndex(new IndexMetaData("", Collections.singletonList(columnName), false));
 				}
 				
 			}
+			// composite indexes belong to the table of the class like its columns
+			if (type.isAnnotationPresent(CompositeIndex.class))
+				addCompositeIndex(metaData, type, type.getAnnotation(CompositeIndex.class));
+			if (type.isAnnotationPresent(CompositeIndexes.class))
+				for (CompositeIndex index : type.getAnnotation(CompositeIndexes.class).value())
+					addCompositeIndex(metaData, type, index);
 			// set table name add it to registry
 			if (type.isAnnotationPresent(Table.class)) {
 				
@@ -182,14 +368,14 @@ final class Registry {
 					tableName = table.name();
 				lastTableName = tableName;
 				metaData.setName(tableName);
-				TableMetaData tMetaData = this.tables.get(metaData.getName());
+				TableMetaData tMetaData = entityTables.get(metaData.getName());
 				if (tMetaData != null) {
 					tMetaData.merge(metaData);
-					tableMetaDatas.add(tMetaData);
+					tableMetaDatas.addFirst(tMetaData);
 				}
 				else {
-					this.tables.put(metaData.getName(), metaData);
-					tableMetaDatas.add(metaData);
+					entityTables.put(metaData.getName(), metaData);
+					tableMetaDatas.addFirst(metaData);
 				}
 				
 				metaData = new TableMetaData();
@@ -201,13 +387,90 @@ final class Registry {
 				if (!hasPrimaryKey)
 					throw new PrimaryKeyNotFoundException(qualifiedName);
 				if (lastTableName.equals("")) {
-					// TODO throw table exception
+					// no @Table in hierarchy, entity is mapped to a table with its simple name
+					lastTableName = clazz.getSimpleName();
+					metaData.setName(lastTableName);
+					entityTables.put(lastTableName, metaData);
+					tableMetaDatas.addFirst(metaData);
 				}
-				metaData.setName(lastTableName);
-				this.tables.get(lastTableName).merge(metaData);
+				else {
+					// columns of super entities above the last @Table belong to that table
+					metaData.setName(lastTableName);
+					entityTables.get(lastTableName).merge(metaData);
+				}
+				break;
 			}
 		}
-		return new EntityMetaData(tableMetaDatas, clazz, oneToManyDatas);
+		return new ScannedEntity(clazz, tableMetaDatas, entityColumns, oneToManyDatas, manyToManyDatas, findAccessor(clazz, entityColumns));
+	}
+	
+	/**
+	 * both sides of a relation share the cross table, entity names are ordered so that A_B_CROSS is generated from A and B. Used by scan and RegistrySnapshot.
+	 */
+	static final ManyToManyMetaData generateManyToMany(final Class<?> clazz, final String fieldName, final Class<?> fieldType, final Class<?> target, final String mapKey,
+			final FetchType fetchType) {
+		boolean ownerFirst = clazz.getSimpleName().compareTo(target.getSimpleName()) <= 0;
+		Pair<String, Class<?>> owner = new Pair<String, Class<?>>(clazz.getSimpleName(), clazz);
+		Pair<String, Class<?>> targetPair = new Pair<String, Class<?>>(target.getSimpleName(), target);
+		CrossTableMetaData crossTable = ownerFirst ? new CrossTableMetaData(owner, targetPair) : new CrossTableMetaData(targetPair, owner);
+		return new ManyToManyMetaData(clazz, fieldName, fieldType, target, mapKey, fetchType, crossTable, ownerFirst);
+	}
+	
+	private static final void addCompositeIndex(final TableMetaData metaData, final Class<?> type, final CompositeIndex index) {
+		if (index.columns().length == 0)
+			throw new EntityViolation(type.getName(), "has a CompositeIndex without columns");
+		metaData.addIndex(new IndexMetaData(index.name(), Arrays.asList(index.columns()), index.unique()));
+	}
+	
+	/**
+	 * @return column name of the field in clazz or its super classes
+	 */
+	private static final String findColumnName(final Class<?> clazz, final String fieldName) {
+		Class<?> type = clazz;
+		while (!Object.class.equals(type)) {
+			try {
+				Column column = type.getDeclaredField(fieldName).getAnnotation(Column.class);
+				if (column == null || column.name().equals(""))
+					return fieldName;
+				return column.name();
+			}
+			catch (NoSuchFieldException e) {
+				type = type.getSuperclass();
+			}
+		}
+		return fieldName;
+	}
+	
+	/**
+	 * looks for the accessor generated by EntityAccessorProcessor, if it does not exist or it is out of date falls back to reflection.
+	 * 
+	 * @param clazz entity class
+	 * @param columns column fields of the entity and its super classes
+	 * @return accessor for the entity's column fields
+	 */
+	@SuppressWarnings("unchecked")
+	private final EntityAccessor<Persistable> findAccessor(final Class<?> clazz, final List<ColumnMetaData> columns) {
+		String accessorName = clazz.getName() + OrmConstants.ACCESSOR_CLASS_SUFFIX;
+		try {
+			EntityAccessor<Persistable> accessor = (EntityAccessor<Persistable>) Class.forName(accessorName, true, clazz.getClassLoader()).newInstance();
+			Set<String> fieldNames = new HashSet<String>(Arrays.asList(accessor.getFieldNames()));
+			for (ColumnMetaData columnMetaData : columns)
+				if (!fieldNames.contains(columnMetaData.getFieldName())) {
+					Log.w(TAG, accessorName + " does not cover field " + columnMetaData.getFieldName() + ", using reflection for " + clazz.getName());
+					return new ReflectionAccessor(clazz, columns);
+				}
+			return accessor;
+		}
+		catch (ClassNotFoundException e) {
+			// entity is not processed by EntityAccessorProcessor
+		}
+		catch (InstantiationException e) {
+			Log.w(TAG, "can not instantiate " + accessorName + ", using reflection for " + clazz.getName());
+		}
+		catch (IllegalAccessException e) {
+			Log.w(TAG, "can not instantiate " + accessorName + ", using reflection for " + clazz.getName());
+		}
+		return new ReflectionAccessor(clazz, columns);
 	}
 	
 	public Map<String, EntityMetaData> getEntityRegistry() {
@@ -226,4 +489,39 @@ final class Registry {
 		return this.tables.get(tableName);
 	}
 	
+	public Map<String, CrossTableMetaData> getCrossTableRegistry() {
+		return this.crossTables;
+	}
+	
+	/**
+	 * metadata of an entity class before its tables are registered, written to and read from RegistrySnapshot
+	 */
+	static final class ScannedEntity {
+		
+		final Class<?> clazz;
+		
+		// parent tables first
+		final List<TableMetaData> tables;
+		
+		// column fields of entity and its super classes, columns of tables are elements of this list
+		final List<ColumnMetaData> columns;
+		
+		final Set<OneToManyMetaData> oneToMany;
+		
+		final Set<ManyToManyMetaData> manyToMany;
+		
+		// null if entity is read from snapshot, accessor is found while registering
+		final EntityAccessor<Persistable> accessor;
+		
+		ScannedEntity(Class<?> clazz, List<TableMetaData> tables, List<ColumnMetaData> columns, Set<OneToManyMetaData> oneToMany, Set<ManyToManyMetaData> manyToMany,
+				EntityAccessor<Persistable> accessor) {
+			this.clazz = clazz;
+			this.tables = tables;
+			this.columns = columns;
+			this.oneToMany = oneToMany;
+			this.manyToMany = manyToMany;
+			this.accessor = accessor;
+		}
+	}
+	
 }
@@ -0,0 +1,269 @@
+package com.android.orm.adapter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.util.Log;
+
+import com.android.orm.Persistable;
+import com.android.orm.type.FetchType;
+
+/**
+ * keeps scanned entities of the registry in a binary file so that entity classes are not scanned with reflection on every start. Snapshot is written for a fingerprint of the entity
+ * classes, a snapshot with another fingerprint is discarded and the registry scans again.
+ * <p>
+ * only names and types are written, getters and setters are found when they are first used.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+final class RegistrySnapshot {
+	
+	private static final String TAG = "RegistrySnapshot";
+	
+	// increased whenever the file layout or the scanned metadata changes, snapshots of another format are discarded
+	private static final int FORMAT_VERSION = 3;
+	
+	private RegistrySnapshot() {
+	}
+	
+	/**
+	 * 64 bit FNV-1a hash of the format version, the version of the classes and the entity names
+	 *
+	 * @param qualifiedNames entity names in registry order
+	 * @param classesVersion changes whenever entity classes may change, e.g. version and update time of the application package
+	 */
+	static final long fingerprint(final Collection<String> qualifiedNames, final long classesVersion) {
+		long hash = 0xcbf29ce484222325L;
+		hash = hash(hash, FORMAT_VERSION);
+		hash = hash(hash, classesVersion);
+		for (String qualifiedName : qualifiedNames) {
+			for (int i = 0; i < qualifiedName.length(); i++)
+				hash = hash(hash, qualifiedName.charAt(i));
+			// separator so that names can not be shifted between elements
+			hash = hash(hash, 0);
+		}
+		return hash;
+	}
+	
+	private static final long hash(long hash, final long value) {
+		for (int i = 0; i < 8; i++) {
+			hash ^= (value >>> (i * 8)) & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+	
+	/**
+	 * @return scanned entity of each name in the same order, null elements for classes which can not be mapped. null if snapshot does not exist, is written for another fingerprint or
+	 *         can not be read
+	 */
+	static final List<Registry.ScannedEntity> read(final File snapshot, final long fingerprint, final List<String> qualifiedNames) {
+		if (!snapshot.exists())
+			return null;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+			if (in.readInt() != FORMAT_VERSION || in.readLong() != fingerprint || in.readInt() != qualifiedNames.size())
+				return null;
+			List<Registry.ScannedEntity> scannedEntities = new ArrayList<Registry.ScannedEntity>(qualifiedNames.size());
+			for (String qualifiedName : qualifiedNames) {
+				if (!in.readBoolean()) {
+					scannedEntities.add(null);
+					continue;
+				}
+				if (!qualifiedName.equals(in.readUTF()))
+					return null;
+				scannedEntities.add(readEntity(in, loadClass(qualifiedName)));
+			}
+			return scannedEntities;
+		}
+		catch (IOException e) {
+			Log.w(TAG, "can not read registry snapshot " + snapshot + ", scanning entity classes : " + e.getMessage());
+		}
+		catch (ClassNotFoundException e) {
+			Log.w(TAG, "registry snapshot " + snapshot + " refers to a missing class, scanning entity classes : " + e.getMessage());
+		}
+		finally {
+			close(in);
+		}
+		return null;
+	}
+	
+	/**
+	 * writes scanned entities to a temporary file and renames it, so a failed write does not leave a broken snapshot. Failures are logged, registry works without a snapshot.
+	 *
+	 * @param scannedEntities scanned entity of each name in registry order, null for classes which can not be mapped
+	 */
+	static final void write(final File snapshot, final long fingerprint, final List<Registry.ScannedEntity> scannedEntities) {
+		File temp = new File(snapshot.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			File directory = snapshot.getParentFile();
+			if (directory != null && !directory.exists())
+				directory.mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(fingerprint);
+			out.writeInt(scannedEntities.size());
+			for (Registry.ScannedEntity scannedEntity : scannedEntities) {
+				out.writeBoolean(scannedEntity != null);
+				if (scannedEntity != null)
+					writeEntity(out, scannedEntity);
+			}
+			out.close();
+			out = null;
+			if (!temp.renameTo(snapshot))
+				throw new IOException("can not rename " + temp + " to " + snapshot);
+		}
+		catch (IOException e) {
+			Log.w(TAG, "can not write registry snapshot " + snapshot + " : " + e.getMessage());
+			close(out);
+			temp.delete();
+		}
+	}
+	
+	private static final void writeEntity(final DataOutputStream out, final Registry.ScannedEntity scannedEntity) throws IOException {
+		out.writeUTF(scannedEntity.clazz.getName());
+		// columns are written once, tables refer to them by index
+		Map<ColumnMetaData, Integer> indexes = new HashMap<ColumnMetaData, Integer>();
+		out.writeInt(scannedEntity.columns.size());
+		for (ColumnMetaData columnMetaData : scannedEntity.columns) {
+			indexes.put(columnMetaData, indexes.size());
+			writeColumn(out, columnMetaData);
+		}
+		out.writeInt(scannedEntity.tables.size());
+		for (TableMetaData tableMetaData : scannedEntity.tables) {
+			out.writeUTF(tableMetaData.getName());
+			out.writeInt(tableMetaData.getColumns().size());
+			for (ColumnMetaData columnMetaData : tableMetaData.getColumns())
+				out.writeInt(indexes.get(columnMetaData));
+			out.writeInt(tableMetaData.getIndexes().size());
+			for (IndexMetaData indexMetaData : tableMetaData.getIndexes()) {
+				out.writeUTF(indexMetaData.getDeclaredName());
+				out.writeBoolean(indexMetaData.isUnique());
+				out.writeInt(indexMetaData.getColumns().size());
+				for (String column : indexMetaData.getColumns())
+					out.writeUTF(column);
+			}
+		}
+		out.writeInt(scannedEntity.oneToMany.size());
+		for (OneToManyMetaData oneToMany : scannedEntity.oneToMany)
+			writeRelation(out, oneToMany.getFieldName(), oneToMany.getFieldType(), oneToMany.getTargetEntity(), oneToMany.getMapKey(), oneToMany.getFetchType());
+		out.writeInt(scannedEntity.manyToMany.size());
+		for (ManyToManyMetaData manyToMany : scannedEntity.manyToMany)
+			writeRelation(out, manyToMany.getFieldName(), manyToMany.getFieldType(), manyToMany.getTargetEntity(), manyToMany.getMapKey(), manyToMany.getFetchType());
+	}
+	
+	private static final Registry.ScannedEntity readEntity(final DataInputStream in, final Class<?> clazz) throws IOException, ClassNotFoundException {
+		int columnCount = in.readInt();
+		List<ColumnMetaData> columns = new ArrayList<ColumnMetaData>(columnCount);
+		for (int i = 0; i < columnCount; i++)
+			columns.add(readColumn(in, clazz));
+		int tableCount = in.readInt();
+		LinkedList<TableMetaData> tables = new LinkedList<TableMetaData>();
+		for (int i = 0; i < tableCount; i++) {
+			TableMetaData tableMetaData = new TableMetaData();
+			tableMetaData.setName(in.readUTF());
+			int tableColumnCount = in.readInt();
+			for (int j = 0; j < tableColumnCount; j++)
+				tableMetaData.addColumn(columns.get(in.readInt()));
+			int indexCount = in.readInt();
+			for (int j = 0; j < indexCount; j++) {
+				String name = in.readUTF();
+				boolean unique = in.readBoolean();
+				int indexColumnCount = in.readInt();
+				List<String> indexColumns = new ArrayList<String>(indexColumnCount);
+				for (int k = 0; k < indexColumnCount; k++)
+					indexColumns.add(in.readUTF());
+				tableMetaData.addIndex(new IndexMetaData(name, indexColumns, unique));
+			}
+			tables.add(tableMetaData);
+		}
+		int oneToManyCount = in.readInt();
+		Set<OneToManyMetaData> oneToMany = new HashSet<OneToManyMetaData>();
+		for (int i = 0; i < oneToManyCount; i++)
+			oneToMany.add(new OneToManyMetaData(clazz, in.readUTF(), loadClass(in.readUTF()), loadClass(in.readUTF()), in.readUTF(), FetchType.values()[in.readByte()]));
+		int manyToManyCount = in.readInt();
+		Set<ManyToManyMetaData> manyToMany = new HashSet<ManyToManyMetaData>();
+		for (int i = 0; i < manyToManyCount; i++)
+			manyToMany.add(Registry.generateManyToMany(clazz, in.readUTF(), loadClass(in.readUTF()), loadClass(in.readUTF()), in.readUTF(), FetchType.values()[in.readByte()]));
+		return new Registry.ScannedEntity(clazz, tables, columns, oneToMany, manyToMany, null);
+	}
+	
+	private static final void writeColumn(final DataOutputStream out, final ColumnMetaData columnMetaData) throws IOException {
+		out.writeUTF(columnMetaData.getColumnName());
+		out.writeUTF(columnMetaData.getFieldName());
+		out.writeUTF(columnMetaData.getFieldType().getName());
+		out.writeBoolean(columnMetaData.isNullable());
+		out.writeInt(columnMetaData.length());
+		out.writeBoolean(columnMetaData.isNaturalKey());
+		ForeignKeyMetaData foreignKeyMetaData = columnMetaData.getForeignKeyMetaData();
+		out.writeBoolean(foreignKeyMetaData != null);
+		if (foreignKeyMetaData == null)
+			return;
+		out.writeUTF(foreignKeyMetaData.getReferenceColumnName());
+		out.writeUTF(foreignKeyMetaData.getReferenceFieldName());
+		out.writeUTF(foreignKeyMetaData.getReferenceFieldType().getName());
+		out.writeByte(foreignKeyMetaData.getFetchType().ordinal());
+	}
+	
+	/**
+	 * @param owner entity class which has the getter and setter of the column
+	 */
+	private static final ColumnMetaData readColumn(final DataInputStream in, final Class<?> owner) throws IOException, ClassNotFoundException {
+		String name = in.readUTF();
+		String fieldName = in.readUTF();
+		Class<?> fieldType = loadClass(in.readUTF());
+		boolean nullable = in.readBoolean();
+		int length = in.readInt();
+		boolean naturalKey = in.readBoolean();
+		ForeignKeyMetaData foreignKeyMetaData = null;
+		// referenced entity is the type of the foreign key field
+		if (in.readBoolean())
+			foreignKeyMetaData = new ForeignKeyMetaData(fieldType, in.readUTF(), in.readUTF(), loadClass(in.readUTF()), FetchType.values()[in.readByte()]);
+		return new ColumnMetaData(owner, foreignKeyMetaData, fieldType, name, fieldName, nullable, length, naturalKey);
+	}
+	
+	private static final void writeRelation(final DataOutputStream out, final String fieldName, final Class<?> fieldType, final Class<?> targetEntity, final String mapKey,
+			final FetchType fetchType) throws IOException {
+		out.writeUTF(fieldName);
+		out.writeUTF(fieldType.getName());
+		out.writeUTF(targetEntity.getName());
+		out.writeUTF(mapKey);
+		out.writeByte(fetchType.ordinal());
+	}
+	
+	/**
+	 * classes are loaded by the loader of the orm like Registry does, without initializing them
+	 */
+	private static final Class<?> loadClass(final String name) throws ClassNotFoundException {
+		return Class.forName(name, false, Persistable.class.getClassLoader());
+	}
+	
+	private static final void close(final Closeable closeable) {
+		if (closeable == null)
+			return;
+		try {
+			closeable.close();
+		}
+		catch (IOException e) {
+			// nothing to do, file is not used anymore
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.android.orm.adapter;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import com.android.orm.Persistable;
+import com.android.orm.exception.EntityViolation;
+
+/**
+ * reads and writes collection fields of OneToMany and ManyToMany relations through their getters and setters
+ *
+ * @author Hamza Gumrah
+ */
+final class RelationValues {
+	
+	private RelationValues() {
+	}
+	
+	/**
+	 * sets targets to the field through its setter. Map fields get mapKey values of targets as keys as they are returned by the getter, other fields get a List or Set in load order.
+	 *
+	 * @param mapKeyGetter getter of the mapKey field of target entity, required if field is a Map
+	 */
+	static final void set(final Method setter, final Method mapKeyGetter, final Persistable entity, final List<Persistable> targets) {
+		Class<?> fieldType = setter.getParameterTypes()[0];
+		Object value;
+		if (Map.class.isAssignableFrom(fieldType)) {
+			Map<Object, Persistable> map = newInstance(setter, fieldType, LinkedHashMap.class);
+			for (Persistable target : targets)
+				map.put(invoke(mapKeyGetter, target), target);
+			value = map;
+		}
+		else {
+			Collection<Persistable> collection = newInstance(setter, fieldType, fieldType.isAssignableFrom(ArrayList.class) ? ArrayList.class : LinkedHashSet.class);
+			collection.addAll(targets);
+			value = collection;
+		}
+		invoke(setter, entity, value);
+	}
+	
+	/**
+	 * @return targets in the field, values of a Map field. null if field is null
+	 */
+	@SuppressWarnings("unchecked")
+	static final Collection<Persistable> get(final Method getter, final Persistable entity) {
+		Object value = invoke(getter, entity);
+		if (value instanceof Map)
+			return ((Map<?, Persistable>) value).values();
+		return (Collection<Persistable>) value;
+	}
+	
+	/**
+	 * checks that values of the mapKey getter can be keys of the Map field, generic types are erased so a mismatch would only show when keys are read
+	 *
+	 * @param field relation field, ignored if it is not a Map
+	 * @param mapKeyGetter getter of the mapKey field of target entity
+	 * @throws EntityViolation if key type of the field can not hold values of the getter
+	 */
+	static final void checkMapKey(final Field field, final Method mapKeyGetter) {
+		if (!Map.class.isAssignableFrom(field.getType()) || !(field.getGenericType() instanceof ParameterizedType))
+			return;
+		Type keyType = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+		// wildcard and type variable keys are not checked
+		if (!(keyType instanceof Class))
+			return;
+		Class<?> valueType = box(mapKeyGetter.getReturnType());
+		if (!((Class<?>) keyType).isAssignableFrom(valueType))
+			throw new EntityViolation(field.getDeclaringClass().getName(), "has Map field " + field.getName() + " with " + ((Class<?>) keyType).getName()
+					+ " keys but its mapKey getter " + mapKeyGetter.getName() + " returns " + valueType.getName());
+	}
+	
+	private static final Class<?> box(final Class<?> type) {
+		if (!type.isPrimitive())
+			return type;
+		if (type == long.class)
+			return Long.class;
+		if (type == int.class)
+			return Integer.class;
+		if (type == short.class)
+			return Short.class;
+		if (type == byte.class)
+			return Byte.class;
+		if (type == boolean.class)
+			return Boolean.class;
+		if (type == double.class)
+			return Double.class;
+		if (type == float.class)
+			return Float.class;
+		if (type == char.class)
+			return Character.class;
+		return Void.class;
+	}
+	
+	/**
+	 * @return instance of defaultType if field type is one of its interfaces, else instance of field type
+	 */
+	@SuppressWarnings("unchecked")
+	private static final <C> C newInstance(final Method setter, final Class<?> fieldType, final Class<?> defaultType) {
+		Class<?> type = fieldType.isAssignableFrom(defaultType) ? defaultType : fieldType;
+		try {
+			return (C) type.newInstance();
+		}
+		catch (InstantiationException e) {
+			throw new EntityViolation(setter.getDeclaringClass().getName(), "can not create " + type.getName() + " for relation set by " + setter.getName());
+		}
+		catch (IllegalAccessException e) {
+			throw new EntityViolation(setter.getDeclaringClass().getName(), "can not create " + type.getName() + " for relation set by " + setter.getName());
+		}
+	}
+	
+	private static final Object invoke(final Method method, final Object target, final Object... args) {
+		try {
+			return method.invoke(target, args);
+		}
+		catch (IllegalAccessException e) {
+			throw new EntityViolation(method.getDeclaringClass().getName(), "can not access " + method.getName() + " of relation");
+		}
+		catch (InvocationTargetException e) {
+			throw new EntityViolation(method.getDeclaringClass().getName(), method.getName() + " of relation failed : " + e.getCause());
+		}
+	}
+}
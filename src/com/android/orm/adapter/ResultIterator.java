@@ -0,0 +1,22 @@
+package com.android.orm.adapter;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * lazily advancing iterator over a query result, backed directly by the cursor. Rows are read one at a time so memory use does not depend on the number of rows. Cursor is closed when the
+ * iterator is exhausted, close() should be called if iteration is stopped before.
+ * <p>
+ * remove() is not supported.
+ * </p>
+ * 
+ * @author Hamza Gumrah
+ */
+public interface ResultIterator<T> extends Iterator<T>, Closeable {
+	
+	/**
+	 * closes the underlying cursor, does nothing if it is already closed
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,72 @@
+package com.android.orm.adapter;
+
+import android.database.Cursor;
+
+/**
+ * typed view over the current row of a streaming query. The same instance is returned for every row of a ResultIterator and reads values directly from the cursor, so values should be read
+ * before the iterator is advanced.
+ * 
+ * @author Hamza Gumrah
+ */
+public final class Row {
+	
+	private final Cursor cursor;
+	
+	Row(Cursor cursor) {
+		this.cursor = cursor;
+	}
+	
+	public int getColumnCount() {
+		return this.cursor.getColumnCount();
+	}
+	
+	public String getColumnName(int index) {
+		return this.cursor.getColumnName(index);
+	}
+	
+	/**
+	 * resolve indexes once before iteration, reading by index avoids a name lookup for each value
+	 * 
+	 * @return index of the column
+	 * @throws IllegalArgumentException if column does not exist
+	 */
+	public int getColumnIndex(String columnName) {
+		return this.cursor.getColumnIndexOrThrow(columnName);
+	}
+	
+	public boolean isNull(int index) {
+		return this.cursor.isNull(index);
+	}
+	
+	public long getLong(int index) {
+		return this.cursor.getLong(index);
+	}
+	
+	public int getInt(int index) {
+		return this.cursor.getInt(index);
+	}
+	
+	public short getShort(int index) {
+		return this.cursor.getShort(index);
+	}
+	
+	public double getDouble(int index) {
+		return this.cursor.getDouble(index);
+	}
+	
+	public float getFloat(int index) {
+		return this.cursor.getFloat(index);
+	}
+	
+	public boolean getBoolean(int index) {
+		return this.cursor.getInt(index) != 0;
+	}
+	
+	public String getString(int index) {
+		return this.cursor.getString(index);
+	}
+	
+	public byte[] getBlob(int index) {
+		return this.cursor.getBlob(index);
+	}
+}
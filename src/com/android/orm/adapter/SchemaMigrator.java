@@ -0,0 +1,290 @@
+package com.android.orm.adapter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.android.orm.OrmConstants;
+import com.android.orm.exception.SchemaMigrationException;
+
+/**
+ * migrates tables of an existing database to the registry without dropping their rows. Schema of the database is read from sqlite_master and PRAGMA table_info, then
+ * <ul>
+ * <li>missing tables are created in dependency order</li>
+ * <li>missing columns are added with ALTER TABLE ADD COLUMN</li>
+ * <li>missing indexes are created, an index whose definition changed is recreated. A unique index is not created on an existing table whose rows have duplicated values of
+ * its columns</li>
+ * <li>a table is rebuilt only if sqlite can not alter it in place: type of a column changed or foreign keys of existing columns changed. Rows of the table are copied to a new table
+ * which replaces the old one.</li>
+ * </ul>
+ * Tables, columns and indexes which are not in the registry are not dropped. A column which is only in the database is kept with its values when its table is rebuilt, generated
+ * columns are never NOT NULL so such a column does not block inserts. Should be used inside a single transaction, foreign keys should be disabled so that dropping a rebuilt table
+ * does not cascade.
+ *
+ * @author Hamza Gumrah
+ */
+final class SchemaMigrator {
+	
+	private static final String TAG = "SchemaMigrator";
+	
+	// name of the new table while a table is rebuilt
+	private static final String REBUILD_SUFFIX = "_MIGRATION";
+	
+	private final SQLiteDatabase dataBase;
+	
+	// upper case names of existing tables
+	private final Set<String> tables;
+	
+	// existing indexes, key:upper case index name value:upper case table name
+	private final Map<String, String> indexTables;
+	
+	// existing indexes, key:upper case index name value:sql
+	private final Map<String, String> indexes;
+	
+	SchemaMigrator(SQLiteDatabase dataBase) {
+		this.dataBase = dataBase;
+		this.tables = new HashSet<String>();
+		this.indexTables = new HashMap<String, String>();
+		this.indexes = new HashMap<String, String>();
+	}
+	
+	/**
+	 * @throws SchemaMigrationException if foreign keys are enabled
+	 */
+	final void migrate() {
+		if ("1".equals(SqliteHelper.pragma(this.dataBase, "foreign_keys")))
+			throw new SchemaMigrationException("foreign keys should be disabled while tables are migrated, dropping a rebuilt table would delete referring rows");
+		readSchema();
+		for (TableMetaData tableMetaData : SqliteHelper.getTablesInCreateOrder()) {
+			String tableName = tableMetaData.getName().toUpperCase();
+			if (!this.tables.contains(tableName))
+				execute(SqliteHelper.generateCreateTableStatement(tableMetaData, tableMetaData.getName()));
+			else {
+				Map<String, String> columnTypes = readColumnTypes(tableName);
+				if (requiresRebuild(tableMetaData, columnTypes))
+					rebuild(tableMetaData, columnTypes);
+				else
+					addColumns(tableMetaData, columnTypes);
+			}
+			createIndexes(SqliteHelper.generateIndexStatements(tableMetaData));
+		}
+		for (CrossTableMetaData crossTableMetaData : DatabaseAdapterFactory.getCrossTableRegistry().values()) {
+			Map<String, String> statements = SqliteHelper.generateCrossTableStatements(crossTableMetaData);
+			Iterator<Map.Entry<String, String>> iterator = statements.entrySet().iterator();
+			// first statement creates the table, others create its indexes
+			Map.Entry<String, String> createTable = iterator.next();
+			if (!this.tables.contains(createTable.getKey()))
+				execute(createTable.getValue());
+			iterator.remove();
+			createIndexes(statements);
+		}
+	}
+	
+	private final void readSchema() {
+		Cursor cursor = this.dataBase.rawQuery("SELECT type, name, tbl_name, sql FROM sqlite_master WHERE type IN ('table', 'index')", null);
+		try {
+			while (cursor.moveToNext()) {
+				String name = cursor.getString(1).toUpperCase();
+				if ("table".equals(cursor.getString(0)))
+					this.tables.add(name);
+				// indexes of PRIMARY KEY and UNIQUE constraints have no sql
+				else if (!cursor.isNull(3)) {
+					this.indexTables.put(name, cursor.getString(2).toUpperCase());
+					this.indexes.put(name, cursor.getString(3));
+				}
+			}
+		}
+		finally {
+			cursor.close();
+		}
+	}
+	
+	/**
+	 * @return declared types of existing columns without length, key:upper case column name
+	 */
+	private final Map<String, String> readColumnTypes(final String tableName) {
+		Map<String, String> columnTypes = new HashMap<String, String>();
+		Cursor cursor = this.dataBase.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+		try {
+			int name = cursor.getColumnIndex("name");
+			int type = cursor.getColumnIndex("type");
+			while (cursor.moveToNext())
+				columnTypes.put(cursor.getString(name).toUpperCase(), baseType(cursor.getString(type)));
+		}
+		finally {
+			cursor.close();
+		}
+		return columnTypes;
+	}
+	
+	/**
+	 * @return existing foreign keys as COLUMN>TABLE.COLUMN in upper case
+	 */
+	private final Set<String> readForeignKeys(final String tableName) {
+		Set<String> foreignKeys = new HashSet<String>();
+		Cursor cursor = this.dataBase.rawQuery("PRAGMA foreign_key_list(" + tableName + ")", null);
+		try {
+			int table = cursor.getColumnIndex("table");
+			int from = cursor.getColumnIndex("from");
+			int to = cursor.getColumnIndex("to");
+			while (cursor.moveToNext())
+				foreignKeys.add(foreignKey(cursor.getString(from), cursor.getString(table), cursor.getString(to)));
+		}
+		finally {
+			cursor.close();
+		}
+		return foreignKeys;
+	}
+	
+	/**
+	 * sqlite can add a column but can not change its type or add a foreign key to an existing column. Columns which are only in the database are ignored.
+	 */
+	private final boolean requiresRebuild(final TableMetaData tableMetaData, final Map<String, String> columnTypes) {
+		Map<String, String> expectedTypes = new HashMap<String, String>();
+		expectedTypes.put(OrmConstants.PRIMARY_KEY_COLUMN_NAME.toUpperCase(), OrmConstants.SQLITE_NUMBER);
+		for (ColumnMetaData columnMetaData : tableMetaData.getColumns())
+			expectedTypes.put(columnMetaData.getColumnName().toUpperCase(), columnMetaData.getSqliteFieldType());
+		for (Map.Entry<String, String> column : columnTypes.entrySet()) {
+			String expectedType = expectedTypes.get(column.getKey());
+			if (expectedType != null && !expectedType.equals(column.getValue()))
+				return true;
+		}
+		// foreign keys of columns which are added later are declared with the column
+		Set<String> expectedForeignKeys = new HashSet<String>();
+		for (Map.Entry<String, ForeignKeyMetaData> foreignKey : tableMetaData.getForeignKeys().entrySet())
+			if (columnTypes.containsKey(foreignKey.getKey().toUpperCase()))
+				expectedForeignKeys.add(foreignKey(foreignKey.getKey(), SqliteHelper.getReferencedTableName(foreignKey.getValue()), foreignKey.getValue().getReferenceColumnName()));
+		return !expectedForeignKeys.equals(readForeignKeys(tableMetaData.getName().toUpperCase()));
+	}
+	
+	private final void addColumns(final TableMetaData tableMetaData, final Map<String, String> columnTypes) {
+		for (ColumnMetaData columnMetaData : tableMetaData.getColumns()) {
+			if (columnTypes.containsKey(columnMetaData.getColumnName().toUpperCase()))
+				continue;
+			StringBuilder sqlBuilder = new StringBuilder("ALTER TABLE ");
+			sqlBuilder.append(tableMetaData.getName().toUpperCase()).append(" ADD COLUMN ").append(SqliteHelper.generateColumnDefinition(columnMetaData));
+			if (columnMetaData.isForeignKey()) {
+				ForeignKeyMetaData foreignKeyMetaData = columnMetaData.getForeignKeyMetaData();
+				sqlBuilder.append(" REFERENCES ").append(SqliteHelper.getReferencedTableName(foreignKeyMetaData).toUpperCase());
+				sqlBuilder.append("(").append(foreignKeyMetaData.getReferenceColumnName()).append(")");
+			}
+			execute(sqlBuilder.append(";").toString());
+		}
+	}
+	
+	/**
+	 * copies rows to a new table with the registry's definition and replaces the old table with it. Columns which are not in the registry are added to the new table and keep their
+	 * values, added columns are null.
+	 */
+	private final void rebuild(final TableMetaData tableMetaData, final Map<String, String> columnTypes) {
+		String tableName = tableMetaData.getName().toUpperCase();
+		String rebuiltName = tableName + REBUILD_SUFFIX;
+		Log.w(TAG, "rebuilding table " + tableName + ", sqlite can not alter its columns in place");
+		// existing columns in upper case, the ones left are only in the database
+		Map<String, String> databaseColumns = new HashMap<String, String>(columnTypes);
+		databaseColumns.remove(OrmConstants.PRIMARY_KEY_COLUMN_NAME.toUpperCase());
+		List<String> copiedColumns = new ArrayList<String>();
+		copiedColumns.add(OrmConstants.PRIMARY_KEY_COLUMN_NAME);
+		for (ColumnMetaData columnMetaData : tableMetaData.getColumns())
+			if (databaseColumns.remove(columnMetaData.getColumnName().toUpperCase()) != null)
+				copiedColumns.add(columnMetaData.getColumnName());
+		execute("DROP TABLE IF EXISTS " + rebuiltName + ";");
+		execute(SqliteHelper.generateCreateTableStatement(tableMetaData, rebuiltName));
+		for (Map.Entry<String, String> column : databaseColumns.entrySet()) {
+			execute("ALTER TABLE " + rebuiltName + " ADD COLUMN " + column.getKey() + " " + column.getValue() + ";");
+			copiedColumns.add(column.getKey());
+		}
+		StringBuilder columns = new StringBuilder();
+		for (String column : copiedColumns)
+			columns.append(columns.length() == 0 ? "" : ", ").append(column);
+		execute("INSERT INTO " + rebuiltName + "(" + columns + ") SELECT " + columns + " FROM " + tableName + ";");
+		execute("DROP TABLE " + tableName + ";");
+		execute("ALTER TABLE " + rebuiltName + " RENAME TO " + tableName + ";");
+		// indexes are dropped with the old table
+		Iterator<Map.Entry<String, String>> iterator = this.indexTables.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, String> index = iterator.next();
+			if (index.getValue().equals(tableName)) {
+				this.indexes.remove(index.getKey());
+				iterator.remove();
+			}
+		}
+	}
+	
+	/**
+	 * @param statements CREATE INDEX statements, key:index name
+	 */
+	private final void createIndexes(final Map<String, String> statements) {
+		for (Map.Entry<String, String> statement : statements.entrySet()) {
+			String existing = this.indexes.get(statement.getKey().toUpperCase());
+			if (existing != null) {
+				if (normalize(existing).equals(normalize(statement.getValue())))
+					continue;
+				execute("DROP INDEX " + statement.getKey() + ";");
+			}
+			if (statement.getValue().startsWith("CREATE UNIQUE INDEX "))
+				checkDuplicates(statement.getValue());
+			execute(statement.getValue());
+		}
+	}
+	
+	/**
+	 * rows of an existing table may violate a unique index which is added by the registry, sqlite would abort the upgrade with a constraint error which does not name the
+	 * columns. A row which has null in any column of the index never violates it.
+	 * 
+	 * @param statement CREATE UNIQUE INDEX name ON TABLE(columns);
+	 * @throws SchemaMigrationException if rows of the existing table have the same values in the columns of the index
+	 */
+	private final void checkDuplicates(final String statement) {
+		String tableName = statement.substring(statement.indexOf(" ON ") + 4, statement.indexOf('(')).trim();
+		if (!this.tables.contains(tableName.toUpperCase()))
+			return;
+		String columns = statement.substring(statement.indexOf('(') + 1, statement.lastIndexOf(')'));
+		StringBuilder sql = new StringBuilder("SELECT 1 FROM ").append(tableName);
+		String[] columnNames = columns.split(",");
+		for (int i = 0; i < columnNames.length; i++)
+			sql.append(i == 0 ? " WHERE " : " AND ").append(columnNames[i].trim()).append(" IS NOT NULL");
+		sql.append(" GROUP BY ").append(columns).append(" HAVING COUNT(*) > 1 LIMIT 1");
+		Cursor cursor = this.dataBase.rawQuery(sql.toString(), null);
+		try {
+			if (cursor.moveToNext())
+				throw new SchemaMigrationException("rows of table " + tableName + " have duplicated values of columns (" + columns + "), unique index can not be created");
+		}
+		finally {
+			cursor.close();
+		}
+	}
+	
+	private final void execute(final String sql) {
+		Log.i(TAG, sql);
+		this.dataBase.execSQL(sql);
+	}
+	
+	/**
+	 * @return upper case type without length, e.g. TEXT for text(20)
+	 */
+	private static final String baseType(final String type) {
+		int length = type.indexOf('(');
+		return (length < 0 ? type : type.substring(0, length)).trim().toUpperCase();
+	}
+	
+	private static final String foreignKey(final String column, final String referencedTable, final String referencedColumn) {
+		return (column + ">" + referencedTable + "." + referencedColumn).toUpperCase();
+	}
+	
+	/**
+	 * @return sql without white space and trailing semicolon in upper case, sqlite keeps the sql of an index as it is given
+	 */
+	private static final String normalize(final String sql) {
+		String normalized = sql.replaceAll("\\s", "").toUpperCase();
+		return normalized.endsWith(";") ? normalized.substring(0, normalized.length() - 1) : normalized;
+	}
+}
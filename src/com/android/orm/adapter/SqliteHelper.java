@@ -1,23 +1,31 @@
 package com.android.orm.adapter;
 
-import java.lang.reflect.InvocationTargetException;
 import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import android.content.ContentValues;
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.android.orm.OrmConstants;
 import com.android.orm.Persistable;
 import com.android.orm.annotation.Entity;
 import com.android.orm.exception.CircularReferenceException;
 import com.android.orm.exception.ColumnNotNullableException;
+import com.android.orm.exception.EntityViolation;
 import com.android.orm.exception.UnRegisteredEntityException;
 import com.android.orm.exception.UnsupportedFieldTypeException;
 import com.android.orm.util.PersistenceUtil;
-import com.android.orm.util.ReflectionUtil;
 
 /**
  * contains static methods to use registry information
@@ -54,16 +62,34 @@ abstract class SqliteHelper {
 	// Therefore, CRATE TABLE statements should be in a correct order.
 	// ###########################################################################################################
 	/**
-	 * @return generated create statements for database
+	 * @return generated create statements for database, each CREATE TABLE is followed by CREATE INDEX statements of the table
 	 */
 	static final Set<String> generateCreateStatements() {
 		
-		Set<String> statements = new HashSet<String>();
+		// statements are executed in insertion order
+		Set<String> statements = new LinkedHashSet<String>();
 		// set foreign keys off at first
 		statements.add("PRAGMA foreign_keys = OFF;");
-		// keeps table names which already have create statements
-		Set<String> generatedTables = new HashSet<String>();
-		// first create statements for non dependent entities which does not have any foreign key.
+		for (TableMetaData tableMetaData : getTablesInCreateOrder()) {
+			statements.add(generateCreateTableStatement(tableMetaData, tableMetaData.getName()));
+			statements.addAll(generateIndexStatements(tableMetaData).values());
+		}
+		// cross tables refer to root tables of both entities
+		for (CrossTableMetaData crossTableMetaData : DatabaseAdapterFactory.getCrossTableRegistry().values())
+			statements.addAll(generateCrossTableStatements(crossTableMetaData).values());
+		statements.add("PRAGMA foreign_keys = ON;");
+		return statements;
+	}
+	
+	/**
+	 * @return registered tables ordered so that each table comes after the tables it refers to
+	 * @throws CircularReferenceException if tables refer to each other
+	 */
+	static final List<TableMetaData> getTablesInCreateOrder() {
+		List<TableMetaData> orderedTables = new ArrayList<TableMetaData>(DatabaseAdapterFactory.getTableRegistry().size());
+		// keeps table names which are already ordered
+		Set<String> orderedNames = new HashSet<String>();
+		// first non dependent entities which does not have any foreign key.
 		boolean hasNonDependentEntity = false;
 		for (String tableName : DatabaseAdapterFactory.getTableRegistry().keySet()) {
 			TableMetaData tableMetaData = DatabaseAdapterFactory.getTableMetaData(tableName);
@@ -71,86 +97,182 @@ abstract class SqliteHelper {
 			if (tableMetaData.hasForeignKey() || tableMetaData.isChild())
 				continue;
 			hasNonDependentEntity = true;
-			StringBuilder sqlBuilder = new StringBuilder();
-			addCreateStatementHeader(sqlBuilder, tableName);
-			for (ColumnMetaData columnMetaData : tableMetaData.getColumns()) {
-				sqlBuilder.append(", ");
-				sqlBuilder.append(columnMetaData.getColumnName());
-				sqlBuilder.append(" " + columnMetaData.getSqliteFieldType());
-				// if length value is specified for Text attr
-				if (columnMetaData.getSqliteFieldType().equals(OrmConstants.SQLITE_TEXT) && columnMetaData.length() > 0)
-					sqlBuilder.append("(" + columnMetaData.length() + ")");
-			}
-			sqlBuilder.append(", PRIMARY KEY(");
-			sqlBuilder.append(OrmConstants.PRIMARY_KEY_COLUMN_NAME);
-			sqlBuilder.append(" ASC )");
-			sqlBuilder.append(");");
-			statements.add(sqlBuilder.toString());
-			generatedTables.add(tableName);
+			orderTable(tableMetaData, orderedTables, orderedNames, new LinkedHashSet<String>());
 		}
 		// if all entities have foreing keys than its not possible to create tables
 		if (!hasNonDependentEntity)
 			throw new CircularReferenceException("All tables have foreign keys , required at least 1 table without foreign key");
-		// create statements for dependent entities
-		for (String tableName : DatabaseAdapterFactory.getTableRegistry().keySet()) {
-			TableMetaData tableMetaData = DatabaseAdapterFactory.getTableMetaData(tableName);
-			if (!tableMetaData.hasForeignKey() || generatedTables.contains(tableName))
-				continue;
-			generateCreateStatement(tableName, statements, generatedTables);
-		}
-		statements.add("PRAGMA foreign_keys = ON;");
+		// dependent entities
+		for (String tableName : DatabaseAdapterFactory.getTableRegistry().keySet())
+			if (!orderedNames.contains(tableName))
+				orderTable(DatabaseAdapterFactory.getTableMetaData(tableName), orderedTables, orderedNames, new LinkedHashSet<String>());
+		return orderedTables;
+	}
+	
+	/**
+	 * a link is kept once by the composite primary key, which also serves lookups by the first entity. Second column is indexed for lookups by the second entity.
+	 * 
+	 * @return CREATE TABLE and CREATE INDEX statements of the cross table, key:table or index name
+	 */
+	static final Map<String, String> generateCrossTableStatements(final CrossTableMetaData crossTableMetaData) {
+		String first = crossTableMetaData.getFirstColumnName();
+		String second = crossTableMetaData.getSecondColumnName();
+		StringBuilder sqlBuilder = new StringBuilder();
+		sqlBuilder.append("CREATE TABLE ").append(crossTableMetaData.getName().toUpperCase()).append("(");
+		sqlBuilder.append(first).append(" INTEGER NOT NULL, ");
+		sqlBuilder.append(second).append(" INTEGER NOT NULL, ");
+		sqlBuilder.append("PRIMARY KEY(").append(first).append(", ").append(second).append("), ");
+		sqlBuilder.append("FOREIGN KEY(").append(first).append(") REFERENCES ").append(getRootTableName(crossTableMetaData.getFirstTableNameEntityPair().second));
+		sqlBuilder.append("(").append(OrmConstants.PRIMARY_KEY_COLUMN_NAME).append(") ON DELETE CASCADE, ");
+		sqlBuilder.append("FOREIGN KEY(").append(second).append(") REFERENCES ").append(getRootTableName(crossTableMetaData.getSecondTableNameEntityPair().second));
+		sqlBuilder.append("(").append(OrmConstants.PRIMARY_KEY_COLUMN_NAME).append(") ON DELETE CASCADE);");
+		Map<String, String> statements = new LinkedHashMap<String, String>(2);
+		statements.put(crossTableMetaData.getName().toUpperCase(), sqlBuilder.toString());
+		String indexName = crossTableMetaData.getName().toUpperCase() + "_" + second;
+		statements.put(indexName, "CREATE INDEX " + indexName + " ON " + crossTableMetaData.getName().toUpperCase() + "(" + second + ");");
 		return statements;
 	}
 	
 	/**
-	 * recursive method , generates create statements for an entity and its dependent entities.
+	 * @return name of the table which generates ids of the entity
+	 */
+	private static final String getRootTableName(final Class<?> clazz) {
+		EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(clazz.getName());
+		if (entityMetaData == null)
+			throw new UnRegisteredEntityException(clazz.getName());
+		return entityMetaData.getMappedTables().iterator().next().getName().toUpperCase();
+	}
+	
+	/**
+	 * recursive method , orders a table after the tables it refers to.
 	 * 
-	 * @param entityName
-	 * @param statements
-	 * @param generatedEntities
+	 * @param tableMetaData
+	 * @param orderedTables
+	 * @param orderedNames
 	 * @param stack required this arg to detect circular references
 	 */
-	private static final void generateCreateStatement(final String entityName, final Set<String> statements, final Set<String> generatedEntities) {
-		EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(entityName);
-		if (entityMetaData == null)
-			throw new UnRegisteredEntityException(entityName);
-		// first generate create statements for dependentEntities
-		for (ForeignKeyMetaData foreignKeyMetaData : entityMetaData.dependentEntities.values()) {
-			// if create statement already generated for dependent entity skip it
-			if (generatedEntities.contains(foreignKeyMetaData.getReferenceEntityName()))
+	private static final void orderTable(final TableMetaData tableMetaData, final List<TableMetaData> orderedTables, final Set<String> orderedNames, final Set<String> stack) {
+		String tableName = tableMetaData.getName();
+		if (!stack.add(tableName))
+			throw new CircularReferenceException("tables " + stack + " refer to each other, CREATE TABLE statements can not be ordered");
+		// first order referenced tables
+		if (tableMetaData.isChild() && !orderedNames.contains(tableMetaData.getParent()))
+			orderTable(DatabaseAdapterFactory.getTableMetaData(tableMetaData.getParent()), orderedTables, orderedNames, stack);
+		for (ForeignKeyMetaData foreignKeyMetaData : tableMetaData.getForeignKeys().values()) {
+			String referencedTable = getReferencedTableName(foreignKeyMetaData);
+			// a table referring to itself does not wait for itself
+			if (referencedTable.equals(tableName) || orderedNames.contains(referencedTable))
 				continue;
-			// if create statement not generated , generate its statement before this one.
-			generateCreateStatement(foreignKeyMetaData.getReferenceEntityName(), statements, generatedEntities);
+			orderTable(DatabaseAdapterFactory.getTableMetaData(referencedTable), orderedTables, orderedNames, stack);
 		}
-		// after generating create statements for all dependents , we can continue for this entity
+		orderedTables.add(tableMetaData);
+		orderedNames.add(tableName);
+		stack.remove(tableName);
+	}
+	
+	/**
+	 * @param tableName name of the created table, differs from the table's name while a table is rebuilt by SchemaMigrator
+	 * @return CREATE TABLE statement of the table with its primary key and foreign keys
+	 */
+	static final String generateCreateTableStatement(final TableMetaData tableMetaData, final String tableName) {
 		StringBuilder sqlBuilder = new StringBuilder();
-		addCreateStatementHeader(sqlBuilder, entityName);
-		for (String columnName : entityMetaData.columnNames()) {
-			ColumnMetaData columnMetaData = entityMetaData.columns.get(columnName);
+		addCreateStatementHeader(sqlBuilder, tableName);
+		for (ColumnMetaData columnMetaData : tableMetaData.getColumns()) {
 			sqlBuilder.append(", ");
-			sqlBuilder.append(columnName);
-			sqlBuilder.append(" " + columnMetaData.getSqliteFieldType());
-			// if length value is specified for Text attr
-			if (columnMetaData.getSqliteFieldType().equals(OrmConstants.SQLITE_TEXT) && columnMetaData.length() > 0)
-				sqlBuilder.append("(" + columnMetaData.length() + ")");
+			sqlBuilder.append(generateColumnDefinition(columnMetaData));
 		}
 		// Primary Key definition
 		sqlBuilder.append(", PRIMARY KEY(");
 		sqlBuilder.append(OrmConstants.PRIMARY_KEY_COLUMN_NAME);
-		sqlBuilder.append(" " + entityMetaData.getPrimaryKeyMetaData().getOrderType() + ")");
+		sqlBuilder.append(" ASC )");
 		// foreign key definitions
-		for (String columnName : entityMetaData.getDependentEntities().keySet()) {
+		for (Map.Entry<String, ForeignKeyMetaData> foreignKey : tableMetaData.getForeignKeys().entrySet()) {
 			sqlBuilder.append(", FOREIGN KEY(");
-			sqlBuilder.append(columnName);
+			sqlBuilder.append(foreignKey.getKey());
 			sqlBuilder.append(") REFERENCES ");
-			ForeignKeyMetaData foreignKeyMetaData = entityMetaData.getDependentEntities().get(columnName);
-			sqlBuilder.append(foreignKeyMetaData.getReferenceEntityName());
-			sqlBuilder.append("(" + foreignKeyMetaData.getReferenceColumnName() + ")");
+			sqlBuilder.append(getReferencedTableName(foreignKey.getValue()).toUpperCase());
+			sqlBuilder.append("(" + foreignKey.getValue().getReferenceColumnName() + ")");
 		}
-		
 		sqlBuilder.append(");");
-		generatedEntities.add(entityName);
-		statements.add(sqlBuilder.toString());
+		return sqlBuilder.toString();
+	}
+	
+	/**
+	 * @return column name and type, e.g. name TEXT(20)
+	 */
+	static final String generateColumnDefinition(final ColumnMetaData columnMetaData) {
+		String definition = columnMetaData.getColumnName() + " " + columnMetaData.getSqliteFieldType();
+		// if length value is specified for Text attr
+		if (columnMetaData.getSqliteFieldType().equals(OrmConstants.SQLITE_TEXT) && columnMetaData.length() > 0)
+			definition += "(" + columnMetaData.length() + ")";
+		return definition;
+	}
+	
+	/**
+	 * an unnamed index is skipped if another index of the table starts with its columns, e.g. the index of a foreign key column which is the first column of a composite index
+	 * 
+	 * @return CREATE INDEX statements of the table in declaration order, key:index name
+	 * @throws EntityViolation if an index refers to a column which is not mapped to the table
+	 */
+	static final Map<String, String> generateIndexStatements(final TableMetaData tableMetaData) {
+		Set<String> columnNames = new HashSet<String>();
+		for (ColumnMetaData columnMetaData : tableMetaData.getColumns())
+			columnNames.add(columnMetaData.getColumnName());
+		columnNames.add(OrmConstants.PRIMARY_KEY_COLUMN_NAME);
+		List<IndexMetaData> generated = new ArrayList<IndexMetaData>();
+		Map<String, String> statements = new LinkedHashMap<String, String>();
+		for (IndexMetaData indexMetaData : tableMetaData.getIndexes()) {
+			for (String column : indexMetaData.getColumns())
+				if (!columnNames.contains(column))
+					throw new EntityViolation(tableMetaData.getName(), "has an index on column " + column + " which is not mapped to the table");
+			if (indexMetaData.getDeclaredName().equals("") && isCovered(indexMetaData, tableMetaData.getIndexes(), generated))
+				continue;
+			String indexName = indexMetaData.getName(tableMetaData.getName());
+			StringBuilder sqlBuilder = new StringBuilder(indexMetaData.isUnique() ? "CREATE UNIQUE INDEX " : "CREATE INDEX ");
+			sqlBuilder.append(indexName).append(" ON ").append(tableMetaData.getName().toUpperCase()).append("(");
+			for (int i = 0; i < indexMetaData.getColumns().size(); i++)
+				sqlBuilder.append(i == 0 ? "" : ", ").append(indexMetaData.getColumns().get(i));
+			sqlBuilder.append(");");
+			statements.put(indexName, sqlBuilder.toString());
+			generated.add(indexMetaData);
+		}
+		return statements;
+	}
+	
+	/**
+	 * @param generated indexes which already have statements, an index with the same columns is covered only by an earlier one
+	 */
+	private static final boolean isCovered(final IndexMetaData indexMetaData, final Collection<IndexMetaData> indexes, final List<IndexMetaData> generated) {
+		for (IndexMetaData other : indexes) {
+			if (other == indexMetaData || !indexMetaData.isCoveredBy(other))
+				continue;
+			if (other.getColumns().size() > indexMetaData.getColumns().size() || other.isUnique() || generated.contains(other))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return name of the table which has the referenced column of the foreign key
+	 */
+	static final String getReferencedTableName(final ForeignKeyMetaData foreignKeyMetaData) {
+		EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(foreignKeyMetaData.getReferenceEntityName());
+		if (entityMetaData == null)
+			throw new UnRegisteredEntityException(foreignKeyMetaData.getReferenceEntityName());
+		if (foreignKeyMetaData.isPrimaryKeyReference())
+			return entityMetaData.getMappedTables().iterator().next().getName();
+		return findTableName(entityMetaData, foreignKeyMetaData.getReferenceColumnName());
+	}
+	
+	/**
+	 * @return name of the mapped table of the entity which has the column
+	 */
+	static final String findTableName(final EntityMetaData entityMetaData, final String columnName) {
+		for (TableMetaData tableMetaData : entityMetaData.getMappedTables())
+			for (ColumnMetaData columnMetaData : tableMetaData.getColumns())
+				if (columnMetaData.getColumnName().equals(columnName))
+					return tableMetaData.getName();
+		throw new IllegalArgumentException(entityMetaData.getClazz().getName() + " has no column " + columnName);
 	}
 	
 	/**
@@ -177,13 +299,8 @@ abstract class SqliteHelper {
 	/**
 	 * @param entity
 	 * @return <String,ContentValues> which will be used in SqliteDatabase.insert method , key contains table name
-	 * @throws InvocationTargetException
-	 * @throws IllegalAccessException
-	 * @throws IllegalArgumentException
-	 * @throws NoSuchMethodException
-	 * @throws SecurityException
 	 */
-	static final Map<String,ContentValues> getContentValues(final Persistable obj) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException, SecurityException, NoSuchMethodException {
+	static final Map<String,ContentValues> getContentValues(final Persistable obj) {
 		
 		EntityMetaData entityMetaData = DatabaseAdapterFactory.getEntityMetaData(obj.getClass().getName());
 		if (entityMetaData == null)
@@ -191,75 +308,559 @@ abstract class SqliteHelper {
 		
 		Map<String,ContentValues> tableContentMap = new HashMap<String, ContentValues>(entityMetaData.getTableCount());
 		
+		EntityAccessor<Persistable> accessor = entityMetaData.getAccessor();
 		for (TableMetaData metaData : entityMetaData.getMappedTables()){
 			ContentValues values = new ContentValues();
+			int[] fields = entityMetaData.getFieldIndexes(metaData);
+			int i = 0;
 			for(ColumnMetaData columnMetaData : metaData.getColumns()){
-				addToContent(values, columnMetaData.getColumnName(), columnMetaData.getGetter().invoke(obj), columnMetaData);
+				// column of another entity sharing the table
+				if (fields[i] < 0)
+					values.putNull(columnMetaData.getColumnName());
+				else
+					addToContent(values, accessor.getValue(obj, fields[i]), columnMetaData);
+				i++;
 			}
+			tableContentMap.put(metaData.getName(), values);
 		}
-			
 		
-		return values;
+		return tableContentMap;
 	}
 	
 	/**
-	 * @throws NoSuchMethodException
-	 * @throws InvocationTargetException
-	 * @throws IllegalAccessException
-	 * @throws SecurityException
-	 * @throws IllegalArgumentException
+	 * @param previous values of the entity's row in EntityHydrator.snapshot format, null if they are not known
+	 * @return <String,ContentValues> of changed columns to be used in SqliteDatabase.update method, key contains table name. Tables without changes are not included, all columns of
+	 *         the entity are included if previous is null
 	 */
-	private static final void addToContent(final ContentValues values, final String columnName, final Object value, final ColumnMetaData columnMetaData) throws IllegalArgumentException, SecurityException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-		if (value == null && !columnMetaData.isNullable())
-			throw new ColumnNotNullableException(columnName);
-		if (value == null)
-			return;
-		else if (value instanceof String)
-			values.put(columnName, (String) value);
-		else if (value instanceof Long)
-			values.put(columnName, (Long) value);
-		else if (value instanceof Integer)
-			values.put(columnName, (Integer) value);
-		else if (value instanceof Short)
-			values.put(columnName, (Short) value);
-		else if (value instanceof Byte)
-			values.put(columnName, (Byte) value);
-		else if (value instanceof Boolean)
-			values.put(columnName, (Boolean) value);
-		else if (value instanceof Double)
-			values.put(columnName, (Double) value);
-		else if (value instanceof Float)
-			values.put(columnName, (Float) value);
-		else if (value instanceof byte[])
-			values.put(columnName, (byte[]) value);
-		else if (Enum.class.isAssignableFrom(value.getClass()))
-			values.put(columnName, Enum.class.cast(value).name());
-		else if (value instanceof Persistable) {
-			if (columnMetaData.isForeignKey()
-					&& !columnMetaData.getForeignKeyMetaData().getReferenceFieldName().equals(OrmConstants.DEFAULT_FOREIGN_KEY_REFERENCE)) {
-				addToContent(values, columnName, ReflectionUtil.invokeGetMethod(value, columnMetaData.getForeignKeyMetaData().getReferenceFieldName(), columnMetaData.getForeignKeyMetaData().getReferenceFieldType()), columnMetaData);
+	static final Map<String, ContentValues> getChangedContentValues(final EntityMetaData entityMetaData, final Persistable obj, final Object[] previous) {
+		EntityHydrator hydrator = entityMetaData.getHydrator();
+		Object[] current = previous == null ? null : hydrator.snapshot(obj);
+		Map<String, ContentValues> tableContentMap = new HashMap<String, ContentValues>(entityMetaData.getTableCount());
+		EntityAccessor<Persistable> accessor = entityMetaData.getAccessor();
+		// position of the column in snapshot, columns are in mapped table order
+		int position = 0;
+		for (TableMetaData metaData : entityMetaData.getMappedTables()) {
+			ContentValues values = null;
+			int[] fields = entityMetaData.getFieldIndexes(metaData);
+			int i = 0;
+			for (ColumnMetaData columnMetaData : metaData.getColumns()) {
+				// columns of another entity sharing the table are not updated
+				if (fields[i] >= 0 && (previous == null || hydrator.isChanged(previous, current, position))) {
+					if (values == null)
+						values = new ContentValues();
+					addToContent(values, accessor.getValue(obj, fields[i]), columnMetaData);
+				}
+				i++;
+				position++;
 			}
-			else
-				values.put(columnName, ((Persistable) value).getId());
+			if (values != null)
+				tableContentMap.put(metaData.getName(), values);
+		}
+		return tableContentMap;
+	}
+	
+	/**
+	 * puts value to content dispatching on the column type resolved by registry
+	 */
+	static final void addToContent(final ContentValues values, final Object value, final ColumnMetaData columnMetaData) {
+		String columnName = columnMetaData.getColumnName();
+		ColumnType columnType = columnMetaData.getColumnType();
+		Object columnValue = value;
+		if (columnValue != null && columnType == ColumnType.ENTITY) {
+			columnValue = columnMetaData.getForeignKeyMetaData().getReferenceValue((Persistable) columnValue);
+			columnType = columnMetaData.getForeignKeyMetaData().getReferenceColumnType();
+		}
+		if (columnValue == null) {
+			if (!columnMetaData.isNullable())
+				throw new ColumnNotNullableException(columnName);
+			values.putNull(columnName);
+			return;
+		}
+		switch (columnType) {
+			case STRING:
+				values.put(columnName, (String) columnValue);
+				break;
+			case LONG:
+				values.put(columnName, (Long) columnValue);
+				break;
+			case INTEGER:
+				values.put(columnName, (Integer) columnValue);
+				break;
+			case SHORT:
+				values.put(columnName, (Short) columnValue);
+				break;
+			case BYTE:
+				values.put(columnName, (Byte) columnValue);
+				break;
+			case BOOLEAN:
+				values.put(columnName, (Boolean) columnValue);
+				break;
+			case DOUBLE:
+				values.put(columnName, (Double) columnValue);
+				break;
+			case FLOAT:
+				values.put(columnName, (Float) columnValue);
+				break;
+			case BLOB:
+				values.put(columnName, (byte[]) columnValue);
+				break;
+			case ENUM:
+				values.put(columnName, ((Enum<?>) columnValue).name());
+				break;
+			case DATE:
+			case SQL_DATE:
+				values.put(columnName, ((java.util.Date) columnValue).getTime());
+				break;
+			default:
+				throw new UnsupportedFieldTypeException(columnValue.getClass().getName());
 		}
-		else
-			throw new UnsupportedFieldTypeException(value.getClass().getName());
 	}
 	
 	// ###########################################################################################################
 	// END OF GET CONTENT VALUES FOR SQLITEDATABASE INSERT
 	// ###########################################################################################################
 	
+	// ###########################################################################################################
+	// COMPILED STATEMENTS FOR BATCH INSERT
+	// each mapped table has one INSERT statement, it is compiled once per batch and values are bound by index.
+	// _id is always the first parameter, binding null to it lets sqlite assign the rowid for the root table.
+	// ###########################################################################################################
 	/**
-	 * generates DROP TABLE statements
+	 * @param tableMetaData
+	 * @return INSERT INTO TABLE(_id, column1, column2 ...) VALUES (?, ?, ? ...);
 	 */
-	static final Set<String> generateDropStatements() {
-		Set<String> entities = DatabaseAdapterFactory.getRegistryData().keySet();
-		Set<String> statements = new HashSet<String>();
-		for (String entity : entities)
-			statements.add("DROP TABLE IF EXISTS " + entity);
-		return statements;
+	static final String generateInsertStatement(final TableMetaData tableMetaData) {
+		StringBuilder sqlBuilder = new StringBuilder();
+		StringBuilder parameterBuilder = new StringBuilder("?");
+		sqlBuilder.append("INSERT INTO ");
+		sqlBuilder.append(tableMetaData.getName().toUpperCase());
+		sqlBuilder.append("(");
+		sqlBuilder.append(OrmConstants.PRIMARY_KEY_COLUMN_NAME);
+		for (ColumnMetaData columnMetaData : tableMetaData.getColumns()) {
+			sqlBuilder.append(", ");
+			sqlBuilder.append(columnMetaData.getColumnName());
+			parameterBuilder.append(", ?");
+		}
+		sqlBuilder.append(") VALUES (");
+		sqlBuilder.append(parameterBuilder);
+		sqlBuilder.append(");");
+		return sqlBuilder.toString();
+	}
+	
+	/**
+	 * binds _id and column values of the entity to the insert statement of the table through the entity's accessor
+	 * 
+	 * @param statement compiled from tableMetaData.getInsertStatement()
+	 * @param id if null sqlite will generate a new row id
+	 */
+	static final void bindInsertValues(final SQLiteStatement statement, final EntityMetaData entityMetaData, final TableMetaData tableMetaData, final Persistable obj, final Long id) {
+		if (id == null)
+			statement.bindNull(1);
+		else
+			statement.bindLong(1, id);
+		EntityAccessor<Persistable> accessor = entityMetaData.getAccessor();
+		int[] fields = entityMetaData.getFieldIndexes(tableMetaData);
+		for (int i = 0; i < fields.length; i++) {
+			// column of another entity sharing the table
+			if (fields[i] < 0)
+				statement.bindNull(i + 2);
+			else
+				accessor.bind(obj, fields[i], statement, i + 2);
+		}
 	}
+	
+	/**
+	 * statement equivalent of addToContent, null values are bound explicitly since statements are reused between rows.
+	 */
+	static final void bindToStatement(final SQLiteStatement statement, final int index, final Object value, final ColumnMetaData columnMetaData) {
+		ColumnType columnType = columnMetaData.getColumnType();
+		Object columnValue = value;
+		if (columnValue != null && columnType == ColumnType.ENTITY) {
+			columnValue = columnMetaData.getForeignKeyMetaData().getReferenceValue((Persistable) columnValue);
+			columnType = columnMetaData.getForeignKeyMetaData().getReferenceColumnType();
+		}
+		if (columnValue == null) {
+			if (!columnMetaData.isNullable())
+				throw new ColumnNotNullableException(columnMetaData.getColumnName());
+			statement.bindNull(index);
+			return;
+		}
+		switch (columnType) {
+			case STRING:
+				statement.bindString(index, (String) columnValue);
+				break;
+			case LONG:
+			case INTEGER:
+			case SHORT:
+			case BYTE:
+				statement.bindLong(index, ((Number) columnValue).longValue());
+				break;
+			case BOOLEAN:
+				statement.bindLong(index, ((Boolean) columnValue) ? 1 : 0);
+				break;
+			case DOUBLE:
+			case FLOAT:
+				statement.bindDouble(index, ((Number) columnValue).doubleValue());
+				break;
+			case BLOB:
+				statement.bindBlob(index, (byte[]) columnValue);
+				break;
+			case ENUM:
+				statement.bindString(index, ((Enum<?>) columnValue).name());
+				break;
+			case DATE:
+			case SQL_DATE:
+				statement.bindLong(index, ((java.util.Date) columnValue).getTime());
+				break;
+			default:
+				throw new UnsupportedFieldTypeException(columnValue.getClass().getName());
+		}
+	}
+	
+	/**
+	 * query of upsert deciding whether the row of an _id is inserted or updated, a conflict clause would also ignore NOT NULL and CHECK violations
+	 * 
+	 * @return SELECT COUNT(*) FROM TABLE WHERE _id = ?;
+	 */
+	static final String generateExistsQuery(final TableMetaData tableMetaData) {
+		return "SELECT COUNT(*) FROM " + tableMetaData.getName().toUpperCase() + " WHERE " + OrmConstants.PRIMARY_KEY_COLUMN_NAME + " = ?;";
+	}
+	
+	/**
+	 * @return UPDATE TABLE SET column1 = ?, column2 = ? ... WHERE _id = ?; null if table has no columns besides _id
+	 */
+	static final String generateUpdateStatement(final TableMetaData tableMetaData) {
+		if (tableMetaData.getColumns().isEmpty())
+			return null;
+		StringBuilder sqlBuilder = new StringBuilder();
+		sqlBuilder.append("UPDATE ");
+		sqlBuilder.append(tableMetaData.getName().toUpperCase());
+		sqlBuilder.append(" SET ");
+		boolean first = true;
+		for (ColumnMetaData columnMetaData : tableMetaData.getColumns()) {
+			if (!first)
+				sqlBuilder.append(", ");
+			sqlBuilder.append(columnMetaData.getColumnName());
+			sqlBuilder.append(" = ?");
+			first = false;
+		}
+		sqlBuilder.append(" WHERE ");
+		sqlBuilder.append(OrmConstants.PRIMARY_KEY_COLUMN_NAME);
+		sqlBuilder.append(" = ?;");
+		return sqlBuilder.toString();
+	}
+	
+	/**
+	 * @param values changed columns of the table, see getChangedContentValues
+	 * @return UPDATE TABLE SET column1 = ? ... WHERE _id = ?; with the changed columns in getColumns() order, so the same changes give the same statement
+	 */
+	static final String generateUpdateStatement(final TableMetaData tableMetaData, final ContentValues values) {
+		StringBuilder sqlBuilder = new StringBuilder();
+		sqlBuilder.append("UPDATE ");
+		sqlBuilder.append(tableMetaData.getName().toUpperCase());
+		sqlBuilder.append(" SET ");
+		boolean first = true;
+		for (ColumnMetaData columnMetaData : tableMetaData.getColumns()) {
+			if (!values.containsKey(columnMetaData.getColumnName()))
+				continue;
+			if (!first)
+				sqlBuilder.append(", ");
+			sqlBuilder.append(columnMetaData.getColumnName());
+			sqlBuilder.append(" = ?");
+			first = false;
+		}
+		sqlBuilder.append(" WHERE ");
+		sqlBuilder.append(OrmConstants.PRIMARY_KEY_COLUMN_NAME);
+		sqlBuilder.append(" = ?;");
+		return sqlBuilder.toString();
+	}
+	
+	/**
+	 * binds changed values and id to the statement generated by generateUpdateStatement(TableMetaData, ContentValues)
+	 */
+	static final void bindUpdateValues(final SQLiteStatement statement, final TableMetaData tableMetaData, final ContentValues values, final long id) {
+		int index = 1;
+		for (ColumnMetaData columnMetaData : tableMetaData.getColumns()) {
+			if (!values.containsKey(columnMetaData.getColumnName()))
+				continue;
+			Object value = values.get(columnMetaData.getColumnName());
+			// values are already converted by addToContent
+			if (value == null)
+				statement.bindNull(index);
+			else if (value instanceof byte[])
+				statement.bindBlob(index, (byte[]) value);
+			else if (value instanceof Double || value instanceof Float)
+				statement.bindDouble(index, ((Number) value).doubleValue());
+			else if (value instanceof Number)
+				statement.bindLong(index, ((Number) value).longValue());
+			else if (value instanceof Boolean)
+				statement.bindLong(index, ((Boolean) value) ? 1 : 0);
+			else
+				statement.bindString(index, value.toString());
+			index++;
+		}
+		statement.bindLong(index, id);
+	}
+	
+	/**
+	 * binds column values of the entity and its id to the statement generated by generateUpdateStatement
+	 */
+	static final void bindUpdateValues(final SQLiteStatement statement, final EntityMetaData entityMetaData, final TableMetaData tableMetaData, final Persistable obj) {
+		EntityAccessor<Persistable> accessor = entityMetaData.getAccessor();
+		int[] fields = entityMetaData.getFieldIndexes(tableMetaData);
+		for (int i = 0; i < fields.length; i++) {
+			if (fields[i] < 0)
+				statement.bindNull(i + 1);
+			else
+				accessor.bind(obj, fields[i], statement, i + 1);
+		}
+		statement.bindLong(fields.length + 1, obj.getId());
+	}
+	
+	/**
+	 * @param whereClause condition without WHERE keyword, e.g. generateInClause
+	 * @return DELETE FROM TABLE WHERE whereClause;
+	 */
+	static final String generateDeleteStatement(final String tableName, final String whereClause) {
+		return "DELETE FROM " + tableName.toUpperCase() + " WHERE " + whereClause + ";";
+	}
+	
+	/**
+	 * binds values from index 1 as strings, like selection arguments of SQLiteDatabase.delete
+	 */
+	static final void bindStrings(final SQLiteStatement statement, final List<String> values) {
+		for (int i = 0; i < values.size(); i++)
+			statement.bindString(i + 1, values.get(i));
+	}
+	
+	/**
+	 * @param count number of values, should not be greater than OrmConstants.SQLITE_MAX_VARIABLE_NUMBER
+	 * @return column IN (?, ? ...)
+	 */
+	static final String generateInClause(final String column, final int count) {
+		StringBuilder sqlBuilder = new StringBuilder(column.length() + 6 + 3 * count);
+		sqlBuilder.append(column);
+		sqlBuilder.append(" IN (?");
+		for (int i = 1; i < count; i++)
+			sqlBuilder.append(", ?");
+		sqlBuilder.append(")");
+		return sqlBuilder.toString();
+	}
+	
+	/**
+	 * @return SELECT IFNULL(MAX(_id), 0) FROM TABLE WHERE key1 = ? AND key2 = ? ; returns NOT_PERSISTED_ID if there is no row with the natural key
+	 */
+	static final String generateNaturalKeyQuery(final EntityMetaData entityMetaData) {
+		StringBuilder sqlBuilder = new StringBuilder();
+		sqlBuilder.append("SELECT IFNULL(MAX(");
+		sqlBuilder.append(OrmConstants.PRIMARY_KEY_COLUMN_NAME);
+		sqlBuilder.append("), ");
+		sqlBuilder.append(OrmConstants.NOT_PERSISTED_ID);
+		sqlBuilder.append(") FROM ");
+		sqlBuilder.append(entityMetaData.getNaturalKeyTable().getName().toUpperCase());
+		sqlBuilder.append(" WHERE ");
+		ColumnMetaData[] columns = entityMetaData.getNaturalKeyColumns();
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0)
+				sqlBuilder.append(" AND ");
+			sqlBuilder.append(columns[i].getColumnName());
+			sqlBuilder.append(" = ?");
+		}
+		sqlBuilder.append(";");
+		return sqlBuilder.toString();
+	}
+	
+	// ###########################################################################################################
+	// END OF COMPILED STATEMENTS FOR BATCH INSERT
+	// ###########################################################################################################
+	
+	/**
+	 * reads column value at index converting it to the field type of the column. for foreign keys reference value is returned.
+	 * 
+	 * @return value of the column or null
+	 */
+	static final Object readFromCursor(final Cursor cursor, final int index, final ColumnMetaData columnMetaData) {
+		ColumnType columnType = columnMetaData.getColumnType();
+		if (columnType == ColumnType.ENTITY)
+			return readFromCursor(cursor, index, columnMetaData.getForeignKeyMetaData().getReferenceColumnType(), columnMetaData.getForeignKeyMetaData().getReferenceFieldType());
+		return readFromCursor(cursor, index, columnType, columnMetaData.getFieldType());
+	}
+	
+	/**
+	 * @param fieldType required for ENUM and DATE types
+	 */
+	static final Object readFromCursor(final Cursor cursor, final int index, final ColumnType columnType, final Class<?> fieldType) {
+		if (cursor.isNull(index))
+			return null;
+		switch (columnType) {
+			case STRING:
+				return cursor.getString(index);
+			case LONG:
+				return cursor.getLong(index);
+			case INTEGER:
+				return cursor.getInt(index);
+			case SHORT:
+				return cursor.getShort(index);
+			case BYTE:
+				return (byte) cursor.getInt(index);
+			case BOOLEAN:
+				return cursor.getInt(index) != 0;
+			case DOUBLE:
+				return cursor.getDouble(index);
+			case FLOAT:
+				return cursor.getFloat(index);
+			case BLOB:
+				return cursor.getBlob(index);
+			case ENUM:
+				return enumValueOf(fieldType, cursor.getString(index));
+			case DATE:
+				return new java.util.Date(cursor.getLong(index));
+			case SQL_DATE:
+				return new Date(cursor.getLong(index));
+			default:
+				throw new UnsupportedFieldTypeException(fieldType.getName());
+		}
+	}
+	
+	/**
+	 * reads remaining rows of the cursor to maps keyed by column name in column order. Values are read by their storage class as Long, Double, String or byte[], Cursor.getType is not
+	 * available before api 11 so the storage class is asked to the cursor window.
+	 * 
+	 * @return rows of the cursor
+	 */
+	static final List<Map<String, Object>> readRows(final Cursor cursor) {
+		String[] names = cursor.getColumnNames();
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(Math.max(cursor.getCount(), 0));
+		AbstractWindowedCursor windowed = cursor instanceof AbstractWindowedCursor ? (AbstractWindowedCursor) cursor : null;
+		while (cursor.moveToNext()) {
+			Map<String, Object> row = new LinkedHashMap<String, Object>(names.length * 2);
+			for (int i = 0; i < names.length; i++) {
+				Object value;
+				if (cursor.isNull(i))
+					value = null;
+				else if (windowed == null)
+					value = cursor.getString(i);
+				else if (windowed.isLong(i))
+					value = cursor.getLong(i);
+				else if (windowed.isFloat(i))
+					value = cursor.getDouble(i);
+				else if (windowed.isBlob(i))
+					value = cursor.getBlob(i);
+				else
+					value = cursor.getString(i);
+				row.put(names[i], value);
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+	
+	/**
+	 * converts a column value to a selection argument of SQLiteDatabase.rawQuery, values are written as they are stored by bindToStatement
+	 */
+	static final String toSelectionArg(final Object value, final ColumnType columnType) {
+		switch (columnType) {
+			case BOOLEAN:
+				return ((Boolean) value) ? "1" : "0";
+			case ENUM:
+				return ((Enum<?>) value).name();
+			case DATE:
+			case SQL_DATE:
+				return String.valueOf(((java.util.Date) value).getTime());
+			case ENTITY:
+				return String.valueOf(((Persistable) value).getId());
+			default:
+				return value.toString();
+		}
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static final Object enumValueOf(final Class<?> enumType, final String name) {
+		return Enum.valueOf((Class<? extends Enum>) enumType, name);
+	}
+	
+	// ###########################################################################################################
+	// CONNECTION CONFIGURATION
+	// PRAGMA statements are run with rawQuery, execSQL fails for statements returning a row on older api levels.
+	// ###########################################################################################################
+	/**
+	 * applies settings of the writer connection. journal mode and page size are persistent, others are per connection.
+	 */
+	static final void configureWriter(final SQLiteDatabase db, final AdapterConfiguration configuration) {
+		Integer pageSize = configuration.getPageSize();
+		if (pageSize != null && pageSize.longValue() != db.getPageSize() && !"wal".equalsIgnoreCase(pragma(db, "journal_mode"))) {
+			// page size of an existing database changes only by rebuilding it
+			pragma(db, "page_size = " + pageSize);
+			db.execSQL("VACUUM");
+		}
+		if (configuration.isWriteAheadLogging())
+			pragma(db, "journal_mode = WAL");
+		if (configuration.getSynchronous() != null)
+			pragma(db, "synchronous = " + configuration.getSynchronous().name());
+		configureReader(db, configuration);
+	}
+	
+	/**
+	 * applies per connection settings of a read connection
+	 */
+	static final void configureReader(final SQLiteDatabase db, final AdapterConfiguration configuration) {
+		if (configuration.getCacheSize() != null)
+			pragma(db, "cache_size = " + configuration.getCacheSize());
+		if (configuration.getMmapSize() != null)
+			pragma(db, "mmap_size = " + configuration.getMmapSize());
+		if (configuration.getTempStore() != null)
+			pragma(db, "temp_store = " + configuration.getTempStore().name());
+	}
+	
+	/**
+	 * @param requested settings of the adapter which are not kept by sqlite are copied from it
+	 * @return settings in effect on the connection, settings sqlite does not support are null
+	 */
+	static final AdapterConfiguration readConfiguration(final SQLiteDatabase db, final AdapterConfiguration requested) {
+		AdapterConfiguration configuration = new AdapterConfiguration();
+		configuration.setReadConnections(requested.getReadConnections());
+		configuration.setGroupCommitSize(requested.getGroupCommitSize());
+		configuration.setGroupCommitDelay(requested.getGroupCommitDelay());
+		configuration.setFetchBatchSize(requested.getFetchBatchSize());
+		configuration.setRegistrySnapshot(requested.isRegistrySnapshot());
+		configuration.setStatementCacheSize(requested.getStatementCacheSize());
+		configuration.setWriteAheadLogging("wal".equalsIgnoreCase(pragma(db, "journal_mode")));
+		String synchronous = pragma(db, "synchronous");
+		if (synchronous != null) {
+			int level = Integer.parseInt(synchronous);
+			// EXTRA(3) is reported as FULL
+			configuration.setSynchronous(AdapterConfiguration.Synchronous.values()[Math.min(level, AdapterConfiguration.Synchronous.values().length - 1)]);
+		}
+		String cacheSize = pragma(db, "cache_size");
+		if (cacheSize != null)
+			configuration.setCacheSize(Integer.valueOf(cacheSize));
+		String mmapSize = pragma(db, "mmap_size");
+		if (mmapSize != null)
+			configuration.setMmapSize(Long.valueOf(mmapSize));
+		String tempStore = pragma(db, "temp_store");
+		if (tempStore != null)
+			configuration.setTempStore(AdapterConfiguration.TempStore.values()[Integer.parseInt(tempStore)]);
+		String pageSize = pragma(db, "page_size");
+		if (pageSize != null)
+			configuration.setPageSize(Integer.valueOf(pageSize));
+		return configuration;
+	}
+	
+	/**
+	 * @return first column of the first row returned by the pragma, null if it returns no row
+	 */
+	static final String pragma(final SQLiteDatabase db, final String pragma) {
+		Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+		try {
+			if (cursor.moveToFirst())
+				return cursor.getString(0);
+			return null;
+		}
+		finally {
+			cursor.close();
+		}
+	}
+	
 	/**
 	 * 
 	 * @param clazz
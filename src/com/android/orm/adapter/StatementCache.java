@@ -0,0 +1,97 @@
+package com.android.orm.adapter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * compiled statements of a connection keyed by SQL text, least recently used statement is closed when the cache is full. Writes of the adapter get their statements from the writer's
+ * cache, so a statement is compiled once per connection instead of once per call or batch.
+ * <p>
+ * a statement returned by get is owned by the cache, it should not be closed and should be executed before the next get since that may evict it. Statements should be used by the thread
+ * which holds the transaction of the connection.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+final class StatementCache {
+	
+	private static final String CHANGES_QUERY = "SELECT changes();";
+	
+	private final SQLiteDatabase dataBase;
+	
+	private final int capacity;
+	
+	// access ordered, key:sql
+	private final LinkedHashMap<String, SQLiteStatement> statements;
+	
+	private long hitCount = 0;
+	
+	private long missCount = 0;
+	
+	private long evictionCount = 0;
+	
+	/**
+	 * @param capacity maximum number of compiled statements, at least 1
+	 */
+	StatementCache(SQLiteDatabase dataBase, int capacity) {
+		this.dataBase = dataBase;
+		this.capacity = capacity;
+		this.statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true);
+	}
+	
+	/**
+	 * @return compiled statement of the sql without bound values
+	 */
+	final synchronized SQLiteStatement get(final String sql) {
+		SQLiteStatement statement = this.statements.get(sql);
+		if (statement != null) {
+			this.hitCount++;
+			statement.clearBindings();
+			return statement;
+		}
+		this.missCount++;
+		statement = this.dataBase.compileStatement(sql);
+		this.statements.put(sql, statement);
+		// the statement just compiled is the most recently used one, it is never evicted here
+		Iterator<SQLiteStatement> iterator = this.statements.values().iterator();
+		while (this.statements.size() > this.capacity) {
+			iterator.next().close();
+			iterator.remove();
+			this.evictionCount++;
+		}
+		return statement;
+	}
+	
+	/**
+	 * @return number of rows changed by the last INSERT, UPDATE or DELETE of the connection. SQLiteStatement.executeUpdateDelete is not available before api 11.
+	 */
+	final long changes() {
+		return get(CHANGES_QUERY).simpleQueryForLong();
+	}
+	
+	/**
+	 * connection of the statements, used for queries returning cursors
+	 */
+	final SQLiteDatabase getDataBase() {
+		return this.dataBase;
+	}
+	
+	/**
+	 * @return hit, miss and eviction counts of get and number of compiled statements, bytes are not measured
+	 */
+	final synchronized CacheStatistics getStatistics() {
+		return new CacheStatistics(this.hitCount, this.missCount, this.evictionCount, this.statements.size(), 0);
+	}
+	
+	/**
+	 * closes compiled statements, should be called before the connection is closed
+	 */
+	final synchronized void close() {
+		for (SQLiteStatement statement : this.statements.values())
+			statement.close();
+		this.statements.clear();
+	}
+}
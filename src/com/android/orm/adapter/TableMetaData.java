@@ -1,10 +1,15 @@
 package com.android.orm.adapter;
 
 import java.util.HashMap;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
+import com.android.orm.OrmConstants;
+
 final class TableMetaData {
 	
 	private String name = null;
@@ -12,6 +17,7 @@ final class TableMetaData {
 	// key:columnName
 	private final Map<String, ForeignKeyMetaData> foreignKeys;
 	
+	// insertion ordered, statement parameters are bound in this order
 	private final Set<ColumnMetaData> columns;
 	
 	// private final PrimaryKeyMetaData primaryKeyMetaData;
@@ -20,19 +26,32 @@ final class TableMetaData {
 	
 	private final Set<String> crossTables;
 	
+	// declaration ordered, key:declared name or column names
+	private final Map<String, IndexMetaData> indexes;
+	
 	private String parentTableName = null;
 	
 	private final Set<String> children;
 	
+	// generated once on first use, columns can not change after registry creation
+	private String insertStatement = null;
+	
+	private String existsQuery = null;
+	
+	private String updateStatement = null;
+	
+	private String deleteStatement = null;
+	
 	public TableMetaData() {
 		this.foreignKeys = new HashMap<String, ForeignKeyMetaData>();
-		this.columns = new HashSet<ColumnMetaData>();
+		this.columns = new LinkedHashSet<ColumnMetaData>();
 		this.children = new HashSet<String>(0);
 		this.crossTables = new HashSet<String>(0);
+		this.indexes = new LinkedHashMap<String, IndexMetaData>(0);
 	}
 	
 	final boolean hasForeignKey() {
-		return this.foreignKeys != null;
+		return !this.foreignKeys.isEmpty();
 	}
 	
 	final boolean isChild() {
@@ -40,7 +59,7 @@ final class TableMetaData {
 	}
 	
 	final boolean hasCrossTable() {
-		return this.crossTables.size() == 0;
+		return this.crossTables.size() != 0;
 	}
 	
 	/**
@@ -49,12 +68,9 @@ final class TableMetaData {
 	 * @param parent
 	 */
 	final void setParent(String parentTableName) {
-		if (this.parentTableName == null) {
-			synchronized (this.parentTableName) {
-				if (this.parentTableName == null)
-					this.parentTableName = parentTableName;
-			}
-		}
+		// registry is generated in a single thread, no need to synchronize
+		if (this.parentTableName == null)
+			this.parentTableName = parentTableName;
 		// TODO already has parent
 	}
 	
@@ -86,6 +102,57 @@ final class TableMetaData {
 			this.foreignKeys.put(columnMetaData.getColumnName(), columnMetaData.getForeignKeyMetaData());
 	}
 	
+	/**
+	 * adds the index unless an index with the same name or, for unnamed indexes, the same columns is already added. An unnamed unique index replaces an unnamed index of the same
+	 * columns which is not unique.
+	 */
+	final void addIndex(IndexMetaData indexMetaData) {
+		String key = indexMetaData.getDeclaredName().equals("") ? indexMetaData.getColumns().toString() : indexMetaData.getDeclaredName();
+		IndexMetaData existing = this.indexes.get(key);
+		if (existing == null || (indexMetaData.isUnique() && !existing.isUnique() && indexMetaData.getDeclaredName().equals("")))
+			this.indexes.put(key, indexMetaData);
+	}
+	
+	final Collection<IndexMetaData> getIndexes() {
+		return this.indexes.values();
+	}
+	
+	/**
+	 * @return INSERT statement with one bind parameter for _id followed by one for each column in getColumns() order.
+	 */
+	final String getInsertStatement() {
+		if (this.insertStatement == null)
+			this.insertStatement = SqliteHelper.generateInsertStatement(this);
+		return this.insertStatement;
+	}
+	
+	/**
+	 * @return query of upsert counting rows of an _id, see SqliteHelper.generateExistsQuery
+	 */
+	final String getExistsQuery() {
+		if (this.existsQuery == null)
+			this.existsQuery = SqliteHelper.generateExistsQuery(this);
+		return this.existsQuery;
+	}
+	
+	/**
+	 * @return UPDATE statement of all columns by _id, null if table has no columns besides _id
+	 */
+	final String getUpdateStatement() {
+		if (this.updateStatement == null)
+			this.updateStatement = SqliteHelper.generateUpdateStatement(this);
+		return this.updateStatement;
+	}
+	
+	/**
+	 * @return DELETE statement of a row by _id
+	 */
+	final String getDeleteStatement() {
+		if (this.deleteStatement == null)
+			this.deleteStatement = SqliteHelper.generateDeleteStatement(this.name, OrmConstants.PRIMARY_KEY_COLUMN_NAME + " = ?");
+		return this.deleteStatement;
+	}
+	
 	public String getName() {
 		return name;
 	}
@@ -107,12 +174,8 @@ final class TableMetaData {
 	}
 	
 	public void setName(String name) {
-		if (this.name == null) {
-			synchronized (this.name) {
-				if (this.name == null)
-					this.name = name;
-			}
-		}
+		if (this.name == null)
+			this.name = name;
 	}
 	
 	/**
@@ -122,14 +185,23 @@ final class TableMetaData {
 	 */
 	public void merge(TableMetaData metaData) {
 		// can not merge different tables
-		if (this.name != metaData.name)
+		if (!this.name.equals(metaData.name))
 			return;
+		// columns of other entities mapped to the same table
+		Set<String> columnNames = new HashSet<String>();
+		for (ColumnMetaData columnMetaData : this.columns)
+			columnNames.add(columnMetaData.getColumnName());
+		for (ColumnMetaData columnMetaData : metaData.columns)
+			if (!columnNames.contains(columnMetaData.getColumnName()))
+				addColumn(columnMetaData);
 		// if childData already exist
 		for (String child : metaData.children)
 			this.children.add(child);
 		// cross tables
 		for (String crossTableName : metaData.crossTables)
 			this.crossTables.add(crossTableName);
+		for (IndexMetaData indexMetaData : metaData.indexes.values())
+			addIndex(indexMetaData);
 		
 	}
 	
@@ -0,0 +1,100 @@
+package com.android.orm.adapter;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.android.orm.Persistable;
+
+/**
+ * weak identity set of lazy reference stubs which are not loaded yet. A stub has only its reference value, writing it would overwrite its row with default values so writes refuse
+ * stubs in this set. A stub leaves the set when its row is hydrated into it.
+ * <p>
+ * entities are compared by identity, equals of an entity may match a stub with its loaded instance. Stubs are kept with weak references so unused stubs can be garbage collected.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+final class UnloadedReferences {
+	
+	// key:identity hash code of the stub
+	private static final Map<Integer, List<StubReference>> STUBS = new HashMap<Integer, List<StubReference>>();
+	
+	private static final ReferenceQueue<Persistable> QUEUE = new ReferenceQueue<Persistable>();
+	
+	private UnloadedReferences() {
+	}
+	
+	static final synchronized void add(final Persistable stub) {
+		expungeStaleEntries();
+		Integer hash = System.identityHashCode(stub);
+		List<StubReference> stubs = STUBS.get(hash);
+		if (stubs == null) {
+			stubs = new ArrayList<StubReference>(1);
+			STUBS.put(hash, stubs);
+		}
+		stubs.add(new StubReference(stub, hash));
+	}
+	
+	/**
+	 * @return true if entity is a stub whose row is not loaded
+	 */
+	static final synchronized boolean contains(final Persistable entity) {
+		if (STUBS.isEmpty())
+			return false;
+		List<StubReference> stubs = STUBS.get(System.identityHashCode(entity));
+		if (stubs == null)
+			return false;
+		for (StubReference stub : stubs)
+			if (stub.get() == entity)
+				return true;
+		return false;
+	}
+	
+	/**
+	 * marks the stub as loaded
+	 */
+	static final synchronized void remove(final Persistable entity) {
+		Integer hash = System.identityHashCode(entity);
+		List<StubReference> stubs = STUBS.get(hash);
+		if (stubs == null)
+			return;
+		Iterator<StubReference> iterator = stubs.iterator();
+		while (iterator.hasNext()) {
+			Persistable stub = iterator.next().get();
+			if (stub == null || stub == entity)
+				iterator.remove();
+		}
+		if (stubs.isEmpty())
+			STUBS.remove(hash);
+	}
+	
+	/**
+	 * removes entries of garbage collected stubs
+	 */
+	private static final void expungeStaleEntries() {
+		StubReference polled;
+		while ((polled = (StubReference) QUEUE.poll()) != null) {
+			List<StubReference> stubs = STUBS.get(polled.hash);
+			if (stubs == null)
+				continue;
+			stubs.remove(polled);
+			if (stubs.isEmpty())
+				STUBS.remove(polled.hash);
+		}
+	}
+	
+	private static final class StubReference extends WeakReference<Persistable> {
+		
+		private final Integer hash;
+		
+		StubReference(Persistable stub, Integer hash) {
+			super(stub, QUEUE);
+			this.hash = hash;
+		}
+	}
+}
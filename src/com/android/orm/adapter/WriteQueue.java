@@ -0,0 +1,263 @@
+package com.android.orm.adapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * asynchronous writes with group commit. Submitted operations are queued and a single writer thread executes them in shared transactions, so concurrent single entity writes pay one
+ * commit per group instead of one per write.
+ * <p>
+ * a group is closed when it has groupCommitSize operations or groupCommitDelay milliseconds passed after its first operation. If an operation of a group fails, the group is rolled back
+ * and its operations are executed again each in its own transaction, so only the failing operation completes with an error.
+ * </p>
+ *
+ * @author Hamza Gumrah
+ */
+final class WriteQueue implements Runnable {
+	
+	private static final String TAG = "WriteQueue";
+	
+	/**
+	 * single entity write executed by the writer thread
+	 */
+	interface Operation {
+		
+		/**
+		 * executes the write inside the group transaction
+		 *
+		 * @return id of the written entity
+		 */
+		long execute(StatementCache statements, BatchInserter inserter);
+		
+		/**
+		 * called when the transaction which executed the write is rolled back, should undo changes made to the entity by execute
+		 */
+		void rolledBack();
+		
+		/**
+		 * called after the write is committed
+		 */
+		void committed();
+	}
+	
+	// queued after close, writer thread stops when it takes the marker
+	private static final PendingWrite STOP = new PendingWrite(null);
+	
+	private final ConnectionPool connections;
+	
+	private final int groupCommitSize;
+	
+	private final long groupCommitDelayNanos;
+	
+	private final BlockingQueue<PendingWrite> queue;
+	
+	private final Thread writer;
+	
+	private volatile boolean closed = false;
+	
+	WriteQueue(ConnectionPool connections, AdapterConfiguration configuration) {
+		this.connections = connections;
+		this.groupCommitSize = configuration.getGroupCommitSize();
+		this.groupCommitDelayNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getGroupCommitDelay());
+		this.queue = new LinkedBlockingQueue<PendingWrite>();
+		this.writer = new Thread(this, TAG);
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+	
+	/**
+	 * @return future which completes with the id of the written entity, or fails with the exception of the write
+	 * @throws IllegalStateException if queue is closed
+	 */
+	final Future<Long> submit(final Operation operation) {
+		PendingWrite write = new PendingWrite(operation);
+		// a write is never queued after STOP
+		synchronized (this) {
+			if (this.closed)
+				throw new IllegalStateException("write queue is closed");
+			this.queue.add(write);
+		}
+		return write;
+	}
+	
+	/**
+	 * executes writes queued before close and stops the writer thread, later submits fail
+	 */
+	final void close() {
+		synchronized (this) {
+			this.closed = true;
+			this.queue.add(STOP);
+		}
+		try {
+			this.writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// writes left if writer thread stopped before STOP
+		PendingWrite write;
+		while ((write = this.queue.poll()) != null)
+			if (write != STOP)
+				write.fail(new IllegalStateException("write queue is closed"));
+	}
+	
+	@Override
+	public void run() {
+		List<PendingWrite> group = new ArrayList<PendingWrite>(this.groupCommitSize);
+		boolean stop = false;
+		while (!stop) {
+			try {
+				PendingWrite write = this.queue.take();
+				if (write == STOP)
+					break;
+				group.add(write);
+				long deadline = System.nanoTime() + this.groupCommitDelayNanos;
+				while (group.size() < this.groupCommitSize) {
+					long remaining = deadline - System.nanoTime();
+					write = remaining > 0 ? this.queue.poll(remaining, TimeUnit.NANOSECONDS) : this.queue.poll();
+					if (write == null)
+						break;
+					if (write == STOP) {
+						stop = true;
+						break;
+					}
+					group.add(write);
+				}
+			}
+			catch (InterruptedException e) {
+				// writer thread is stopped only by STOP, queued writes are not abandoned
+			}
+			if (!group.isEmpty()) {
+				commit(group);
+				group.clear();
+			}
+		}
+	}
+	
+	private final void commit(final List<PendingWrite> group) {
+		// cancelled writes are not executed
+		List<PendingWrite> writes = new ArrayList<PendingWrite>(group.size());
+		for (PendingWrite write : group)
+			if (!write.isCancelled())
+				writes.add(write);
+		if (writes.isEmpty())
+			return;
+		// any throwable fails the writes instead of stopping the writer thread
+		try {
+			complete(writes, execute(writes));
+			return;
+		}
+		catch (Throwable e) {
+			if (writes.size() == 1) {
+				writes.get(0).fail(e);
+				return;
+			}
+			Log.w(TAG, "Group of " + writes.size() + " writes rolled back, executing writes one by one. ERROR : " + e.getMessage());
+		}
+		for (PendingWrite write : writes) {
+			List<PendingWrite> single = Collections.singletonList(write);
+			long[] ids;
+			try {
+				ids = execute(single);
+			}
+			catch (Throwable e) {
+				write.fail(e);
+				continue;
+			}
+			complete(single, ids);
+		}
+	}
+	
+	/**
+	 * completes committed writes, a failing committed callback does not make the write executed again
+	 */
+	private final void complete(final List<PendingWrite> writes, final long[] ids) {
+		for (int i = 0; i < writes.size(); i++) {
+			PendingWrite write = writes.get(i);
+			try {
+				write.operation.committed();
+			}
+			catch (Throwable e) {
+				Log.w(TAG, "Committed callback of a write failed. ERROR : " + e.getMessage());
+			}
+			write.complete(ids[i]);
+		}
+	}
+	
+	/**
+	 * executes writes in a single transaction
+	 *
+	 * @return id of each write
+	 * @throws RuntimeException if any write or the commit fails, all writes are rolled back. Errors are thrown as they are
+	 */
+	private final long[] execute(final List<PendingWrite> writes) {
+		SQLiteDatabase dataBase = this.connections.getWriter();
+		StatementCache statements = this.connections.getStatementCache();
+		BatchInserter inserter = new BatchInserter(statements);
+		long[] ids = new long[writes.size()];
+		int executed = 0;
+		boolean committed = false;
+		dataBase.beginTransaction();
+		try {
+			for (; executed < writes.size(); executed++)
+				ids[executed] = writes.get(executed).operation.execute(statements, inserter);
+			dataBase.setTransactionSuccessful();
+		}
+		finally {
+			try {
+				dataBase.endTransaction();
+				committed = executed == writes.size();
+			}
+			finally {
+				if (!committed)
+					for (int i = 0; i < executed; i++)
+						writes.get(i).operation.rolledBack();
+			}
+		}
+		return ids;
+	}
+	
+	/**
+	 * future of a queued write, completed by the writer thread
+	 */
+	private static final class PendingWrite extends FutureTask<Long> {
+		
+		private static final Callable<Long> NOT_RUNNABLE = new Callable<Long>() {
+			
+			@Override
+			public Long call() {
+				throw new UnsupportedOperationException("queued writes are executed by the writer thread");
+			}
+		};
+		
+		private final Operation operation;
+		
+		PendingWrite(Operation operation) {
+			super(NOT_RUNNABLE);
+			this.operation = operation;
+		}
+		
+		@Override
+		public void run() {
+			throw new UnsupportedOperationException("queued writes are executed by the writer thread");
+		}
+		
+		final void complete(final long id) {
+			set(id);
+		}
+		
+		final void fail(final Throwable cause) {
+			setException(cause);
+		}
+	}
+}
@@ -21,4 +21,14 @@ public @interface Column {
 	 * @return length value for String fields
 	 */
 	int length() default 0;
+	
+	/**
+	 * marks the column as part of the entity's natural key, a business key which identifies the row besides _id. Upsert matches rows of entities without id by natural key columns. All
+	 * natural key columns of an entity should be in the same table.
+	 * <p>
+	 * natural key columns are covered by a unique index. When a natural key is added to an existing table, the upgrade fails with SchemaMigrationException and the database keeps its
+	 * old version if rows of the table have duplicated values of these columns; duplicates should be removed by the application before the upgrade.
+	 * </p>
+	 */
+	boolean naturalKey() default false;
 }
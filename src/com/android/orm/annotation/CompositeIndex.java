@@ -0,0 +1,35 @@
+package com.android.orm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * creates an index on columns of the table the entity class is mapped to, columns are indexed in the given order. Use @CompositeIndexes for more than one index on a class.
+ * <p><B> @Entity </B></p>
+ * <p><B> @CompositeIndex </B>(columns = { "last_name", "first_name" })</p>
+ * <p>class Person implements Persistable{</p>
+ * <p>}</p>
+ * 
+ * @author Hamza Gumrah
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CompositeIndex {
+	
+	/**
+	 * @return index name, default is table name and column names joined with "_"
+	 */
+	String name() default "";
+	
+	/**
+	 * @return column names, not field names
+	 */
+	String[] columns();
+	
+	/**
+	 * @return true to reject rows with a combination of values which already exists
+	 */
+	boolean unique() default false;
+}
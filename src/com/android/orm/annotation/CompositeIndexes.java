@@ -0,0 +1,18 @@
+package com.android.orm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * more than one @CompositeIndex on an entity class
+ * 
+ * @author Hamza Gumrah
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CompositeIndexes {
+	
+	CompositeIndex[] value();
+}
@@ -19,4 +19,15 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Entity {
 	
+	/**
+	 * enables second level cache of the entity. loaded rows are kept in a LRU cache shared by all sessions, get by id does not query database for cached rows.
+	 * 
+	 * @return maximum number of cached rows, 0 disables cache
+	 */
+	int cacheEntries() default 0;
+	
+	/**
+	 * @return maximum approximate size of cached rows in bytes, 0 means cache is bounded only by cacheEntries
+	 */
+	long cacheBytes() default 0;
 }
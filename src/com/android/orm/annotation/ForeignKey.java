@@ -39,4 +39,9 @@ public @interface ForeignKey {
 	String reference() default OrmConstants.DEFAULT_FOREIGN_KEY_REFERENCE;
 	
 	FetchType fetch() default FetchType.EAGER;
+	
+	/**
+	 * @return false to skip the index generated for the foreign key column, joins and cascading deletes scan the whole table without it
+	 */
+	boolean index() default true;
 }
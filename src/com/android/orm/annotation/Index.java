@@ -0,0 +1,29 @@
+package com.android.orm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * creates an index on the column of the field, field should also have @Column annotation. Use @CompositeIndex on the entity for indexes of more than one column.
+ * <p><B> @Index </B>(unique = true)</p>
+ * <p><B> @Column </B>(name = "email")</p>
+ * <p>private String email;</p>
+ * 
+ * @author Hamza Gumrah
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Index {
+	
+	/**
+	 * @return index name, default is table name and column name joined with "_"
+	 */
+	String name() default "";
+	
+	/**
+	 * @return true to reject rows with a value which already exists in the column
+	 */
+	boolean unique() default false;
+}
@@ -6,6 +6,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 import com.android.orm.OrmConstants;
+import com.android.orm.type.FetchType;
 
 /**
  * if field is a collection,set or map , else this annotation is underestimated
@@ -33,8 +34,8 @@ import com.android.orm.OrmConstants;
 public @interface ManyToMany {
 	/**
 	 * if field is not map this attribute is underestimated,
-	 * else it finds related field of target entity and writes field.value.toString 
-	 * to map's key value.
+	 * else it finds related field of target entity and writes field.value
+	 * to map's key value. key type of the map should be the field's type, boxed if it is primitive.
 	 * @return
 	 */
 	String mapKey() default OrmConstants.PRIMARY_KEY_FIELD_NAME;
@@ -45,4 +46,10 @@ public @interface ManyToMany {
 	 * @return parameterType e.g for a field List<EntityA> this should have EntityA.class
 	 */
 	Class<?> targetEntityClass();
+	
+	/**
+	 * LAZY relations are left null by get, list and stream and loaded with loadReferences, EAGER relations are loaded with the entity.
+	 * @return fetch type of the relation
+	 */
+	FetchType fetch() default FetchType.LAZY;
 }
@@ -9,6 +9,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 import com.android.orm.OrmConstants;
+import com.android.orm.type.FetchType;
 
 
 
@@ -37,7 +38,7 @@ import com.android.orm.OrmConstants;
  *  <p><B>@PrimaryKey </B></p>
  *  <p>private long id;</p>
  *  <p><B>@OneToMany </B> </p>
- * <p> private Map<String,B> bMap; //this will map B.id.toString() to key value</p>
+ * <p> private Map<Long,B> bMap; //this will map B.id to key value</p>
  * <p>}</p>
  * @author Hamza Gumrah
  *
@@ -47,8 +48,8 @@ import com.android.orm.OrmConstants;
 public @interface OneToMany {
 	/**
 	 * if field is not map this attribute is underestimated,
-	 * else it finds related field of target entity and writes field.value.toString 
-	 * to map's key value.
+	 * else it finds related field of target entity and writes field.value
+	 * to map's key value. key type of the map should be the field's type, boxed if it is primitive.
 	 * @return
 	 */
 	String mapKey() default OrmConstants.PRIMARY_KEY_FIELD_NAME;
@@ -58,4 +59,10 @@ public @interface OneToMany {
 	 * @return parameterType e.g for a field List<EntityA> this should have EntityA.class
 	 */
 	Class<?> targetEntityClass();
+	
+	/**
+	 * LAZY relations are left null by get, list and stream and loaded with loadReferences, EAGER relations are loaded with the entity.
+	 * @return fetch type of the relation
+	 */
+	FetchType fetch() default FetchType.LAZY;
 }
@@ -0,0 +1,24 @@
+package com.android.orm.exception;
+
+/**
+ * if the schema of an existing database can not be migrated to the registry, the upgrade is rolled back and the database keeps its old version.
+ * 
+ * @author Hamza Gumrah
+ */
+public class SchemaMigrationException extends RuntimeException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final String message;
+	
+	public SchemaMigrationException(String message) {
+		super();
+		this.message = message;
+	}
+	
+	@Override
+	public String getMessage() {
+		return this.message;
+	}
+
+}
@@ -1,8 +1,9 @@
 package com.android.orm.type;
 
 /**
- * EAGER : will get reference object in any get method of @see DatabaseAdapter LAZY : will return null for reference object in standard get() of @see DatabaseAdapter, those types can be fetched using
- * getByLazy
+ * EAGER : will get reference object in any get method of @see DatabaseAdapter LAZY : will set a stub having only the reference value (id or reference field) in standard get() of @see
+ * DatabaseAdapter, those types can be fetched using getByLazy or loadReferences. For OneToMany and ManyToMany relations EAGER loads the collection with the entity, LAZY leaves the
+ * field null until loadReferences
  * 
  * @author Hamza
  */
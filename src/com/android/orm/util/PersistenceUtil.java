@@ -26,11 +26,20 @@ public abstract class PersistenceUtil {
 	 * @return if entity is persisted to database or not.
 	 */
 	public static boolean isPersisted(Persistable obj) {
-		if (obj.getId() == OrmConstants.NOT_PERSISTED_ID)
+		if (obj.getId() == null || obj.getId() == OrmConstants.NOT_PERSISTED_ID)
 			return false;
 		return true;
 	}
 	
+	/**
+	 * entities are registered with qualified names of their classes
+	 * 
+	 * @return name of the entity in registry
+	 */
+	public static String getEntityName(Class<?> clazz) {
+		return clazz.getName();
+	}
+	
 	
 	/**
 	 * checks if Persistable.class.isAssignableFrom(clazz)